@@ -0,0 +1,67 @@
+package cn.jiayeli.mybatisMini.benchmarks;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.jdbc.ScriptRunner;
+import org.apache.ibatis.session.SqlSession;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Creates and seeds the embedded in-memory database the benchmarks run against.
+ * The schema mirrors {@code cmdb.ssoConfigInfo} used by the examples module.
+ *
+ * @author kuro@jiayeli.com
+ */
+public final class BenchmarkDatabase {
+
+    private static final String SCHEMA_PATH = "mybatis/schema.sql";
+
+    /**
+     * Key that is always present after {@link #seed(int)}, used by single-row lookups.
+     */
+    public static final String LOOKUP_KEY = "username";
+
+    private BenchmarkDatabase() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * (Re)creates the schema and fills it with {@code rows} rows of config type {@code sso}.
+     *
+     * @param rows number of rows to insert, the first one being {@link #LOOKUP_KEY}
+     */
+    public static synchronized void seed(int rows) {
+        try (SqlSession sqlSession = MybatisMini.getSqlSession();
+             Reader schema = Resources.getResourceAsReader(SCHEMA_PATH)) {
+            Connection connection = sqlSession.getConnection();
+
+            ScriptRunner scriptRunner = new ScriptRunner(connection);
+            scriptRunner.setLogWriter(null);
+            scriptRunner.setStopOnError(true);
+            scriptRunner.runScript(schema);
+
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM cmdb.ssoConfigInfo");
+            }
+            try (PreparedStatement insert = connection.prepareStatement(
+                    "INSERT INTO cmdb.ssoConfigInfo (config_type, config_key, config_value) VALUES ('sso', ?, ?)")) {
+                for (int i = 0; i < rows; i++) {
+                    insert.setString(1, i == 0 ? LOOKUP_KEY : "key_" + i);
+                    insert.setString(2, "value_" + i);
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+            }
+            connection.commit();
+        } catch (IOException | SQLException e) {
+            throw new MybatisMiniException("Failed to seed benchmark database", e);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package cn.jiayeli.mybatisMini.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the MybatisMini benchmarks once per thread count, doubling from 1 up to the number of cores
+ * (the core count itself is always included), and writes one JSON result file per thread count.
+ * <p>
+ * Usage: {@code java -jar target/benchmarks.jar [jmh options]}, e.g. {@code -f 1 -wi 1 -i 3 facadeQuery}.
+ * Any {@code -t} option is overridden by the sweep.
+ *
+ * @author kuro@jiayeli.com
+ */
+public final class BenchmarkRunner {
+
+    private BenchmarkRunner() {
+        // Entry point only
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+        for (int threads : threadCounts(Runtime.getRuntime().availableProcessors())) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLineOptions)
+                    .threads(threads)
+                    .resultFormat(ResultFormatType.JSON)
+                    .result("jmh-result-" + threads + "t.json")
+                    .build();
+            new Runner(options).run();
+        }
+    }
+
+    static List<Integer> threadCounts(int cores) {
+        List<Integer> counts = new ArrayList<>();
+        for (int threads = 1; threads < cores; threads <<= 1) {
+            counts.add(threads);
+        }
+        counts.add(Math.max(1, cores));
+        return counts;
+    }
+}
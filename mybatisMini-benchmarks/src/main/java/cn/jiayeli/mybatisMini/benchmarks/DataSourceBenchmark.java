@@ -0,0 +1,109 @@
+package cn.jiayeli.mybatisMini.benchmarks;
+
+import cn.jiayeli.mybatisMini.benchmarks.dao.BenchConfigMapper;
+import cn.jiayeli.mybatisMini.benchmarks.model.BenchConfigModel;
+import cn.jiayeli.mybatisMini.core.HikariDataSourceFactory;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import org.apache.ibatis.datasource.DataSourceFactory;
+import org.apache.ibatis.datasource.pooled.PooledDataSourceFactory;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares MyBatis's POOLED data source with {@link HikariDataSourceFactory} when more threads
+ * than pooled connections compete for a checkout.
+ *
+ * @author kuro@jiayeli.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@Threads(32)
+public class DataSourceBenchmark {
+
+    private static final String MYBATIS_CONFIG_PATH = "mybatis/mybatisConfig.xml";
+    private static final String DB_PROPERTIES_PATH = "mybatis/db.properties";
+
+    @Param({"POOLED", "HIKARI"})
+    public String dataSourceType;
+
+    @Param({"8"})
+    public int poolSize;
+
+    private SqlSessionFactory sqlSessionFactory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        BenchmarkDatabase.seed(100);
+
+        Properties dbProperties = Resources.getResourceAsProperties(DB_PROPERTIES_PATH);
+        DataSourceFactory dataSourceFactory;
+        Properties properties = new Properties();
+        properties.setProperty("driver", dbProperties.getProperty("driver"));
+        properties.setProperty("url", dbProperties.getProperty("url"));
+        properties.setProperty("username", dbProperties.getProperty("username"));
+        properties.setProperty("password", dbProperties.getProperty("password"));
+        if ("HIKARI".equals(dataSourceType)) {
+            dataSourceFactory = new HikariDataSourceFactory();
+            properties.setProperty("maximumPoolSize", String.valueOf(poolSize));
+            properties.setProperty("minimumIdle", String.valueOf(poolSize));
+            // match the autoCommit=false mode of a default openSession()
+            properties.setProperty("autoCommit", "false");
+        } else {
+            dataSourceFactory = new PooledDataSourceFactory();
+            properties.setProperty("poolMaximumActiveConnections", String.valueOf(poolSize));
+            properties.setProperty("poolMaximumIdleConnections", String.valueOf(poolSize));
+        }
+        dataSourceFactory.setProperties(properties);
+
+        try (InputStream inputStream = Resources.getResourceAsStream(MYBATIS_CONFIG_PATH)) {
+            sqlSessionFactory = new SqlSessionFactoryBuilder().build(inputStream);
+        }
+        sqlSessionFactory.getConfiguration().setEnvironment(
+                new Environment(dataSourceType, new JdbcTransactionFactory(), dataSourceFactory.getDataSource()));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Object dataSource = sqlSessionFactory.getConfiguration().getEnvironment().getDataSource();
+        if (dataSource instanceof Closeable) {
+            ((Closeable) dataSource).close();
+        }
+    }
+
+    @Benchmark
+    public BenchConfigModel checkoutAndQuery() {
+        try (SqlSession sqlSession = sqlSessionFactory.openSession()) {
+            return sqlSession.getMapper(BenchConfigMapper.class).queryConfigByKey(BenchmarkDatabase.LOOKUP_KEY);
+        } catch (RuntimeException e) {
+            throw new MybatisMiniException("Benchmark query failed", e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package cn.jiayeli.mybatisMini.benchmarks;
+
+import cn.jiayeli.mybatisMini.benchmarks.dao.BenchConfigMapper;
+import cn.jiayeli.mybatisMini.benchmarks.model.BenchConfigModel;
+import cn.jiayeli.mybatisMini.core.MapperClassResolver;
+import cn.jiayeli.mybatisMini.core.MiniMapper;
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import org.apache.ibatis.session.SqlSession;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures what the MybatisMini facade adds on top of plain {@code sqlSession.getMapper(...)} usage.
+ * Each facade benchmark has a {@code raw*} twin doing the same query by hand.
+ * <p>
+ * Run through {@link BenchmarkRunner} to sweep thread counts, or directly with
+ * {@code java -jar target/benchmarks.jar MybatisMiniBenchmark -t <threads>}.
+ *
+ * @author kuro@jiayeli.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class MybatisMiniBenchmark {
+
+    @Param({"100"})
+    public int rows;
+
+    private final String lookupKey = BenchmarkDatabase.LOOKUP_KEY;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.seed(rows);
+    }
+
+    @Benchmark
+    public BenchConfigModel facadeQueryObject() {
+        return MybatisMini.<BenchConfigMapper, BenchConfigModel>queryObject(mapper -> mapper.queryConfigByKey(lookupKey));
+    }
+
+    @Benchmark
+    public BenchConfigModel rawQueryObject() {
+        try (SqlSession sqlSession = MybatisMini.getSqlSession()) {
+            return sqlSession.getMapper(BenchConfigMapper.class).queryConfigByKey(lookupKey);
+        }
+    }
+
+    @Benchmark
+    public List<BenchConfigModel> facadeQueryList() {
+        return MybatisMini.queryList(BenchConfigMapper::queryList);
+    }
+
+    @Benchmark
+    public List<BenchConfigModel> rawQueryList() {
+        try (SqlSession sqlSession = MybatisMini.getSqlSession()) {
+            return sqlSession.getMapper(BenchConfigMapper.class).queryList();
+        }
+    }
+
+    @Benchmark
+    public Class<BenchConfigMapper> resolveMapperClass() {
+        MiniMapper<BenchConfigMapper, BenchConfigModel> lambda = mapper -> mapper.queryConfigByKey(lookupKey);
+        return MapperClassResolver.resolve(lambda);
+    }
+
+    @Benchmark
+    public boolean sessionOpenClose() {
+        try (SqlSession sqlSession = MybatisMini.getSqlSession()) {
+            return sqlSession.getConfiguration() != null;
+        }
+    }
+}
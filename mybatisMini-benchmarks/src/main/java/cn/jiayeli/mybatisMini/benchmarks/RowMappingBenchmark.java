@@ -0,0 +1,77 @@
+package cn.jiayeli.mybatisMini.benchmarks;
+
+import cn.jiayeli.mybatisMini.benchmarks.dao.BenchConfigMapper;
+import cn.jiayeli.mybatisMini.benchmarks.model.BenchConfigModel;
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMiniClient;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares MyBatis's reflective result mapping with the compiled row mappers of
+ * {@link MybatisMiniClient.Builder#fastRowMapping(boolean)} on a list query reading every column.
+ * <p>
+ * The {@code mappedRows} counter reports rows per second. For allocations per row, run with the GC profiler,
+ * {@code java -jar target/benchmarks.jar RowMappingBenchmark -prof gc}, and divide {@code gc.alloc.rate.norm}
+ * (bytes per query) by {@code rows}.
+ *
+ * @author kuro@jiayeli.com
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 2, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class RowMappingBenchmark {
+
+    @Param({"1000"})
+    public int rows;
+
+    @Param({"false", "true"})
+    public boolean fastRowMapping;
+
+    private MybatisMiniClient client;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.seed(rows);
+        client = MybatisMini.builder().fastRowMapping(fastRowMapping).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        client.close();
+    }
+
+    @Benchmark
+    public List<BenchConfigModel> queryAllColumns(MappedRows mapped) {
+        List<BenchConfigModel> configs = client.queryList(BenchConfigMapper::queryAllColumns);
+        mapped.mappedRows += configs.size();
+        return configs;
+    }
+
+    /**
+     * Counts the rows mapped by each thread, reported by JMH as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class MappedRows {
+        public long mappedRows;
+    }
+}
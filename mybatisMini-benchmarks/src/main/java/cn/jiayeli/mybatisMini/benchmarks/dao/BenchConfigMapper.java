@@ -0,0 +1,16 @@
+package cn.jiayeli.mybatisMini.benchmarks.dao;
+
+import cn.jiayeli.mybatisMini.benchmarks.model.BenchConfigModel;
+import cn.jiayeli.mybatisMini.core.MiniMapper;
+
+import java.util.List;
+
+
+public interface BenchConfigMapper extends MiniMapper<BenchConfigMapper, BenchConfigModel> {
+
+    public List<BenchConfigModel> queryList();
+
+    public List<BenchConfigModel> queryAllColumns();
+
+    public BenchConfigModel queryConfigByKey(String config_key);
+}
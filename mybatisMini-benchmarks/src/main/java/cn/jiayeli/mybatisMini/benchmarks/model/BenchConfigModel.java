@@ -0,0 +1,11 @@
+package cn.jiayeli.mybatisMini.benchmarks.model;
+
+import lombok.Data;
+
+@Data
+public class BenchConfigModel {
+    private Long id;
+    private String config_type;
+    private String config_key;
+    private String config_value;
+}
@@ -0,0 +1,10 @@
+CREATE SCHEMA IF NOT EXISTS cmdb;
+
+CREATE TABLE IF NOT EXISTS cmdb.ssoConfigInfo (
+    id           BIGINT AUTO_INCREMENT PRIMARY KEY,
+    config_type  VARCHAR(32)  NOT NULL,
+    config_key   VARCHAR(128) NOT NULL,
+    config_value VARCHAR(512)
+);
+
+CREATE INDEX IF NOT EXISTS idx_sso_config_key ON cmdb.ssoConfigInfo (config_type, config_key);
@@ -0,0 +1,123 @@
+package cn.jiayeli.mybatisMini.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the executor MybatisMini runs asynchronous queries on.
+ * <p>
+ * Concurrency is capped at the connection pool size, so queued work waits in the executor rather than
+ * on a connection checkout. The executor is configured through system properties:
+ * <ul>
+ *     <li>{@code mybatisMini.async.virtualThreads} - run each query on a virtual thread when the JDK supports it
+ *     (default {@code false}); concurrency is still capped by a semaphore</li>
+ *     <li>{@code mybatisMini.async.queueCapacity} - queued queries allowed on the platform-thread executor before
+ *     new ones are rejected (default {@value #DEFAULT_QUEUE_CAPACITY})</li>
+ * </ul>
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+final class AsyncExecutors {
+
+    static final String VIRTUAL_THREADS_PROPERTY = "mybatisMini.async.virtualThreads";
+    static final String QUEUE_CAPACITY_PROPERTY = "mybatisMini.async.queueCapacity";
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    private AsyncExecutors() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Creates the async executor for a pool of the given size.
+     *
+     * @param concurrency maximum number of queries running at once
+     * @return the executor
+     */
+    static Executor create(int concurrency) {
+        int permits = Math.max(1, concurrency);
+        if (Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY)) {
+            ExecutorService virtualThreads = newVirtualThreadPerTaskExecutor();
+            if (virtualThreads != null) {
+                log.debug("Async queries run on virtual threads, at most {} at once", permits);
+                return new BoundedExecutor(virtualThreads, permits);
+            }
+            log.warn("{} is set but this JDK has no virtual threads, using platform threads", VIRTUAL_THREADS_PROPERTY);
+        }
+        int queueCapacity = Integer.getInteger(QUEUE_CAPACITY_PROPERTY, DEFAULT_QUEUE_CAPACITY);
+        log.debug("Async queries run on {} platform threads with a queue of {}", permits, queueCapacity);
+        return new ThreadPoolExecutor(permits, permits, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new DaemonThreadFactory(), new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Shuts down an executor made by {@link #create(int)}; queries already submitted still run.
+     *
+     * @param executor the executor
+     */
+    static void shutdown(Executor executor) {
+        if (executor instanceof BoundedExecutor) {
+            ((BoundedExecutor) executor).delegate.shutdown();
+        } else if (executor instanceof ExecutorService) {
+            ((ExecutorService) executor).shutdown();
+        }
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            // Looked up reflectively: the project compiles for Java 8
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs tasks on an unbounded executor while letting at most {@code permits} of them run at once.
+     */
+    private static final class BoundedExecutor implements Executor {
+
+        private final ExecutorService delegate;
+        private final Semaphore semaphore;
+
+        private BoundedExecutor(ExecutorService delegate, int permits) {
+            this.delegate = delegate;
+            this.semaphore = new Semaphore(permits);
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            delegate.execute(() -> {
+                semaphore.acquireUninterruptibly();
+                try {
+                    command.run();
+                } finally {
+                    semaphore.release();
+                }
+            });
+        }
+    }
+
+    private static final class DaemonThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "mybatisMini-async-" + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
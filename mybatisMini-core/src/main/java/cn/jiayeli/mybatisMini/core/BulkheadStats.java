@@ -0,0 +1,34 @@
+package cn.jiayeli.mybatisMini.core;
+
+import lombok.Value;
+
+/**
+ * Counters of a mapper's bulkhead since it was enabled, and its current concurrency limit.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Value
+public class BulkheadStats {
+
+    /**
+     * Calls that got a permit and ran.
+     */
+    long calls;
+    /**
+     * Calls that found the limit reached and waited for a permit, whether they got one or not.
+     */
+    long queuedCalls;
+    long rejectedCalls;
+    int inFlight;
+    /**
+     * The current limit; always {@code maxLimit} unless the bulkhead is adaptive.
+     */
+    int limit;
+    int minLimit;
+    int maxLimit;
+
+    public double getRejectionRate() {
+        long attempts = calls + rejectedCalls;
+        return attempts == 0 ? 0D : (double) rejectedCalls / attempts;
+    }
+}
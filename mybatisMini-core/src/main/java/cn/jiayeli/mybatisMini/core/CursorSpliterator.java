@@ -0,0 +1,110 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * Spliterator over a MyBatis {@link Cursor} that owns the resources behind the cursor, normally its SqlSession.
+ * <p>
+ * The cursor and resources are closed as soon as the rows are exhausted, when iteration throws,
+ * or when {@link #close()} is called from the owning stream's close handler, whichever comes first.
+ * A {@code null} resource means the cursor runs on a session owned by someone else, which is left open.
+ * When closing fails while another failure is already on its way up, the close failure is added to it as
+ * suppressed, so the first failure is the one the caller sees.
+ *
+ * @param <T> the row type
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+final class CursorSpliterator<T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+
+    private final AutoCloseable ownedResource;
+    private final Cursor<T> cursor;
+    private final Iterator<T> iterator;
+    private boolean closed;
+
+    CursorSpliterator(AutoCloseable ownedResource, Cursor<T> cursor) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.ownedResource = ownedResource;
+        this.cursor = cursor;
+        this.iterator = cursor.iterator();
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (closed) {
+            return false;
+        }
+        T next;
+        try {
+            if (!iterator.hasNext()) {
+                close();
+                return false;
+            }
+            next = iterator.next();
+        } catch (RuntimeException e) {
+            MybatisMiniException failure = new MybatisMiniException("Failed to read next row from cursor", e);
+            try {
+                close();
+            } catch (MybatisMiniException closeFailure) {
+                failure.addSuppressed(closeFailure);
+            }
+            throw failure;
+        }
+        action.accept(next);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        MybatisMiniException failure = null;
+        try {
+            cursor.close();
+        } catch (IOException | RuntimeException e) {
+            failure = new MybatisMiniException("Failed to close cursor", e);
+        }
+        if (ownedResource != null) {
+            try {
+                ownedResource.close();
+            } catch (Exception e) {
+                if (failure == null) {
+                    failure = new MybatisMiniException("Failed to release cursor resources", e);
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Closes the resources of a cursor that failed to open, without masking that failure.
+     *
+     * @param resource the resource, may be {@code null}
+     * @param primary  the failure being thrown, which gets the close failure as suppressed
+     */
+    static void closeQuietly(AutoCloseable resource, Throwable primary) {
+        if (resource == null) {
+            return;
+        }
+        try {
+            resource.close();
+        } catch (Exception e) {
+            log.warn("Error releasing cursor resources", e);
+            primary.addSuppressed(e);
+        }
+    }
+}
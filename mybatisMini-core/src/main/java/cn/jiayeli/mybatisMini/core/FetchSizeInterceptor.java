@@ -0,0 +1,58 @@
+package cn.jiayeli.mybatisMini.core;
+
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.concurrent.Callable;
+
+/**
+ * Applies a per-call JDBC fetch size to statements prepared on the current thread.
+ * <p>
+ * MyBatis only supports a fetch size per mapped statement; MybatisMini registers this interceptor so that
+ * {@link MybatisMini#stream(MiniMapper, int)} can override it for a single call.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Intercepts(@Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}))
+public class FetchSizeInterceptor implements Interceptor {
+
+    private static final ThreadLocal<Integer> FETCH_SIZE = new ThreadLocal<>();
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object result = invocation.proceed();
+        Integer fetchSize = FETCH_SIZE.get();
+        if (fetchSize != null && result instanceof Statement) {
+            ((Statement) result).setFetchSize(fetchSize);
+        }
+        return result;
+    }
+
+    /**
+     * Runs the given action with the fetch size applied to every statement it prepares on this thread.
+     *
+     * @param fetchSize the JDBC fetch size hint
+     * @param action    the action preparing statements
+     * @param <T>       the action result type
+     * @return the action result
+     * @throws Exception if the action fails
+     */
+    static <T> T withFetchSize(int fetchSize, Callable<T> action) throws Exception {
+        Integer previous = FETCH_SIZE.get();
+        FETCH_SIZE.set(fetchSize);
+        try {
+            return action.call();
+        } finally {
+            if (previous == null) {
+                FETCH_SIZE.remove();
+            } else {
+                FETCH_SIZE.set(previous);
+            }
+        }
+    }
+}
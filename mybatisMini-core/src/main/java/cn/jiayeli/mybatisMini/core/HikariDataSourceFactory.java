@@ -0,0 +1,73 @@
+package cn.jiayeli.mybatisMini.core;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.datasource.DataSourceFactory;
+
+import javax.sql.DataSource;
+import java.util.Properties;
+
+/**
+ * MyBatis {@link DataSourceFactory} backed by a HikariCP pool.
+ * <p>
+ * Use it as the data source type in mybatisConfig.xml:
+ * <pre>{@code
+ * <dataSource type="cn.jiayeli.mybatisMini.core.HikariDataSourceFactory">
+ *     <property name="driver" value="${driver}"/>
+ *     <property name="url" value="${url}"/>
+ *     <property name="username" value="${username}"/>
+ *     <property name="password" value="${password}"/>
+ *     <property name="maximumPoolSize" value="${pool.maximumPoolSize}"/>
+ *     <property name="dataSource.cachePrepStmts" value="true"/>
+ * </dataSource>
+ * }</pre>
+ * The POOLED-style names {@code driver} and {@code url} are accepted and so are {@code driver.*} driver
+ * properties. Every other property goes to {@link HikariConfig} unchanged, so {@code maximumPoolSize},
+ * {@code minimumIdle}, {@code connectionTimeout}, {@code dataSource.prepStmtCacheSize} etc. all work.
+ * The pool starts on the first connection request, not when the configuration is parsed.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+public class HikariDataSourceFactory implements DataSourceFactory {
+
+    private static final String DEFAULT_POOL_NAME = "MybatisMini";
+
+    private HikariDataSource dataSource;
+
+    @Override
+    public void setProperties(Properties properties) {
+        HikariConfig config = new HikariConfig(toHikariProperties(properties));
+        if (config.getPoolName() == null) {
+            config.setPoolName(DEFAULT_POOL_NAME);
+        }
+        HikariDataSource hikariDataSource = new HikariDataSource();
+        config.copyStateTo(hikariDataSource);
+        log.debug("Configured HikariCP pool {} with maximumPoolSize={}, minimumIdle={}",
+                config.getPoolName(), config.getMaximumPoolSize(), config.getMinimumIdle());
+        this.dataSource = hikariDataSource;
+    }
+
+    @Override
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    static Properties toHikariProperties(Properties properties) {
+        Properties hikariProperties = new Properties();
+        for (String name : properties.stringPropertyNames()) {
+            String value = properties.getProperty(name);
+            if ("driver".equals(name)) {
+                hikariProperties.setProperty("driverClassName", value);
+            } else if ("url".equals(name)) {
+                hikariProperties.setProperty("jdbcUrl", value);
+            } else if (name.startsWith("driver.")) {
+                hikariProperties.setProperty("dataSource." + name.substring("driver.".length()), value);
+            } else {
+                hikariProperties.setProperty(name, value);
+            }
+        }
+        return hikariProperties;
+    }
+}
@@ -0,0 +1,202 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Walks a table page by page with keyset queries, fetching the next pages in the background while the caller
+ * works through the current one.
+ * <p>
+ * Each page starts after the key of the previous page's last row, so pages are fetched strictly one after
+ * another; a fetch finishing with fewer than {@code prefetchPages} pages buffered starts the next one right
+ * away. At most {@code prefetchPages} fetched pages wait in memory, plus the page being read. A page shorter
+ * than the page size ends the walk without another round trip. With no prefetch, or when the executor rejects
+ * a fetch, the page is fetched on the reading thread.
+ *
+ * @param <K> the key type
+ * @param <T> the row type
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+final class KeysetPager<K, T> extends Spliterators.AbstractSpliterator<T> implements AutoCloseable {
+
+    private final PageFetcher<K, T> fetcher;
+    private final Function<? super T, ? extends K> keyOf;
+    private final int pageSize;
+    private final int prefetchPages;
+    private final Executor executor;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<List<T>> fetched = new ArrayDeque<>();
+    private Iterator<T> current = Collections.emptyIterator();
+    private K lastKey;
+    private boolean fetching;
+    private boolean exhausted;
+    private boolean closed;
+    private MybatisMiniException failure;
+
+    KeysetPager(PageFetcher<K, T> fetcher, K startAfter, Function<? super T, ? extends K> keyOf, int pageSize,
+                int prefetchPages, Executor executor) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("Page size must be positive: " + pageSize);
+        }
+        if (prefetchPages < 0) {
+            throw new IllegalArgumentException("Prefetch pages cannot be negative: " + prefetchPages);
+        }
+        this.fetcher = fetcher;
+        this.lastKey = startAfter;
+        this.keyOf = Objects.requireNonNull(keyOf, "Key extractor cannot be null");
+        this.pageSize = pageSize;
+        this.prefetchPages = prefetchPages;
+        this.executor = executor;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        while (!current.hasNext()) {
+            List<T> page = nextPage();
+            if (page == null) {
+                return false;
+            }
+            current = page.iterator();
+        }
+        action.accept(current.next());
+        return true;
+    }
+
+    /**
+     * Stops fetching. A fetch already running completes, and its page is dropped.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            fetched.clear();
+        }
+        current = Collections.emptyIterator();
+    }
+
+    /**
+     * @return the next page in key order, or {@code null} after the last one
+     */
+    private List<T> nextPage() {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                K afterKey;
+                synchronized (lock) {
+                    if (!fetched.isEmpty()) {
+                        List<T> page = fetched.poll();
+                        prefetch();
+                        return page;
+                    }
+                    if (failure != null) {
+                        throw failure;
+                    }
+                    if (closed || exhausted && !fetching) {
+                        return null;
+                    }
+                    if (fetching) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            // the page being fetched is still needed, keep waiting for it
+                            interrupted = true;
+                        }
+                        continue;
+                    }
+                    fetching = true;
+                    afterKey = lastKey;
+                }
+                fetch(afterKey);
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Starts a background fetch if none is running and the prefetch buffer has room. Called holding the lock.
+     */
+    private void prefetch() {
+        if (fetching || exhausted || closed || failure != null || fetched.size() >= prefetchPages) {
+            return;
+        }
+        K afterKey = lastKey;
+        fetching = true;
+        try {
+            executor.execute(() -> fetch(afterKey));
+        } catch (RejectedExecutionException e) {
+            // the reading thread fetches the page itself when it gets there
+            log.debug("Executor saturated, the next page is fetched on the reading thread");
+            fetching = false;
+        }
+    }
+
+    /**
+     * Fetches the page after {@code afterKey} outside the lock, then buffers it and starts the next fetch.
+     */
+    private void fetch(K afterKey) {
+        List<T> page = null;
+        K nextKey = null;
+        MybatisMiniException error = null;
+        try {
+            page = fetcher.fetch(afterKey, pageSize);
+            if (page == null) {
+                page = Collections.emptyList();
+            }
+            if (!page.isEmpty()) {
+                nextKey = keyOf.apply(page.get(page.size() - 1));
+                if (nextKey == null) {
+                    throw new MybatisMiniException("Key extractor returned null for the last row of a page");
+                }
+            }
+        } catch (MybatisMiniException e) {
+            error = e;
+        } catch (RuntimeException e) {
+            error = new MybatisMiniException("Failed to fetch page after key " + afterKey, e);
+        }
+        synchronized (lock) {
+            fetching = false;
+            lock.notifyAll();
+            if (error != null) {
+                failure = error;
+                return;
+            }
+            if (page.size() < pageSize) {
+                exhausted = true;
+            }
+            if (!page.isEmpty() && !closed) {
+                lastKey = nextKey;
+                fetched.add(page);
+            }
+            prefetch();
+        }
+    }
+
+    /**
+     * Runs one page query.
+     *
+     * @param <K> the key type
+     * @param <T> the row type
+     */
+    @FunctionalInterface
+    interface PageFetcher<K, T> {
+        List<T> fetch(K afterKey, int limit);
+    }
+}
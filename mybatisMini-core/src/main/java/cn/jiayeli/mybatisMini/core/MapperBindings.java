@@ -0,0 +1,113 @@
+package cn.jiayeli.mybatisMini.core;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.SerializedLambda;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Looks up mapper classes in the {@link MiniMapperBinding}s generated at compile time.
+ * <p>
+ * Bindings are loaded once per class loader through {@link ServiceLoader} and indexed by the mapper's internal
+ * name, so a lambda's mapper is found by comparing the names in its {@link SerializedLambda} without loading or
+ * inspecting any class. The bindings only hold their mapper classes weakly: a strong reference would keep the
+ * class loader, the key of its own entry, reachable from the map and never let it be unloaded.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+final class MapperBindings {
+
+    private static final Map<ClassLoader, Map<String, BoundMapper>> BINDINGS = new WeakHashMap<>();
+
+    private MapperBindings() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Finds the mapper targeted by a lambda: its implementation class for a method reference such as
+     * {@code ConfigMapper::queryList}, otherwise the first mapper among the implementation method's parameters.
+     *
+     * @param serializedLambda the serialized lambda
+     * @param classLoader      the lambda's class loader
+     * @return the mapper class, or {@code null} when no generated binding covers the lambda
+     */
+    static Class<?> find(SerializedLambda serializedLambda, ClassLoader classLoader) {
+        Map<String, BoundMapper> bindings = bindings(classLoader);
+        if (bindings.isEmpty()) {
+            return null;
+        }
+        BoundMapper bound = bindings.get(serializedLambda.getImplClass());
+        // a lambda written inside a mapper's default method also has the mapper as implementation class
+        if (bound != null && bound.methods.contains(serializedLambda.getImplMethodName() + serializedLambda.getImplMethodSignature())) {
+            return bound.mapperClass.get();
+        }
+        for (String internalName : ReflectUtils.objectParameterTypes(serializedLambda.getImplMethodSignature())) {
+            bound = bindings.get(internalName);
+            if (bound != null) {
+                return bound.mapperClass.get();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param classLoader the class loader to look up bindings in, may be {@code null} for the system loader
+     * @return the bindings visible to the class loader, by the mapper's internal name
+     */
+    private static Map<String, BoundMapper> bindings(ClassLoader classLoader) {
+        ClassLoader loader = classLoader != null ? classLoader : ClassLoader.getSystemClassLoader();
+        synchronized (BINDINGS) {
+            Map<String, BoundMapper> bindings = BINDINGS.get(loader);
+            if (bindings == null) {
+                bindings = load(loader);
+                BINDINGS.put(loader, bindings);
+            }
+            return bindings;
+        }
+    }
+
+    private static Map<String, BoundMapper> load(ClassLoader loader) {
+        Map<String, BoundMapper> bindings = new HashMap<>();
+        Iterator<MiniMapperBinding> iterator = ServiceLoader.load(MiniMapperBinding.class, loader).iterator();
+        while (true) {
+            try {
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                MiniMapperBinding binding = iterator.next();
+                Class<?> mapperClass = binding.mapperClass();
+                bindings.put(mapperClass.getName().replace('.', '/'),
+                        new BoundMapper(mapperClass, new HashSet<>(Arrays.asList(binding.methods()))));
+            } catch (ServiceConfigurationError e) {
+                // a stale entry of an incremental build, the mapper falls back to reflection
+                log.warn("Skipping MiniMapper binding: {}", e.getMessage());
+            }
+        }
+        log.debug("Loaded {} MiniMapper bindings from {}", bindings.size(), loader);
+        return Collections.unmodifiableMap(bindings);
+    }
+
+    /**
+     * A class is only cleared once the loaders that can see it are unreachable, which also ends their lookups.
+     */
+    private static final class BoundMapper {
+        private final WeakReference<Class<?>> mapperClass;
+        private final Set<String> methods;
+
+        private BoundMapper(Class<?> mapperClass, Set<String> methods) {
+            this.mapperClass = new WeakReference<>(mapperClass);
+            this.methods = methods;
+        }
+    }
+}
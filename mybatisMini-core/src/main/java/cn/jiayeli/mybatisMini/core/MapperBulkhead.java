@@ -0,0 +1,169 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.QueryRejectedException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Caps how many calls of one mapper namespace run at once, so that a mapper whose queries turn slow holds at
+ * most its share of the connection pool instead of every connection. A call finding the limit reached waits
+ * up to {@code maxWait} for another call to finish, and is then rejected with a {@link QueryRejectedException}.
+ * <p>
+ * An adaptive bulkhead moves its limit between {@code minLimit} and {@code maxLimit} like a TCP congestion
+ * window. It compares a short moving average of call latency with a long one, which follows improvements at
+ * once and degradations only slowly. When the short average exceeds twice the long one, and 2 ms in any
+ * case, the limit shrinks by 10%, at most once per round trip, i.e. only for calls started after the last
+ * decrease. Otherwise it grows by one every {@code limit} calls. A lasting slowdown eventually becomes the
+ * new normal and the limit recovers.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+final class MapperBulkhead {
+
+    private static final double TOLERANCE = 2.0;
+    private static final double BACKOFF = 0.9;
+    private static final double SHORT_WINDOW = 10;
+    private static final double LONG_WINDOW = 500;
+    private static final double LATENCY_FLOOR_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final String namespace;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long maxWaitNanos;
+    private final boolean adaptive;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    // guarded by lock
+    private double limit;
+    private int inFlight;
+    private double shortLatencyNanos;
+    private double longLatencyNanos;
+    private long lastDecreaseNanos;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder queuedCalls = new LongAdder();
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    MapperBulkhead(String namespace, int minLimit, int maxLimit, long maxWait, TimeUnit unit, boolean adaptive) {
+        if (minLimit < 1 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("Concurrency limits must satisfy 0 < min <= max: " + minLimit + ", " + maxLimit);
+        }
+        if (maxWait < 0) {
+            throw new IllegalArgumentException("Maximum wait cannot be negative: " + maxWait);
+        }
+        this.namespace = namespace;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.maxWaitNanos = unit.toNanos(maxWait);
+        this.adaptive = adaptive;
+        this.limit = maxLimit;
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    /**
+     * Runs the call once a permit is free.
+     *
+     * @param call the database call
+     * @param <R>  the result type
+     * @return the call's result
+     * @throws QueryRejectedException if no permit became free within the maximum wait
+     * @throws Exception              if the call fails
+     */
+    <R> R execute(Callable<R> call) throws Exception {
+        long startedNanos = acquire();
+        try {
+            return call.call();
+        } finally {
+            release(startedNanos);
+        }
+    }
+
+    private long acquire() {
+        lock.lock();
+        try {
+            if (inFlight >= (int) limit && maxWaitNanos > 0) {
+                queuedCalls.increment();
+                long remaining = maxWaitNanos;
+                while (inFlight >= (int) limit && remaining > 0) {
+                    remaining = released.awaitNanos(remaining);
+                }
+            }
+            if (inFlight >= (int) limit) {
+                rejectedCalls.increment();
+                throw new QueryRejectedException("Bulkhead of " + namespace + " is full, "
+                        + inFlight + " of " + (int) limit + " calls running");
+            }
+            inFlight++;
+            calls.increment();
+            return System.nanoTime();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedCalls.increment();
+            throw new QueryRejectedException("Interrupted while waiting for the bulkhead of " + namespace);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void release(long startedNanos) {
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            inFlight--;
+            int previousLimit = (int) limit;
+            if (adaptive) {
+                adapt(startedNanos, now);
+            }
+            if ((int) limit > previousLimit) {
+                released.signalAll();
+            } else {
+                released.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void adapt(long startedNanos, long now) {
+        double latency = now - startedNanos;
+        if (longLatencyNanos == 0) {
+            shortLatencyNanos = latency;
+            longLatencyNanos = latency;
+            return;
+        }
+        shortLatencyNanos += (latency - shortLatencyNanos) / SHORT_WINDOW;
+        longLatencyNanos = Math.min(shortLatencyNanos, longLatencyNanos + (latency - longLatencyNanos) / LONG_WINDOW);
+        // below a millisecond, a doubled latency is scheduling noise rather than a struggling database
+        if (shortLatencyNanos > TOLERANCE * Math.max(LATENCY_FLOOR_NANOS, longLatencyNanos)) {
+            // calls started before the last decrease ran under the old limit and say nothing about the new one
+            if (startedNanos - lastDecreaseNanos > 0 && limit > minLimit) {
+                limit = Math.max(minLimit, limit * BACKOFF);
+                lastDecreaseNanos = now;
+                log.debug("Lowered concurrency limit of {} to {}, latency {} us against {} us", namespace, (int) limit,
+                        (long) shortLatencyNanos / 1000, (long) longLatencyNanos / 1000);
+            }
+        } else if (limit < maxLimit) {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+    }
+
+    /**
+     * @return the counters since the bulkhead was enabled and its current limit
+     */
+    BulkheadStats stats() {
+        lock.lock();
+        try {
+            return new BulkheadStats(calls.sum(), queuedCalls.sum(), rejectedCalls.sum(), inFlight, (int) limit,
+                    minLimit, maxLimit);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Serializable;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Method;
+import java.util.Objects;
+
+/**
+ * Resolves and caches the mapper class behind a MiniMapper lambda.
+ * <p>
+ * Every call site of a lambda is compiled into its own synthetic class, so the mapper class is
+ * resolved once per call site and cached against that class. The cache is a {@link ClassValue},
+ * which does not keep the lambda's class loader reachable.
+ * <p>
+ * The mapper class is taken from the {@link MiniMapperBinding}s generated by {@code mybatisMini-processor} when
+ * one covers the lambda, and found by loading and inspecting the classes named in the lambda otherwise.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+public final class MapperClassResolver {
+
+    private static final ClassValue<ResolvedMapper> MAPPER_CLASSES = new ClassValue<ResolvedMapper>() {
+        @Override
+        protected ResolvedMapper computeValue(Class<?> lambdaClass) {
+            return new ResolvedMapper();
+        }
+    };
+
+    private MapperClassResolver() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Returns the mapper class targeted by the given lambda, resolving it on the first call from each call site.
+     *
+     * @param lambda the mapper method reference as a lambda
+     * @param <M>    the mapper type
+     * @return the class of the mapper
+     * @throws MybatisMiniException if the lambda does not represent a valid mapper method
+     */
+    public static <M> Class<M> resolve(MiniMapper<M, ?> lambda) {
+        return resolveLambda(lambda);
+    }
+
+    /**
+     * Same as {@link #resolve(MiniMapper)} for a keyset page query.
+     *
+     * @param lambda the mapper method reference as a lambda
+     * @param <M>    the mapper type
+     * @return the class of the mapper
+     * @throws MybatisMiniException if the lambda does not represent a valid mapper method
+     */
+    public static <M> Class<M> resolve(MiniPageMapper<M, ?, ?> lambda) {
+        return resolveLambda(lambda);
+    }
+
+    /**
+     * Same as {@link #resolve(MiniMapper)} for a batch lookup.
+     *
+     * @param lambda the mapper method reference as a lambda
+     * @param <M>    the mapper type
+     * @return the class of the mapper
+     * @throws MybatisMiniException if the lambda does not represent a valid mapper method
+     */
+    public static <M> Class<M> resolve(MiniBatchMapper<M, ?, ?> lambda) {
+        return resolveLambda(lambda);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <M> Class<M> resolveLambda(Serializable lambda) {
+        Objects.requireNonNull(lambda, "Mapper function cannot be null");
+        ResolvedMapper resolved = MAPPER_CLASSES.get(lambda.getClass());
+        Class<?> mapperClass = resolved.mapperClass;
+        if (mapperClass == null) {
+            // Racing threads may both resolve; the result is identical so the last write wins harmlessly
+            mapperClass = resolveUncached(lambda);
+            resolved.mapperClass = mapperClass;
+        }
+        return (Class<M>) mapperClass;
+    }
+
+    /**
+     * Extracts the SerializedLambda of a MiniMapper lambda through its synthetic {@code writeReplace} method.
+     *
+     * @param lambda the mapper method reference as a lambda
+     * @return the serialized form of the lambda
+     * @throws MybatisMiniException if the lambda cannot be serialized
+     */
+    public static SerializedLambda serialize(MiniMapper<?, ?> lambda) {
+        return serializeLambda(lambda);
+    }
+
+    static SerializedLambda serializeLambda(Serializable lambda) {
+        Objects.requireNonNull(lambda, "Mapper function cannot be null");
+        Class<?> lambdaClass = lambda.getClass();
+        ResolvedMapper resolved = MAPPER_CLASSES.get(lambdaClass);
+        Method writeReplace = resolved.writeReplace;
+        try {
+            if (writeReplace == null) {
+                writeReplace = lambdaClass.getDeclaredMethod("writeReplace");
+                writeReplace.setAccessible(true);
+                resolved.writeReplace = writeReplace;
+            }
+            return (SerializedLambda) writeReplace.invoke(lambda);
+        } catch (Exception e) {
+            throw new MybatisMiniException("Error serializing lambda: " + lambdaClass.getName(), e);
+        }
+    }
+
+    private static Class<?> resolveUncached(Serializable lambda) {
+        Class<?> lambdaClass = lambda.getClass();
+        try {
+            SerializedLambda serializedLambda = serializeLambda(lambda);
+            Class<?> mapperClass = MapperBindings.find(serializedLambda, lambdaClass.getClassLoader());
+            if (mapperClass != null) {
+                log.debug("Resolved mapper class {} for lambda {} from its generated binding", mapperClass.getName(), lambdaClass.getName());
+                return mapperClass;
+            }
+            String className = ReflectUtils.getMybatisMiniMapperClass(serializedLambda, lambdaClass.getClassLoader());
+            mapperClass = loadClass(className, lambdaClass.getClassLoader());
+            log.debug("Resolved mapper class {} for lambda {} by reflection", mapperClass.getName(), lambdaClass.getName());
+            return mapperClass;
+        } catch (MybatisMiniException e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to resolve mapper class for lambda: {}", lambda, e);
+            throw new MybatisMiniException("Error resolving Mapper class from lambda", e);
+        }
+    }
+
+    /**
+     * Loads a class through the lambda's own class loader first, then the context and MybatisMini loaders,
+     * so mappers living in child class loaders (web apps, plugins) resolve correctly.
+     */
+    static Class<?> loadClass(String className, ClassLoader lambdaClassLoader) throws ClassNotFoundException {
+        ClassLoader[] loaders = {
+                lambdaClassLoader,
+                Thread.currentThread().getContextClassLoader(),
+                MapperClassResolver.class.getClassLoader()
+        };
+        ClassNotFoundException lastFailure = null;
+        for (ClassLoader loader : loaders) {
+            if (loader == null) {
+                continue;
+            }
+            try {
+                return Class.forName(className, false, loader);
+            } catch (ClassNotFoundException e) {
+                lastFailure = e;
+            }
+        }
+        throw lastFailure != null ? lastFailure : new ClassNotFoundException(className);
+    }
+
+    /**
+     * Per-call-site slot holding the resolved mapper class and the lambda's accessible writeReplace method once known.
+     */
+    private static final class ResolvedMapper {
+        private volatile Class<?> mapperClass;
+        private volatile Method writeReplace;
+    }
+}
@@ -0,0 +1,177 @@
+package cn.jiayeli.mybatisMini.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Call, error and row counters plus per-phase latency histograms of one mapper method.
+ * <p>
+ * A MybatisMini call is split into four phases: resolving the mapper from the lambda, checking out a
+ * connection, executing the SQL, and mapping the result set to objects. Calls answered without SQL
+ * (e.g. from the result cache, or by sharing an identical coalesced call) only record the total and
+ * resolution latency.
+ *
+ * @author kuro@jiayeli.com
+ */
+public final class MapperMethodMetrics implements MapperMethodMetricsMXBean {
+
+    private final String name;
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder rows = new LongAdder();
+    private final LongAdder slowCalls = new LongAdder();
+    private final LongAdder coalescedCalls = new LongAdder();
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LatencyHistogram resolve = new LatencyHistogram();
+    private final LatencyHistogram checkout = new LatencyHistogram();
+    private final LatencyHistogram execute = new LatencyHistogram();
+    private final LatencyHistogram mapping = new LatencyHistogram();
+
+    MapperMethodMetrics(String name) {
+        this.name = name;
+    }
+
+    void record(long totalNanos, long resolveNanos, long checkoutNanos, long executeNanos, long mappingNanos,
+                boolean executedSql, boolean coalesced, long rowCount, boolean failed, boolean slow) {
+        calls.increment();
+        if (coalesced) {
+            coalescedCalls.increment();
+        }
+        if (failed) {
+            errors.increment();
+        }
+        if (slow) {
+            slowCalls.increment();
+        }
+        rows.add(rowCount);
+        total.record(totalNanos);
+        resolve.record(resolveNanos);
+        if (executedSql) {
+            checkout.record(checkoutNanos);
+            execute.record(executeNanos);
+            mapping.record(mappingNanos);
+        }
+    }
+
+    public LatencyHistogram getTotalLatency() {
+        return total;
+    }
+
+    public LatencyHistogram getResolveLatency() {
+        return resolve;
+    }
+
+    public LatencyHistogram getCheckoutLatency() {
+        return checkout;
+    }
+
+    public LatencyHistogram getExecuteLatency() {
+        return execute;
+    }
+
+    public LatencyHistogram getMappingLatency() {
+        return mapping;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public long getCalls() {
+        return calls.sum();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public long getRows() {
+        return rows.sum();
+    }
+
+    @Override
+    public long getSlowCalls() {
+        return slowCalls.sum();
+    }
+
+    @Override
+    public long getCoalescedCalls() {
+        return coalescedCalls.sum();
+    }
+
+    @Override
+    public double getMeanMicros() {
+        return total.getMean(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getMaxMicros() {
+        return total.getMax(TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getP50Micros() {
+        return total.getPercentile(50, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getP99Micros() {
+        return total.getPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getP999Micros() {
+        return total.getPercentile(99.9, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getResolveP50Micros() {
+        return resolve.getPercentile(50, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getResolveP99Micros() {
+        return resolve.getPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getCheckoutP50Micros() {
+        return checkout.getPercentile(50, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getCheckoutP99Micros() {
+        return checkout.getPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getExecuteP50Micros() {
+        return execute.getPercentile(50, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getExecuteP99Micros() {
+        return execute.getPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getMappingP50Micros() {
+        return mapping.getPercentile(50, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public long getMappingP99Micros() {
+        return mapping.getPercentile(99, TimeUnit.MICROSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "MapperMethodMetrics(name=" + name + ", calls=" + getCalls() + ", errors=" + getErrors()
+                + ", rows=" + getRows() + ", coalescedCalls=" + getCoalescedCalls() + ", p50Micros=" + getP50Micros() + ", p99Micros=" + getP99Micros()
+                + ", p999Micros=" + getP999Micros() + ")";
+    }
+}
@@ -0,0 +1,52 @@
+package cn.jiayeli.mybatisMini.core;
+
+/**
+ * JMX view of one mapper method's MybatisMini call metrics, registered as
+ * {@code cn.jiayeli.mybatisMini:type=MapperMethod,name=<mapped statement id>}.
+ * Latencies are in microseconds.
+ *
+ * @author kuro@jiayeli.com
+ */
+public interface MapperMethodMetricsMXBean {
+
+    String getName();
+
+    long getCalls();
+
+    long getErrors();
+
+    long getRows();
+
+    long getSlowCalls();
+
+    /**
+     * @return calls that shared the result of an identical call instead of running their own
+     */
+    long getCoalescedCalls();
+
+    double getMeanMicros();
+
+    long getMaxMicros();
+
+    long getP50Micros();
+
+    long getP99Micros();
+
+    long getP999Micros();
+
+    long getResolveP50Micros();
+
+    long getResolveP99Micros();
+
+    long getCheckoutP50Micros();
+
+    long getCheckoutP99Micros();
+
+    long getExecuteP50Micros();
+
+    long getExecuteP99Micros();
+
+    long getMappingP50Micros();
+
+    long getMappingP99Micros();
+}
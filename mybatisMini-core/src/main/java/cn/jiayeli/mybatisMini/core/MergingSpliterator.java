@@ -0,0 +1,73 @@
+package cn.jiayeli.mybatisMini.core;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+
+/**
+ * K-way merge of spliterators that are each sorted by the same comparator, e.g. the rows of one
+ * {@code ORDER BY} query on every shard. Holds one row per source and reads a source's next row only when
+ * its current row is taken, so a merged cursor stream stays lazy.
+ * Rows that compare equal come out in source order.
+ *
+ * @param <T> the row type
+ * @author kuro@jiayeli.com
+ */
+final class MergingSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+    private final List<? extends Spliterator<T>> sources;
+    private final PriorityQueue<Head<T>> heads;
+    private boolean primed;
+
+    MergingSpliterator(List<? extends Spliterator<T>> sources, Comparator<? super T> comparator) {
+        super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+        this.sources = sources;
+        Comparator<Head<T>> byRow = (left, right) -> comparator.compare(left.row, right.row);
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()), byRow.thenComparingInt(head -> head.source));
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super T> action) {
+        if (!primed) {
+            primed = true;
+            for (int source = 0; source < sources.size(); source++) {
+                advance(new Head<>(source));
+            }
+        }
+        Head<T> head = heads.poll();
+        if (head == null) {
+            return false;
+        }
+        T row = head.row;
+        // read the source's next row before handing this one on, so a failing action leaves the merge consistent
+        advance(head);
+        action.accept(row);
+        return true;
+    }
+
+    private void advance(Head<T> head) {
+        if (sources.get(head.source).tryAdvance(head)) {
+            heads.add(head);
+        }
+    }
+
+    /**
+     * The current row of one source; reused for every row of that source.
+     */
+    private static final class Head<T> implements Consumer<T> {
+        private final int source;
+        private T row;
+
+        private Head(int source) {
+            this.source = source;
+        }
+
+        @Override
+        public void accept(T row) {
+            this.row = row;
+        }
+    }
+}
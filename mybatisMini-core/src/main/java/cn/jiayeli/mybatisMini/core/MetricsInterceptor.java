@@ -0,0 +1,75 @@
+package cn.jiayeli.mybatisMini.core;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.List;
+
+/**
+ * Feeds the phases of a MybatisMini call into the thread's {@link MiniMetrics.CallRecorder}: the mapped
+ * statement id, connection checkout (executor entry until the statement is prepared), statement execution
+ * and result set mapping. Outside a timed call it only forwards the invocation.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "queryCursor", args = {MappedStatement.class, Object.class, RowBounds.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}),
+        @Signature(type = StatementHandler.class, method = "query", args = {Statement.class, ResultHandler.class}),
+        @Signature(type = StatementHandler.class, method = "queryCursor", args = {Statement.class}),
+        @Signature(type = StatementHandler.class, method = "update", args = {Statement.class}),
+        @Signature(type = ResultSetHandler.class, method = "handleResultSets", args = {Statement.class})
+})
+public class MetricsInterceptor implements Interceptor {
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        MiniMetrics.CallRecorder recorder = MiniMetrics.current();
+        if (recorder == null) {
+            return invocation.proceed();
+        }
+
+        Object target = invocation.getTarget();
+        if (target instanceof Executor) {
+            recorder.executorStarted(((MappedStatement) invocation.getArgs()[0]).getId());
+            Object result = invocation.proceed();
+            if (result instanceof List) {
+                recorder.rowsRead(((List<?>) result).size());
+            } else if (result instanceof Integer) {
+                recorder.rowsRead((Integer) result);
+            }
+            return result;
+        }
+        if (target instanceof StatementHandler && "prepare".equals(invocation.getMethod().getName())) {
+            recorder.statementPreparing();
+            if (recorder.needsSql()) {
+                recorder.sqlPrepared(((StatementHandler) target).getBoundSql().getSql());
+            }
+            return invocation.proceed();
+        }
+
+        long startNanos = System.nanoTime();
+        try {
+            return invocation.proceed();
+        } finally {
+            long elapsedNanos = System.nanoTime() - startNanos;
+            if (target instanceof ResultSetHandler) {
+                recorder.resultsMapped(elapsedNanos);
+            } else {
+                recorder.statementExecuted(elapsedNanos);
+            }
+        }
+    }
+}
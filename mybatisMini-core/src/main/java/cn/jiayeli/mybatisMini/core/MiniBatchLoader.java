@@ -0,0 +1,253 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Collects single-key lookups made within a short window and answers them with one batch mapper call,
+ * DataLoader style, so N lookups of one request cost one {@code IN (...)} round trip instead of N.
+ * <pre>{@code
+ * MiniBatchLoader<String, ConfigModel> configs =
+ *         MybatisMini.batchLoader(ConfigMapper::queryConfigByKeys, ConfigModel::getConfig_key);
+ * CompletableFuture<ConfigModel> username = configs.loadAsync("username");
+ * CompletableFuture<ConfigModel> password = configs.loadAsync("password");
+ * }</pre>
+ * The first key of a batch starts the window; when it closes, or once {@code maxBatchSize} distinct keys are
+ * waiting, the batch runs on the async executor. Lookups of a key that is already waiting or whose batch is
+ * still running share its future. A key without a row completes with {@code null}.
+ *
+ * @param <K> the key type
+ * @param <V> the row type
+ * @author kuro@jiayeli.com
+ * @see MybatisMini#batchLoader(MiniBatchMapper, Function, int, long, TimeUnit)
+ */
+@Slf4j
+public final class MiniBatchLoader<K, V> {
+
+    private static final ScheduledThreadPoolExecutor WINDOW_TIMER = newWindowTimer();
+
+    private final Function<List<K>, List<V>> batchCall;
+    private final Function<? super V, ? extends K> keyOf;
+    private final int maxBatchSize;
+    private final long windowNanos;
+    private final Executor executor;
+
+    private final Object lock = new Object();
+    private LinkedHashMap<K, CompletableFuture<V>> pending = new LinkedHashMap<>();
+    private final Map<K, CompletableFuture<V>> inFlight = new HashMap<>();
+    private ScheduledFuture<?> windowClose;
+
+    MiniBatchLoader(Function<List<K>, List<V>> batchCall, Function<? super V, ? extends K> keyOf, int maxBatchSize,
+                    long window, TimeUnit unit, Executor executor) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("Maximum batch size must be positive: " + maxBatchSize);
+        }
+        if (window < 0) {
+            throw new IllegalArgumentException("Batch window cannot be negative: " + window);
+        }
+        this.batchCall = batchCall;
+        this.keyOf = Objects.requireNonNull(keyOf, "Key extractor cannot be null");
+        this.maxBatchSize = maxBatchSize;
+        this.windowNanos = unit.toNanos(window);
+        this.executor = Objects.requireNonNull(executor, "Executor cannot be null");
+    }
+
+    /**
+     * Queues the key for the next batch.
+     *
+     * @param key the key to look up
+     * @return the row of the key, {@code null} when there is none; fails with a {@link MybatisMiniException}
+     * when the batch call fails
+     */
+    public CompletableFuture<V> loadAsync(K key) {
+        Objects.requireNonNull(key, "Key cannot be null");
+        Map<K, CompletableFuture<V>> full = null;
+        CompletableFuture<V> future;
+        synchronized (lock) {
+            future = enqueue(key);
+            if (pending.size() >= maxBatchSize) {
+                full = drain();
+            } else if (!pending.isEmpty() && windowClose == null) {
+                windowClose = WINDOW_TIMER.schedule(this::dispatch, windowNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            submit(full);
+        }
+        return future;
+    }
+
+    /**
+     * Looks the key up, waiting for the batch it joins. Lookups made by other threads meanwhile share the batch.
+     * <p>
+     * The batch runs on the async executor, so do not call this from a task running on that executor, e.g. in
+     * the callback of an async query: with every executor thread waiting here, no batch would be left to
+     * run them. Chain {@link #loadAsync(Object)} there instead.
+     *
+     * @param key the key to look up
+     * @return the row of the key, {@code null} when there is none
+     * @throws MybatisMiniException if the batch call fails
+     */
+    public V load(K key) {
+        return join(loadAsync(key));
+    }
+
+    /**
+     * Looks all keys up in as few batches as the maximum batch size allows, without waiting for the window.
+     *
+     * @param keys the keys to look up
+     * @return the row of every key in the given order, {@code null} for keys without one
+     * @throws MybatisMiniException if a batch call fails
+     */
+    public Map<K, V> loadAll(Collection<? extends K> keys) {
+        Map<K, CompletableFuture<V>> futures = new LinkedHashMap<>();
+        List<Map<K, CompletableFuture<V>>> batches = new ArrayList<>();
+        synchronized (lock) {
+            // queued in one go, so the window closing meanwhile cannot split the keys into more batches
+            for (K key : keys) {
+                futures.put(key, enqueue(Objects.requireNonNull(key, "Key cannot be null")));
+                if (pending.size() >= maxBatchSize) {
+                    batches.add(drain());
+                }
+            }
+            if (!pending.isEmpty()) {
+                batches.add(drain());
+            }
+        }
+        batches.forEach(this::submit);
+        Map<K, V> rows = new LinkedHashMap<>();
+        futures.forEach((key, future) -> rows.put(key, join(future)));
+        return rows;
+    }
+
+    /**
+     * Runs the waiting keys now instead of when the window closes.
+     */
+    public void dispatch() {
+        Map<K, CompletableFuture<V>> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = drain();
+        }
+        submit(batch);
+    }
+
+    /**
+     * Queues the key unless it is already waiting or running. Called holding the lock.
+     *
+     * @return the future of the key's row
+     */
+    private CompletableFuture<V> enqueue(K key) {
+        CompletableFuture<V> future = pending.get(key);
+        if (future == null) {
+            future = inFlight.get(key);
+        }
+        if (future == null) {
+            future = new CompletableFuture<>();
+            pending.put(key, future);
+        }
+        return future;
+    }
+
+    /**
+     * Takes the waiting keys and cancels the window timer. Called holding the lock.
+     */
+    private Map<K, CompletableFuture<V>> drain() {
+        Map<K, CompletableFuture<V>> batch = pending;
+        pending = new LinkedHashMap<>();
+        inFlight.putAll(batch);
+        if (windowClose != null) {
+            windowClose.cancel(false);
+            windowClose = null;
+        }
+        return batch;
+    }
+
+    private void submit(Map<K, CompletableFuture<V>> batch) {
+        List<K> keys = new ArrayList<>(batch.keySet());
+        for (int from = 0; from < keys.size(); from += maxBatchSize) {
+            List<K> chunk = keys.subList(from, Math.min(keys.size(), from + maxBatchSize));
+            try {
+                executor.execute(() -> run(chunk, batch));
+            } catch (RejectedExecutionException e) {
+                fail(chunk, batch, new MybatisMiniException("Batch lookup rejected, executor queue is full", e));
+            }
+        }
+    }
+
+    private void run(List<K> keys, Map<K, CompletableFuture<V>> batch) {
+        try {
+            List<V> rows = batchCall.apply(keys);
+            Map<K, V> rowsByKey = new HashMap<>(rows == null ? 0 : rows.size() * 4 / 3 + 1);
+            if (rows != null) {
+                for (V row : rows) {
+                    rowsByKey.put(keyOf.apply(row), row);
+                }
+            }
+            log.debug("Batch lookup of {} keys found {} rows", keys.size(), rowsByKey.size());
+            finished(keys, batch);
+            keys.forEach(key -> batch.get(key).complete(rowsByKey.get(key)));
+        } catch (Throwable e) {
+            // errors too, or the keys would stay in flight and every later lookup of them would wait forever
+            fail(keys, batch, e instanceof MybatisMiniException
+                    ? (MybatisMiniException) e
+                    : new MybatisMiniException("Batch lookup of " + keys.size() + " keys failed", e));
+            if (e instanceof Error) {
+                throw (Error) e;
+            }
+        }
+    }
+
+    private void fail(List<K> keys, Map<K, CompletableFuture<V>> batch, MybatisMiniException failure) {
+        finished(keys, batch);
+        keys.forEach(key -> batch.get(key).completeExceptionally(failure));
+    }
+
+    /**
+     * Lets lookups from now on start a new batch for the keys, so none gets a result older than itself.
+     */
+    private void finished(List<K> keys, Map<K, CompletableFuture<V>> batch) {
+        synchronized (lock) {
+            keys.forEach(key -> inFlight.remove(key, batch.get(key)));
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof MybatisMiniException
+                    ? (MybatisMiniException) cause
+                    : new MybatisMiniException("Batch lookup failed", cause);
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor newWindowTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "mybatisMini-batch-window");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
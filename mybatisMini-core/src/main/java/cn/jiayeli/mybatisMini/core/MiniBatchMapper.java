@@ -0,0 +1,19 @@
+package cn.jiayeli.mybatisMini.core;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Looks up many keys through a mapper in one call, normally a mapper method reference such as
+ * {@code ConfigMapper::queryConfigByKeys} backed by {@code WHERE config_key IN (...)}. Rows may come back in any
+ * order; keys without a row are simply missing.
+ *
+ * @param <M> the mapper type
+ * @param <K> the key type
+ * @param <V> the row type
+ * @see MybatisMini#batchLoader(MiniBatchMapper, java.util.function.Function)
+ */
+@FunctionalInterface
+public interface MiniBatchMapper<M, K, V> extends Serializable {
+    List<V> apply(M m, List<K> keys) throws Exception;
+}
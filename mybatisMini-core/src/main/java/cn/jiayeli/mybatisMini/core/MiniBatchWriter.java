@@ -0,0 +1,13 @@
+package cn.jiayeli.mybatisMini.core;
+
+/**
+ * Writes one item through a mapper inside a MybatisMini batch.
+ *
+ * @param <M> the mapper type
+ * @param <E> the item type
+ * @see MybatisMini#executeBatch(Class, Iterable, MiniBatchWriter)
+ */
+@FunctionalInterface
+public interface MiniBatchWriter<M, E> {
+    void write(M m, E item) throws Exception;
+}
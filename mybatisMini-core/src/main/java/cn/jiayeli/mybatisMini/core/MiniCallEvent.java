@@ -0,0 +1,98 @@
+package cn.jiayeli.mybatisMini.core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Java Flight Recorder event of one MybatisMini call, so that a recording shows which mapper call a slow
+ * request spent its time in rather than anonymous JDBC socket reads. Emitted for every call that records
+ * {@link MybatisMini#getMapperMethodMetrics() metrics}: {@code queryList}, {@code queryObject}, shard
+ * queries, pages, batch loads, snapshot loads, the opening of a stream's cursors and the flushes of
+ * {@code executeBatch}, which also covers export and import pipelines.
+ * <p>
+ * Like the JDK's socket read events, only calls of 20 ms or more are recorded by default and without a stack
+ * trace. Both are settings of the recording, e.g. in a {@code .jfc} file:
+ * <pre>{@code
+ * <event name="cn.jiayeli.mybatisMini.Call">
+ *   <setting name="enabled">true</setting>
+ *   <setting name="threshold">5 ms</setting>
+ *   <setting name="stackTrace">true</setting>
+ * </event>
+ * }</pre>
+ * While no recording enables the event, a call only checks a flag.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Name(MiniCallEvent.NAME)
+@Label("MybatisMini Call")
+@Category("MybatisMini")
+@Description("A MybatisMini mapper call with the time spent in each of its phases")
+@Threshold("20 ms")
+@StackTrace(false)
+public final class MiniCallEvent extends Event {
+
+    public static final String NAME = "cn.jiayeli.mybatisMini.Call";
+
+    @Label("Kind")
+    @Description("list, object, page, batch, snapshot, cursor or flush")
+    String kind;
+
+    @Label("Mapper Class")
+    Class<?> mapperClass;
+
+    @Label("Mapper Method")
+    @Description("The mapper method of a method reference, or of the first statement a lambda ran")
+    String mapperMethod;
+
+    @Label("Call Site")
+    @Description("The class that created the mapper lambda, and the synthetic method of a lambda body")
+    String callSite;
+
+    @Label("Statement Id")
+    String statementId;
+
+    @Label("SQL")
+    @Description("The SQL of the first statement prepared, with ? placeholders")
+    String sql;
+
+    @Label("Resolve Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long resolveTime;
+
+    @Label("Checkout Time")
+    @Description("From entering the executor until the statement is prepared, mostly waiting for a pooled connection")
+    @Timespan(Timespan.NANOSECONDS)
+    long checkoutTime;
+
+    @Label("Execute Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long executeTime;
+
+    @Label("Mapping Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long mappingTime;
+
+    @Label("Rows")
+    long rows;
+
+    @Label("Executed SQL")
+    @Description("False when the call was answered from a result cache or snapshot")
+    boolean executedSql;
+
+    @Label("Coalesced")
+    @Description("True when the call shared the result of an identical call running on another thread")
+    boolean coalesced;
+
+    @Label("Outcome")
+    @Description("SUCCESS, ERROR, or REJECTED by a bulkhead")
+    String outcome;
+
+    @Label("Error")
+    String error;
+}
@@ -0,0 +1,20 @@
+package cn.jiayeli.mybatisMini.core;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Fetches the rows changed since a version through a mapper, normally a mapper method reference such as
+ * {@code ConfigMapper::queryChangedSince} backed by {@code WHERE updated_at >= #{since}}. Rows at the version
+ * itself should be included: rows sharing the last version seen may have been committed after it was read, and
+ * rows fetched again that did not change are ignored.
+ *
+ * @param <M> the mapper type
+ * @param <V> the version type, e.g. an update timestamp or a version number
+ * @param <T> the row type
+ * @see MiniSnapshot.Builder#changes(MiniChangeMapper, java.util.function.Function)
+ */
+@FunctionalInterface
+public interface MiniChangeMapper<M, V, T> extends Serializable {
+    List<T> apply(M m, V since) throws Exception;
+}
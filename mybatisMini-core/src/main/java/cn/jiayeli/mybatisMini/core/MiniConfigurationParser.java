@@ -0,0 +1,220 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.builder.xml.XMLConfigBuilder;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.builder.xml.XMLMapperEntityResolver;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds a MyBatis {@link Configuration} from a config XML, reading the mapper XML files in parallel.
+ * <p>
+ * {@code <mapper resource="..."/>} and {@code <mapper url="..."/>} entries are taken out of the config before
+ * MyBatis sees it. Their XML is read and DTD-validated on a small thread pool, which is where most of the startup
+ * time goes, and the parsed documents are then registered one after another in declaration order, because
+ * {@link Configuration} itself is not thread-safe. {@code <mapper class>} and {@code <package>} entries are left
+ * to MyBatis and registered before the XML mappers.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+final class MiniConfigurationParser {
+
+    private final byte[] configXml;
+    private final List<MapperSource> mapperSources;
+
+    private MiniConfigurationParser(byte[] configXml, List<MapperSource> mapperSources) {
+        this.configXml = configXml;
+        this.mapperSources = mapperSources;
+    }
+
+    /**
+     * Splits the config into the config without its XML mapper entries and the list of those entries.
+     *
+     * @param configXml the raw MyBatis config XML
+     * @return the parser for that config
+     * @throws MybatisMiniException if the config is not well-formed XML
+     */
+    static MiniConfigurationParser of(byte[] configXml) {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(false);
+            factory.setValidating(false);
+            DocumentBuilder documentBuilder = factory.newDocumentBuilder();
+            documentBuilder.setEntityResolver(new XMLMapperEntityResolver());
+            Document document = documentBuilder.parse(new ByteArrayInputStream(configXml));
+
+            List<MapperSource> mapperSources = new ArrayList<>();
+            NodeList mappers = document.getElementsByTagName("mapper");
+            for (int i = mappers.getLength() - 1; i >= 0; i--) {
+                Element mapper = (Element) mappers.item(i);
+                String resource = mapper.getAttribute("resource");
+                String url = mapper.getAttribute("url");
+                if (resource.isEmpty() && url.isEmpty()) {
+                    continue;
+                }
+                mapperSources.add(0, resource.isEmpty() ? new MapperSource(url, true) : new MapperSource(resource, false));
+                mapper.getParentNode().removeChild(mapper);
+            }
+            if (mapperSources.isEmpty()) {
+                return new MiniConfigurationParser(configXml, mapperSources);
+            }
+            return new MiniConfigurationParser(serialize(document), mapperSources);
+        } catch (Exception e) {
+            throw new MybatisMiniException("Error reading MyBatis config", e);
+        }
+    }
+
+    /**
+     * Parses the config and every mapper it lists.
+     *
+     * @param environment the environment id, or {@code null} for the config's default
+     * @param properties  properties overriding the config's own, may be {@code null}
+     * @param parallelism number of threads reading mapper XML, 1 to read them on the calling thread
+     * @return the complete configuration
+     * @throws MybatisMiniException if the config or a mapper fails to parse
+     */
+    Configuration parse(String environment, Properties properties, int parallelism) {
+        Configuration configuration = parseConfig(environment, properties);
+        long started = System.nanoTime();
+        for (XMLMapperBuilder mapperBuilder : readMappers(configuration, parallelism)) {
+            mapperBuilder.parse();
+        }
+        log.debug("Parsed {} mapper files in {} ms with parallelism {}", mapperSources.size(),
+                (System.nanoTime() - started) / 1_000_000, parallelism);
+        return configuration;
+    }
+
+    /**
+     * Parses only the given environment of the config, e.g. to build a read replica.
+     *
+     * @param environment the environment id
+     * @param properties  properties overriding the config's own, may be {@code null}
+     * @return the environment
+     * @throws MybatisMiniException if the config fails to parse
+     */
+    Environment parseEnvironment(String environment, Properties properties) {
+        Environment parsed = parseConfig(environment, properties).getEnvironment();
+        if (parsed == null) {
+            throw new MybatisMiniException("Environment not found in MyBatis config: " + environment);
+        }
+        return parsed;
+    }
+
+    private Configuration parseConfig(String environment, Properties properties) {
+        try {
+            return new XMLConfigBuilder(new ByteArrayInputStream(configXml), environment, properties).parse();
+        } catch (Exception e) {
+            throw new MybatisMiniException("Error parsing MyBatis config", e);
+        }
+    }
+
+    private List<XMLMapperBuilder> readMappers(Configuration configuration, int parallelism) {
+        List<XMLMapperBuilder> mapperBuilders = new ArrayList<>(mapperSources.size());
+        int threads = Math.min(parallelism, mapperSources.size());
+        if (threads <= 1) {
+            for (MapperSource mapperSource : mapperSources) {
+                mapperBuilders.add(mapperSource.read(configuration));
+            }
+            return mapperBuilders;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads, new ParserThreadFactory());
+        try {
+            // XMLMapperBuilder's constructor only reads and validates the document, it does not touch the configuration
+            List<Future<XMLMapperBuilder>> futures = new ArrayList<>(mapperSources.size());
+            for (MapperSource mapperSource : mapperSources) {
+                futures.add(executor.submit(() -> mapperSource.read(configuration)));
+            }
+            for (Future<XMLMapperBuilder> future : futures) {
+                mapperBuilders.add(future.get());
+            }
+            return mapperBuilders;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof MybatisMiniException
+                    ? (MybatisMiniException) cause
+                    : new MybatisMiniException("Error reading mapper XML", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MybatisMiniException("Interrupted while reading mapper XML", e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static byte[] serialize(Document document) throws Exception {
+        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        DocumentType doctype = document.getDoctype();
+        if (doctype != null) {
+            // keep the DOCTYPE so MyBatis can still validate the config against its DTD
+            transformer.setOutputProperty(OutputKeys.DOCTYPE_PUBLIC, doctype.getPublicId());
+            transformer.setOutputProperty(OutputKeys.DOCTYPE_SYSTEM, doctype.getSystemId());
+        }
+        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Node root = document.getDocumentElement();
+        transformer.transform(new DOMSource(root), new StreamResult(output));
+        return output.toByteArray();
+    }
+
+    /**
+     * A {@code <mapper resource>} or {@code <mapper url>} entry taken out of the config.
+     */
+    private static final class MapperSource {
+        private final String location;
+        private final boolean url;
+
+        private MapperSource(String location, boolean url) {
+            this.location = location;
+            this.url = url;
+        }
+
+        private XMLMapperBuilder read(Configuration configuration) {
+            try (InputStream inputStream = url ? Resources.getUrlAsStream(location) : Resources.getResourceAsStream(location)) {
+                return new XMLMapperBuilder(inputStream, configuration, location, configuration.getSqlFragments());
+            } catch (Exception e) {
+                throw new MybatisMiniException("Error reading mapper XML: " + location, e);
+            }
+        }
+    }
+
+    private static final class ParserThreadFactory implements ThreadFactory {
+        private final AtomicInteger counter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "mybatisMini-parser-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
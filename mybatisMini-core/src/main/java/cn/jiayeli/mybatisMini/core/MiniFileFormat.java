@@ -0,0 +1,282 @@
+package cn.jiayeli.mybatisMini.core;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * File formats of {@link MiniPipeline} exports and imports. A row is written as its fields, strings that may be
+ * {@code null}, in UTF-8.
+ *
+ * @author kuro@jiayeli.com
+ */
+public enum MiniFileFormat {
+
+    /**
+     * RFC 4180 CSV with {@code \n} line ends. Fields holding a comma, quote or line break are quoted, an empty
+     * string is written as {@code ""} and {@code null} as nothing, so both survive a round trip.
+     */
+    CSV {
+        @Override
+        byte[] encode(List<String[]> rows) {
+            StringBuilder text = new StringBuilder(rows.size() * 64);
+            for (String[] fields : rows) {
+                for (int i = 0; i < fields.length; i++) {
+                    if (i > 0) {
+                        text.append(',');
+                    }
+                    appendField(text, fields[i]);
+                }
+                text.append('\n');
+            }
+            return text.toString().getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        RowReader reader(ReadableByteChannel channel) {
+            return new CsvReader(Channels.newReader(channel, StandardCharsets.UTF_8.newDecoder(), BUFFER_SIZE));
+        }
+    },
+
+    /**
+     * Length-prefixed binary: each row is its length in bytes, its field count and then every field as its
+     * length, -1 for {@code null}, followed by its bytes; all lengths are big-endian ints. Reading it back
+     * needs no parsing of the field contents.
+     */
+    BINARY {
+        @Override
+        byte[] encode(List<String[]> rows) throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(rows.size() * 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            byte[][] encoded = new byte[0][];
+            for (String[] fields : rows) {
+                if (encoded.length < fields.length) {
+                    encoded = new byte[fields.length][];
+                }
+                int length = 4;
+                for (int i = 0; i < fields.length; i++) {
+                    encoded[i] = fields[i] == null ? null : fields[i].getBytes(StandardCharsets.UTF_8);
+                    length += 4 + (encoded[i] == null ? 0 : encoded[i].length);
+                }
+                out.writeInt(length);
+                out.writeInt(fields.length);
+                for (int i = 0; i < fields.length; i++) {
+                    if (encoded[i] == null) {
+                        out.writeInt(-1);
+                    } else {
+                        out.writeInt(encoded[i].length);
+                        out.write(encoded[i]);
+                    }
+                }
+            }
+            return bytes.toByteArray();
+        }
+
+        @Override
+        RowReader reader(ReadableByteChannel channel) {
+            return new BinaryReader(channel);
+        }
+    };
+
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * @param rows the fields of each row
+     * @return the rows in this format
+     * @throws IOException if a row cannot be encoded
+     */
+    abstract byte[] encode(List<String[]> rows) throws IOException;
+
+    /**
+     * @param channel the file to read, positioned at its start
+     * @return a reader of the rows in the file
+     */
+    abstract RowReader reader(ReadableByteChannel channel);
+
+    private static void appendField(StringBuilder text, String field) {
+        if (field == null) {
+            return;
+        }
+        if (!field.isEmpty() && !needsQuotes(field)) {
+            text.append(field);
+            return;
+        }
+        text.append('"');
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '"') {
+                text.append('"');
+            }
+            text.append(c);
+        }
+        text.append('"');
+    }
+
+    private static boolean needsQuotes(String field) {
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads the rows of a file one after another.
+     */
+    interface RowReader {
+
+        /**
+         * @return the fields of the next row, or {@code null} at the end of the file
+         * @throws IOException if the file cannot be read or is malformed
+         */
+        String[] next() throws IOException;
+    }
+
+    private static final class CsvReader implements RowReader {
+
+        private final Reader in;
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+        private final List<String> fields = new ArrayList<>();
+        private final StringBuilder field = new StringBuilder();
+
+        private CsvReader(Reader in) {
+            this.in = in;
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            int c = read();
+            if (c < 0) {
+                return null;
+            }
+            fields.clear();
+            while (true) {
+                field.setLength(0);
+                if (c == '"') {
+                    while (true) {
+                        c = read();
+                        if (c < 0) {
+                            throw new EOFException("Unterminated quoted CSV field in row " + fields);
+                        }
+                        // a doubled quote stands for one quote, a single one ends the field
+                        if (c == '"' && (c = read()) != '"') {
+                            break;
+                        }
+                        field.append((char) c);
+                    }
+                    fields.add(field.toString());
+                    if (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                        throw new IOException("Unexpected character after quoted CSV field: " + (char) c);
+                    }
+                } else {
+                    while (c >= 0 && c != ',' && c != '\n' && c != '\r') {
+                        field.append((char) c);
+                        c = read();
+                    }
+                    fields.add(field.length() == 0 ? null : field.toString());
+                }
+                if (c != ',') {
+                    break;
+                }
+                c = read();
+            }
+            if (c == '\r' && peek() == '\n') {
+                read();
+            }
+            return fields.toArray(new String[0]);
+        }
+
+        private int read() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position++];
+        }
+
+        private int peek() throws IOException {
+            if (position == limit && !fill()) {
+                return -1;
+            }
+            return buffer[position];
+        }
+
+        private boolean fill() throws IOException {
+            int read = in.read(buffer);
+            position = 0;
+            limit = Math.max(0, read);
+            return read > 0;
+        }
+    }
+
+    private static final class BinaryReader implements RowReader {
+
+        private final ReadableByteChannel channel;
+        private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+        private BinaryReader(ReadableByteChannel channel) {
+            this.channel = channel;
+            buffer.flip();
+        }
+
+        @Override
+        public String[] next() throws IOException {
+            if (!fill(4)) {
+                if (buffer.hasRemaining()) {
+                    throw new EOFException("Truncated row length at the end of the file");
+                }
+                return null;
+            }
+            int length = buffer.getInt();
+            if (length < 4 || !fill(length)) {
+                throw new EOFException("Truncated or corrupt row of " + length + " bytes");
+            }
+            String[] fields = new String[buffer.getInt()];
+            for (int i = 0; i < fields.length; i++) {
+                int fieldLength = buffer.getInt();
+                if (fieldLength >= 0) {
+                    fields[i] = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), fieldLength,
+                            StandardCharsets.UTF_8);
+                    buffer.position(buffer.position() + fieldLength);
+                }
+            }
+            return fields;
+        }
+
+        /**
+         * Reads until at least {@code bytes} bytes are buffered, growing the buffer for rows larger than it.
+         *
+         * @return false if the file ended first
+         */
+        private boolean fill(int bytes) throws IOException {
+            if (buffer.remaining() >= bytes) {
+                return true;
+            }
+            if (buffer.capacity() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(bytes, buffer.capacity() * 2));
+                larger.put(buffer);
+                buffer = larger;
+            } else {
+                buffer.compact();
+            }
+            while (buffer.position() < bytes) {
+                if (channel.read(buffer) < 0) {
+                    break;
+                }
+            }
+            buffer.flip();
+            return buffer.remaining() >= bytes;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.QueryRejectedException;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandleInfo;
+import java.lang.invoke.SerializedLambda;
+
+/**
+ * Begins and commits {@link MiniCallEvent}s for {@link MiniMetrics.CallRecorder}. The JFR classes are only
+ * touched once JFR turned out to be available, so MybatisMini still runs on Java 8 builds without it.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+final class MiniFlightRecorder {
+
+    private static final boolean AVAILABLE = isAvailable();
+
+    private MiniFlightRecorder() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * @return whether a running recording has the call event enabled
+     */
+    static boolean isEnabled() {
+        return AVAILABLE && Events.TYPE.isEnabled();
+    }
+
+    /**
+     * @return a begun call event, or {@code null} when no recording has it enabled
+     */
+    static Object begin() {
+        if (!isEnabled()) {
+            return null;
+        }
+        MiniCallEvent event = new MiniCallEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the event and commits it unless it is below the recording's threshold.
+     */
+    static void commit(Object begun, String kind, Serializable lambda, Class<?> mapperClass, String statementId,
+                       String sql, long resolveNanos, long checkoutNanos, long executeNanos, long mappingNanos,
+                       long rows, boolean executedSql, boolean coalesced, Throwable error) {
+        MiniCallEvent event = (MiniCallEvent) begun;
+        event.end();
+        if (!event.shouldCommit()) {
+            return;
+        }
+        event.kind = kind;
+        event.mapperClass = mapperClass;
+        event.statementId = statementId;
+        event.sql = sql;
+        event.resolveTime = resolveNanos;
+        event.checkoutTime = checkoutNanos;
+        event.executeTime = executeNanos;
+        event.mappingTime = mappingNanos;
+        event.rows = rows;
+        event.executedSql = executedSql;
+        event.coalesced = coalesced;
+        event.outcome = error == null ? "SUCCESS" : error instanceof QueryRejectedException ? "REJECTED" : "ERROR";
+        event.error = error == null ? null : error.toString();
+        describeCallSite(event, lambda);
+        if (event.mapperMethod == null && statementId != null) {
+            event.mapperMethod = statementId.substring(statementId.lastIndexOf('.') + 1);
+        }
+        event.commit();
+    }
+
+    private static void describeCallSite(MiniCallEvent event, Serializable lambda) {
+        if (lambda == null) {
+            return;
+        }
+        try {
+            SerializedLambda serialized = MapperClassResolver.serializeLambda(lambda);
+            String capturingClass = serialized.getCapturingClass().replace('/', '.');
+            if (serialized.getImplMethodKind() == MethodHandleInfo.REF_invokeInterface) {
+                event.mapperMethod = serialized.getImplMethodName();
+                event.callSite = capturingClass;
+            } else {
+                event.callSite = capturingClass + "." + serialized.getImplMethodName();
+            }
+        } catch (RuntimeException e) {
+            // not a serializable lambda, e.g. a mapper function implemented by a class
+            event.callSite = lambda.getClass().getName();
+        }
+    }
+
+    private static boolean isAvailable() {
+        try {
+            return FlightRecorder.isAvailable();
+        } catch (LinkageError e) {
+            log.debug("Java Flight Recorder is not available, MybatisMini emits no call events: {}", e.toString());
+            return false;
+        }
+    }
+
+    /**
+     * Registers the event type on first use.
+     */
+    private static final class Events {
+        static final EventType TYPE = EventType.getEventType(MiniCallEvent.class);
+    }
+}
@@ -0,0 +1,17 @@
+package cn.jiayeli.mybatisMini.core;
+
+import java.io.Serializable;
+
+/**
+ * Looks one row up by key through a mapper, a mapper method reference such as
+ * {@code ConfigMapper::queryConfigByKey}.
+ *
+ * @param <M> the mapper type
+ * @param <K> the key type
+ * @param <T> the row type
+ * @see MiniSnapshot.Builder#lookup(MiniKeyMapper)
+ */
+@FunctionalInterface
+public interface MiniKeyMapper<M, K, T> extends Serializable {
+    T apply(M m, K key) throws Exception;
+}
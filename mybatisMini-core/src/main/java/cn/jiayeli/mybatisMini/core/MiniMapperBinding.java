@@ -0,0 +1,25 @@
+package cn.jiayeli.mybatisMini.core;
+
+/**
+ * Compile-time description of one MiniMapper interface, generated by {@code mybatisMini-processor} as
+ * {@code <Mapper>_MiniBinding} next to the mapper and listed in
+ * {@code META-INF/services/cn.jiayeli.mybatisMini.core.MiniMapperBinding}.
+ * <p>
+ * When a binding exists, the mapper class of a lambda is looked up from the binding instead of loading and
+ * inspecting classes by reflection. Add the processor as a {@code provided} dependency to generate them.
+ *
+ * @author kuro@jiayeli.com
+ */
+public interface MiniMapperBinding {
+
+    /**
+     * @return the mapper interface
+     */
+    Class<?> mapperClass();
+
+    /**
+     * @return the mapper's methods as name followed by JVM descriptor,
+     * e.g. {@code queryConfigByKey(Ljava/lang/String;)Lcn/jiayeli/model/ConfigModel;}
+     */
+    String[] methods();
+}
@@ -0,0 +1,298 @@
+package cn.jiayeli.mybatisMini.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.BatchResult;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.Serializable;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records MybatisMini call metrics per mapper method and publishes them over JMX.
+ * <p>
+ * A call is timed through a per-thread {@link CallRecorder} that MybatisMini starts and finishes around each
+ * {@code queryList}/{@code queryObject}, the opening of a stream's cursor and each flush of a batch, while
+ * {@link MetricsInterceptor} fills in the statement id, rows and the checkout, execute and mapping phases from
+ * inside MyBatis. The recorder is reused per thread, so a call
+ * allocates nothing once its mapper method has been seen. While a Java Flight Recorder recording has
+ * {@link MiniCallEvent} enabled, the recorder also emits one per call, whether metrics are enabled or not.
+ * <p>
+ * Metrics are JVM-wide: every client records into the same per-method metrics, and whether they are on and the
+ * slow-call threshold apply to all clients. Their defaults are read from the system properties
+ * {@value #ENABLED_PROPERTY} (default {@code true}) and {@value #SLOW_CALL_MILLIS_PROPERTY} (default 1000, 0 turns
+ * slow-call logging off).
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+final class MiniMetrics {
+
+    static final String JMX_DOMAIN = "cn.jiayeli.mybatisMini";
+    static final String ENABLED_PROPERTY = "mybatisMini.metrics.enabled";
+    static final String SLOW_CALL_MILLIS_PROPERTY = "mybatisMini.metrics.slowCallMillis";
+    private static final String NO_SQL_SUFFIX = ".[no-sql]";
+
+    private static final Map<String, MapperMethodMetrics> METHODS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<CallRecorder> RECORDERS = ThreadLocal.withInitial(CallRecorder::new);
+
+    private static volatile boolean enabled = Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true").trim());
+    private static volatile long slowCallNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(SLOW_CALL_MILLIS_PROPERTY, 1000L));
+
+    private MiniMetrics() {
+        // Utility class should not be instantiated
+    }
+
+    static void setEnabled(boolean enabled) {
+        MiniMetrics.enabled = enabled;
+    }
+
+    static boolean isEnabled() {
+        return enabled;
+    }
+
+    static void setSlowCallThreshold(long threshold, TimeUnit unit) {
+        slowCallNanos = unit.toNanos(threshold);
+    }
+
+    static Map<String, MapperMethodMetrics> methods() {
+        return Collections.unmodifiableMap(METHODS);
+    }
+
+    /**
+     * Starts timing a call on this thread.
+     *
+     * @param kind   the kind of call, e.g. "list" or "object"
+     * @param lambda the mapper function of the call, describes its call site in flight recorder events, may be
+     *               {@code null}
+     * @return the recorder, or {@code null} when neither metrics nor call events are enabled or a call is
+     * already being timed
+     */
+    static CallRecorder begin(String kind, Serializable lambda) {
+        boolean recordMetrics = enabled;
+        if (!recordMetrics && !MiniFlightRecorder.isEnabled()) {
+            return null;
+        }
+        CallRecorder recorder = RECORDERS.get();
+        if (recorder.active) {
+            return null;
+        }
+        recorder.start(kind, lambda, recordMetrics);
+        return recorder;
+    }
+
+    /**
+     * @return the recorder of the call being timed on this thread, or {@code null}
+     */
+    static CallRecorder current() {
+        CallRecorder recorder = RECORDERS.get();
+        return recorder.active ? recorder : null;
+    }
+
+    private static MapperMethodMetrics metricsFor(String name) {
+        MapperMethodMetrics metrics = METHODS.get(name);
+        if (metrics != null) {
+            return metrics;
+        }
+        return METHODS.computeIfAbsent(name, key -> {
+            MapperMethodMetrics created = new MapperMethodMetrics(key);
+            register(created);
+            return created;
+        });
+    }
+
+    private static void register(MapperMethodMetrics metrics) {
+        try {
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=MapperMethod,name=" + ObjectName.quote(metrics.getName()));
+            if (!mBeanServer.isRegistered(objectName)) {
+                mBeanServer.registerMBean(metrics, objectName);
+            }
+        } catch (Exception e) {
+            log.warn("Failed to register JMX metrics for {}", metrics.getName(), e);
+        }
+    }
+
+    /**
+     * Per-thread timing state of one MybatisMini call.
+     */
+    static final class CallRecorder {
+
+        private boolean active;
+        private long startNanos;
+        private long resolvedNanos;
+        private long executorStartNanos;
+        private long checkoutNanos;
+        private long statementNanos;
+        private long mappingNanos;
+        private long rows;
+        private boolean executedSql;
+        private boolean coalesced;
+        private String statementId;
+        private boolean recordMetrics;
+        private String kind;
+        private Serializable lambda;
+        private Object flightEvent;
+        private String sql;
+
+        private void start(String kind, Serializable lambda, boolean recordMetrics) {
+            active = true;
+            this.kind = kind;
+            this.lambda = lambda;
+            this.recordMetrics = recordMetrics;
+            flightEvent = MiniFlightRecorder.begin();
+            sql = null;
+            startNanos = System.nanoTime();
+            resolvedNanos = startNanos;
+            executorStartNanos = 0L;
+            checkoutNanos = 0L;
+            statementNanos = 0L;
+            mappingNanos = 0L;
+            rows = 0L;
+            executedSql = false;
+            coalesced = false;
+            statementId = null;
+        }
+
+        /**
+         * @return the id of the first statement this call ran, or {@code null}
+         */
+        String statementId() {
+            return statementId;
+        }
+
+        /**
+         * Marks the call as answered by an identical call running on another thread.
+         *
+         * @param statementId the statement the shared call ran, or {@code null}
+         */
+        void coalesced(String statementId) {
+            coalesced = true;
+            if (this.statementId == null) {
+                this.statementId = statementId;
+            }
+        }
+
+        void mapperResolved() {
+            resolvedNanos = System.nanoTime();
+        }
+
+        void executorStarted(String statementId) {
+            if (this.statementId == null) {
+                this.statementId = statementId;
+            }
+            executorStartNanos = System.nanoTime();
+        }
+
+        void statementPreparing() {
+            if (executorStartNanos != 0L) {
+                checkoutNanos += System.nanoTime() - executorStartNanos;
+                executorStartNanos = 0L;
+            }
+        }
+
+        /**
+         * @return whether the call needs the SQL of the statement being prepared, only true for the first
+         * statement of a call while a flight recording is running
+         */
+        boolean needsSql() {
+            return flightEvent != null && sql == null;
+        }
+
+        void sqlPrepared(String sql) {
+            this.sql = sql;
+        }
+
+        void statementExecuted(long nanos) {
+            executedSql = true;
+            statementNanos += nanos;
+        }
+
+        void resultsMapped(long nanos) {
+            mappingNanos += nanos;
+        }
+
+        void rowsRead(long count) {
+            rows += count;
+        }
+
+        /**
+         * Takes the statements a batch flush ran, which the statement handler calls of {@link MetricsInterceptor}
+         * never see.
+         *
+         * @param batchResults the statements flushed and their update counts
+         * @param nanos        the time the flush took
+         */
+        void batchFlushed(List<BatchResult> batchResults, long nanos) {
+            for (BatchResult batchResult : batchResults) {
+                executedSql = true;
+                if (statementId == null) {
+                    statementId = batchResult.getMappedStatement().getId();
+                }
+                if (needsSql()) {
+                    sql = batchResult.getSql();
+                }
+                for (int count : batchResult.getUpdateCounts()) {
+                    // negative counts are the driver's "succeeded, count unknown" and failure markers
+                    if (count > 0) {
+                        rows += count;
+                    }
+                }
+            }
+            statementNanos += nanos;
+        }
+
+        /**
+         * Ends the call, records it under its mapper method and logs it when slower than the threshold, and
+         * commits its flight recorder event.
+         *
+         * @param mapperClass the mapper the call went through, used when no statement ran
+         * @param result      the call result, used to count rows when no statement ran
+         * @param error       the failure, or {@code null}
+         */
+        void finish(Class<?> mapperClass, Object result, Throwable error) {
+            long endNanos = System.nanoTime();
+            active = false;
+            long totalNanos = endNanos - startNanos;
+            long resolveNanos = resolvedNanos - startNanos;
+            long executeNanos = Math.max(0L, statementNanos - mappingNanos);
+            long rowCount = executedSql ? rows : rowsOf(result);
+            String name = statementId != null ? statementId
+                    : (mapperClass == null ? "unknown" : mapperClass.getName()) + NO_SQL_SUFFIX;
+            if (flightEvent != null) {
+                MiniFlightRecorder.commit(flightEvent, kind, lambda, mapperClass, statementId, sql, resolveNanos,
+                        checkoutNanos, executeNanos, mappingNanos, rowCount, executedSql, coalesced, error);
+                flightEvent = null;
+                sql = null;
+            }
+            // the recorder outlives the call, it must not keep the lambda's class loader alive
+            lambda = null;
+            if (!recordMetrics) {
+                return;
+            }
+            long threshold = slowCallNanos;
+            boolean slow = threshold > 0 && totalNanos >= threshold;
+
+            metricsFor(name).record(totalNanos, resolveNanos, checkoutNanos, executeNanos, mappingNanos,
+                    executedSql, coalesced, rowCount, error != null, slow);
+            if (slow) {
+                log.warn("Slow MybatisMini call {} took {} ms (resolve {} us, checkout {} us, execute {} us, mapping {} us), {} rows",
+                        name, TimeUnit.NANOSECONDS.toMillis(totalNanos), TimeUnit.NANOSECONDS.toMicros(resolveNanos),
+                        TimeUnit.NANOSECONDS.toMicros(checkoutNanos), TimeUnit.NANOSECONDS.toMicros(executeNanos),
+                        TimeUnit.NANOSECONDS.toMicros(mappingNanos), rowCount);
+            }
+        }
+
+        private static long rowsOf(Object result) {
+            if (result == null) {
+                return 0L;
+            }
+            return result instanceof java.util.Collection ? ((java.util.Collection<?>) result).size() : 1L;
+        }
+    }
+}
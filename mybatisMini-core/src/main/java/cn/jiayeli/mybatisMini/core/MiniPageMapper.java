@@ -0,0 +1,19 @@
+package cn.jiayeli.mybatisMini.core;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Fetches one keyset page through a mapper: the rows whose key sorts after {@code afterKey}, in key order,
+ * at most {@code limit} of them. Normally a mapper method reference such as {@code ConfigMapper::queryPageAfter}
+ * backed by {@code WHERE config_key > #{afterKey} ORDER BY config_key LIMIT #{limit}}.
+ *
+ * @param <M> the mapper type
+ * @param <K> the key type
+ * @param <T> the row type
+ * @see MybatisMini#paginate(MiniPageMapper, Object, java.util.function.Function, int)
+ */
+@FunctionalInterface
+public interface MiniPageMapper<M, K, T> extends Serializable {
+    List<T> apply(M m, K afterKey, int limit) throws Exception;
+}
@@ -0,0 +1,459 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Bulk export of mapper results to a file and import of such a file back into a table, in chunks of rows
+ * that flow between stages through bounded queues. A stage that falls behind blocks the one feeding it, so
+ * memory stays bounded by the queued chunks whatever the size of the table.
+ * <p>
+ * An export reads a cursor on the calling thread, transforms and encodes each chunk on a pool of
+ * {@code parallelism} threads, and writes the encoded chunks in cursor order through a buffered
+ * {@link FileChannel} on a writer thread. An import reads and decodes the file on a reader thread, while the
+ * calling thread inserts the chunks with one multi-row {@code INSERT} each, through
+ * {@link MybatisMini#executeBatch(Class, Iterable, MiniBatchWriter, int)}.
+ *
+ * @author kuro@jiayeli.com
+ * @see MybatisMini#export(MiniMapper)
+ * @see MybatisMini#importFrom(Path, MiniFileFormat, Function)
+ */
+@Slf4j
+public final class MiniPipeline {
+
+    private static final long POLL_MILLIS = 100;
+    private static final Future<EncodedChunk> END_OF_CHUNKS = CompletableFuture.completedFuture(null);
+
+    private MiniPipeline() {
+        // Utility class should not be instantiated
+    }
+
+    /**
+     * Describes an export of a cursor query to a file; {@link #to(Path, MiniFileFormat, Function)} runs it.
+     *
+     * @param <T> the type of the rows written
+     */
+    public static final class Export<T> {
+
+        private final MybatisMiniClient client;
+        private final MiniMapper<?, ? extends Cursor<?>> query;
+        private Function<Object, Object> transform = Function.identity();
+        private int parallelism = 1;
+        private int fetchSize;
+        private int chunkSize = 1000;
+        private int maxPendingChunks = 8;
+
+        Export(MybatisMiniClient client, MiniMapper<?, ? extends Cursor<?>> query) {
+            this.client = client;
+            this.query = Objects.requireNonNull(query, "Mapper function cannot be null");
+        }
+
+        /**
+         * Transforms every row on {@code parallelism} threads before it is written; row order is kept.
+         * A transform returning {@code null} drops the row.
+         *
+         * @param transform   the transform, called concurrently
+         * @param parallelism threads transforming and encoding chunks, 1 by default
+         * @param <U>         the transformed row type
+         * @return this builder
+         */
+        @SuppressWarnings("unchecked")
+        public <U> Export<U> transform(Function<? super T, ? extends U> transform, int parallelism) {
+            Objects.requireNonNull(transform, "Transform cannot be null");
+            if (parallelism <= 0) {
+                throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+            }
+            Function<Object, Object> previous = this.transform;
+            this.transform = row -> {
+                Object transformed = previous.apply(row);
+                return transformed == null ? null : transform.apply((T) transformed);
+            };
+            this.parallelism = parallelism;
+            return (Export<U>) this;
+        }
+
+        /**
+         * @param fetchSize the JDBC fetch size of the cursor, see {@link MybatisMini#stream(MiniMapper, int)}
+         * @return this builder
+         */
+        public Export<T> fetchSize(int fetchSize) {
+            this.fetchSize = fetchSize;
+            return this;
+        }
+
+        /**
+         * @param chunkSize rows transformed and written together, 1000 by default
+         * @return this builder
+         */
+        public Export<T> chunkSize(int chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * @param maxPendingChunks chunks read but not yet written before reading blocks, 8 by default
+         * @return this builder
+         */
+        public Export<T> maxPendingChunks(int maxPendingChunks) {
+            if (maxPendingChunks <= 0) {
+                throw new IllegalArgumentException("Maximum pending chunks must be positive: " + maxPendingChunks);
+            }
+            this.maxPendingChunks = maxPendingChunks;
+            return this;
+        }
+
+        /**
+         * Runs the export, replacing the file. A failed export leaves the rows written so far in the file.
+         *
+         * @param file    the file to write
+         * @param format  the file format
+         * @param encoder the fields of a row, called concurrently
+         * @return the rows and bytes written and the rate
+         * @throws MybatisMiniException if reading, transforming or writing fails
+         */
+        @SuppressWarnings("unchecked")
+        public MiniPipelineStats to(Path file, MiniFileFormat format, Function<? super T, String[]> encoder) {
+            Objects.requireNonNull(file, "File cannot be null");
+            Objects.requireNonNull(format, "File format cannot be null");
+            Objects.requireNonNull(encoder, "Encoder cannot be null");
+            long startNanos = System.nanoTime();
+            BlockingQueue<Future<EncodedChunk>> pending = new ArrayBlockingQueue<>(maxPendingChunks);
+            ExecutorService workers = newThreads("mybatisMini-export-transform-", parallelism);
+            ExecutorService writer = newThreads("mybatisMini-export-writer-", 1);
+            Future<MiniPipelineStats> written = writer.submit(() -> writeChunks(file, pending, startNanos));
+            BooleanSupplier writerStopped = written::isDone;
+            try (Stream<Object> rows = client.stream((MiniMapper<Object, Cursor<Object>>) query, fetchSize)) {
+                Iterator<Object> cursor = rows.iterator();
+                while (cursor.hasNext()) {
+                    List<Object> chunk = new ArrayList<>(chunkSize);
+                    while (chunk.size() < chunkSize && cursor.hasNext()) {
+                        chunk.add(cursor.next());
+                    }
+                    put(pending, workers.submit(() -> encode(chunk, format, (Function<Object, String[]>) encoder)),
+                            writerStopped);
+                }
+                put(pending, END_OF_CHUNKS, writerStopped);
+                MiniPipelineStats stats = written.get();
+                log.info("Exported {} rows ({} bytes) to {} in {} ms, {} rows/s", stats.getRows(), stats.getBytes(),
+                        file, stats.getElapsedMillis(), (long) stats.getRowsPerSecond());
+                return stats;
+            } catch (Exception e) {
+                Throwable cause = written.isDone() ? failureOf(written) : null;
+                cause = unwrap(cause == null ? e : cause);
+                log.error("Error while exporting to {}", file, cause);
+                throw new MybatisMiniException("Failed to export to " + file, cause);
+            } finally {
+                workers.shutdownNow();
+                writer.shutdownNow();
+            }
+        }
+
+        private EncodedChunk encode(List<Object> chunk, MiniFileFormat format, Function<Object, String[]> encoder)
+                throws Exception {
+            List<String[]> rows = new ArrayList<>(chunk.size());
+            for (Object row : chunk) {
+                Object transformed = transform.apply(row);
+                if (transformed != null) {
+                    rows.add(Objects.requireNonNull(encoder.apply(transformed), "Encoder returned null"));
+                }
+            }
+            return new EncodedChunk(rows.size(), format.encode(rows));
+        }
+    }
+
+    /**
+     * Describes an import of a file into a table; {@link #into(Class, MiniBatchWriter)} runs it.
+     *
+     * @param <T> the row type
+     */
+    public static final class Import<T> {
+
+        private final MybatisMiniClient client;
+        private final Path file;
+        private final MiniFileFormat format;
+        private final Function<String[], ? extends T> decoder;
+        private int rowsPerInsert = 500;
+        private int insertsPerCommit = 20;
+        private int maxPendingChunks = 8;
+
+        Import(MybatisMiniClient client, Path file, MiniFileFormat format, Function<String[], ? extends T> decoder) {
+            this.client = client;
+            this.file = Objects.requireNonNull(file, "File cannot be null");
+            this.format = Objects.requireNonNull(format, "File format cannot be null");
+            this.decoder = Objects.requireNonNull(decoder, "Decoder cannot be null");
+        }
+
+        /**
+         * @param rowsPerInsert rows passed to one call of the insert, 500 by default
+         * @return this builder
+         */
+        public Import<T> rowsPerInsert(int rowsPerInsert) {
+            if (rowsPerInsert <= 0) {
+                throw new IllegalArgumentException("Rows per insert must be positive: " + rowsPerInsert);
+            }
+            this.rowsPerInsert = rowsPerInsert;
+            return this;
+        }
+
+        /**
+         * @param insertsPerCommit inserts flushed and committed together, 20 by default
+         * @return this builder
+         */
+        public Import<T> insertsPerCommit(int insertsPerCommit) {
+            if (insertsPerCommit <= 0) {
+                throw new IllegalArgumentException("Inserts per commit must be positive: " + insertsPerCommit);
+            }
+            this.insertsPerCommit = insertsPerCommit;
+            return this;
+        }
+
+        /**
+         * @param maxPendingChunks chunks decoded but not yet inserted before reading blocks, 8 by default
+         * @return this builder
+         */
+        public Import<T> maxPendingChunks(int maxPendingChunks) {
+            if (maxPendingChunks <= 0) {
+                throw new IllegalArgumentException("Maximum pending chunks must be positive: " + maxPendingChunks);
+            }
+            this.maxPendingChunks = maxPendingChunks;
+            return this;
+        }
+
+        /**
+         * Runs the import. Like {@link MybatisMini#executeBatch(Class, Iterable, MiniBatchWriter, int)}, a failure
+         * rolls back the current commit only.
+         *
+         * @param mapperClass the mapper type to insert through
+         * @param insert      inserts a chunk of rows, e.g. a {@code <foreach>} over a {@code VALUES} list
+         * @param <M>         the mapper type
+         * @return the rows inserted and bytes read and the rate
+         * @throws MybatisMiniException if reading, decoding or inserting fails
+         */
+        public <M> MiniPipelineStats into(Class<M> mapperClass, MiniBatchWriter<M, List<T>> insert) {
+            Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+            Objects.requireNonNull(insert, "Insert cannot be null");
+            long startNanos = System.nanoTime();
+            BlockingQueue<List<T>> chunks = new ArrayBlockingQueue<>(maxPendingChunks);
+            AtomicBoolean inserterStopped = new AtomicBoolean();
+            ExecutorService reader = newThreads("mybatisMini-import-reader-", 1);
+            Future<Long> read = reader.submit(() -> readChunks(chunks, inserterStopped::get));
+            ChunkIterator<T> pending = new ChunkIterator<>(chunks, read);
+            try {
+                client.executeBatch(mapperClass, () -> pending, insert, insertsPerCommit);
+                MiniPipelineStats stats = new MiniPipelineStats(pending.rows, read.get(), System.nanoTime() - startNanos);
+                log.info("Imported {} rows ({} bytes) from {} in {} ms, {} rows/s", stats.getRows(), stats.getBytes(),
+                        file, stats.getElapsedMillis(), (long) stats.getRowsPerSecond());
+                return stats;
+            } catch (Exception e) {
+                Throwable cause = unwrap(e);
+                log.error("Error while importing {}, {} rows read", file, pending.rows, cause);
+                throw new MybatisMiniException("Failed to import " + file, cause);
+            } finally {
+                inserterStopped.set(true);
+                reader.shutdownNow();
+            }
+        }
+
+        private long readChunks(BlockingQueue<List<T>> chunks, BooleanSupplier inserterStopped) throws Exception {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MiniFileFormat.RowReader rows = format.reader(channel);
+                List<T> chunk = new ArrayList<>(rowsPerInsert);
+                for (String[] fields = rows.next(); fields != null; fields = rows.next()) {
+                    T row = decoder.apply(fields);
+                    // a decoder returning null skips the row, e.g. a CSV header
+                    if (row != null) {
+                        chunk.add(row);
+                    }
+                    if (chunk.size() == rowsPerInsert) {
+                        put(chunks, chunk, inserterStopped);
+                        chunk = new ArrayList<>(rowsPerInsert);
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    put(chunks, chunk, inserterStopped);
+                }
+                // chunks are never empty, so an empty list ends them
+                put(chunks, new ArrayList<>(0), inserterStopped);
+                return channel.size();
+            }
+        }
+    }
+
+    /**
+     * Hands the chunks queued by the reader thread to the inserting thread, rethrowing a failure of the reader.
+     */
+    private static final class ChunkIterator<T> implements Iterator<List<T>> {
+
+        private final BlockingQueue<List<T>> chunks;
+        private final Future<Long> reader;
+        private List<T> next;
+        private boolean ended;
+        private long rows;
+
+        private ChunkIterator(BlockingQueue<List<T>> chunks, Future<Long> reader) {
+            this.chunks = chunks;
+            this.reader = reader;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (next == null && !ended) {
+                next = take();
+                ended = next.isEmpty();
+            }
+            return !ended;
+        }
+
+        @Override
+        public List<T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            List<T> chunk = next;
+            next = null;
+            rows += chunk.size();
+            return chunk;
+        }
+
+        private List<T> take() {
+            try {
+                while (true) {
+                    List<T> chunk = chunks.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (chunk != null) {
+                        return chunk;
+                    }
+                    if (reader.isDone() && chunks.isEmpty()) {
+                        reader.get();
+                        throw new MybatisMiniException("Import reader stopped before the end of the file");
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MybatisMiniException("Interrupted while waiting for rows to import", e);
+            } catch (ExecutionException e) {
+                throw new MybatisMiniException("Failed to read rows to import", e.getCause());
+            }
+        }
+    }
+
+    /**
+     * Rows of a chunk in the file format, and how many there are.
+     */
+    private static final class EncodedChunk {
+
+        private final int rows;
+        private final byte[] bytes;
+
+        private EncodedChunk(int rows, byte[] bytes) {
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+    }
+
+    private static MiniPipelineStats writeChunks(Path file, BlockingQueue<Future<EncodedChunk>> pending, long startNanos)
+            throws Exception {
+        long rows = 0;
+        long bytes = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(MiniFileFormat.BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Future<EncodedChunk> next = pending.take(); next != END_OF_CHUNKS; next = pending.take()) {
+                EncodedChunk chunk = next.get();
+                rows += chunk.rows;
+                bytes += chunk.bytes.length;
+                if (chunk.bytes.length > buffer.remaining()) {
+                    flush(channel, buffer);
+                }
+                if (chunk.bytes.length > buffer.remaining()) {
+                    // larger than the whole buffer, copying it first would gain nothing
+                    writeFully(channel, ByteBuffer.wrap(chunk.bytes));
+                } else {
+                    buffer.put(chunk.bytes);
+                }
+            }
+            flush(channel, buffer);
+        }
+        return new MiniPipelineStats(rows, bytes, System.nanoTime() - startNanos);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws Exception {
+        buffer.flip();
+        writeFully(channel, buffer);
+        buffer.clear();
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws Exception {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Queues an element, blocking while the queue is full unless its consumer has stopped.
+     */
+    private static <E> void put(BlockingQueue<E> queue, E element, BooleanSupplier consumerStopped)
+            throws InterruptedException {
+        while (!queue.offer(element, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+            if (consumerStopped.getAsBoolean()) {
+                throw new MybatisMiniException("Pipeline stage stopped consuming");
+            }
+        }
+    }
+
+    /**
+     * @return the failure of a completed stage, which explains why the stage feeding it had to stop
+     */
+    private static Throwable failureOf(Future<?> stage) {
+        try {
+            stage.get();
+            return null;
+        } catch (ExecutionException e) {
+            return e.getCause();
+        } catch (Exception e) {
+            return e;
+        }
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        while ((e instanceof ExecutionException || e instanceof MybatisMiniException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e;
+    }
+
+    private static ExecutorService newThreads(String namePrefix, int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,32 @@
+package cn.jiayeli.mybatisMini.core;
+
+import lombok.Value;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a {@link MiniPipeline} export or import.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Value
+public class MiniPipelineStats {
+
+    /**
+     * Rows written to the file, or inserted into the database.
+     */
+    long rows;
+    /**
+     * Size of the file written or read.
+     */
+    long bytes;
+    long elapsedNanos;
+
+    public long getElapsedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0D : rows * 1e9 / elapsedNanos;
+    }
+}
@@ -0,0 +1,15 @@
+package cn.jiayeli.mybatisMini.core;
+
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * A unit of work run against one shared SqlSession.
+ *
+ * @param <R> the result type
+ * @see MybatisMini#inSession(MiniSessionWork)
+ * @see MybatisMini#inTransaction(MiniSessionWork)
+ */
+@FunctionalInterface
+public interface MiniSessionWork<R> {
+    R execute(SqlSession sqlSession) throws Exception;
+}
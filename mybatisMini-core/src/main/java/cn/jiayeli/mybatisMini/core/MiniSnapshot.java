@@ -0,0 +1,411 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Serializable;
+import java.lang.invoke.MethodHandleInfo;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.SerializedLambda;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * An in-memory copy of a small, rarely changing table, indexed by key and refreshed in the background.
+ * <pre>{@code
+ * MiniSnapshot<String, ConfigModel> configs = MybatisMini.snapshot(ConfigMapper::queryAllVersioned, ConfigModel::getConfig_key)
+ *         .lookup(ConfigMapper::queryConfigByKey)
+ *         .changes(ConfigMapper::queryChangedSince, ConfigModel::getUpdated_at)
+ *         .refreshEvery(5, TimeUnit.SECONDS)
+ *         .start();
+ * ConfigModel username = MybatisMini.queryObject(m -> m.queryConfigByKey("username")); // from memory
+ * }</pre>
+ * The full query is loaded once when the snapshot starts. Every refresh then fetches the rows changed since the
+ * highest version seen and applies them to a copy, or reloads the full query when no change query is given.
+ * The copy replaces the snapshot in one step, so readers never wait and never see half of a refresh. A failing
+ * refresh keeps the current snapshot and is retried at the next interval. Rows deleted from the table are only
+ * dropped by a full {@link #reload()}, unless soft deletes are reported through
+ * {@link Builder#removedWhen(Predicate)}.
+ * <p>
+ * While the snapshot is registered, {@code queryList}/{@code queryObject} calls on its mapper run against the
+ * snapshot: the full query method returns all rows and the lookup method the row of its key. Calls using any
+ * other mapper method, and calls inside {@link MybatisMini#inTransaction(MiniSessionWork)}, go to the database.
+ * Rows are shared by all callers and must not be modified.
+ *
+ * @param <K> the key type
+ * @param <T> the row type
+ * @author kuro@jiayeli.com
+ * @see MybatisMini#snapshot(MiniMapper, Function)
+ */
+@Slf4j
+public final class MiniSnapshot<K, T> implements AutoCloseable {
+
+    static final Object MISS = new Object();
+    private static final ScheduledThreadPoolExecutor REFRESH_TIMER = newRefreshTimer();
+
+    private final Class<?> mapperClass;
+    private final Function<MiniMapper<Object, List<T>>, List<T>> loader;
+    private final MiniMapper<Object, List<T>> fullQuery;
+    private final Function<? super T, ? extends K> keyOf;
+    private final MiniChangeMapper<Object, Object, T> changeQuery;
+    private final Function<? super T, ? extends Comparable<Object>> versionOf;
+    private final Predicate<? super T> removed;
+    private final Method fullQueryMethod;
+    private final Method lookupMethod;
+    private final Consumer<MiniSnapshot<K, T>> unregister;
+
+    private final Object refreshLock = new Object();
+    private volatile State<K, T> state;
+    private ScheduledFuture<?> refreshTask;
+
+    @SuppressWarnings("unchecked")
+    private MiniSnapshot(Builder<?, K, T> builder, Class<?> mapperClass,
+                         Function<MiniMapper<Object, List<T>>, List<T>> loader, Consumer<MiniSnapshot<K, T>> unregister) {
+        this.mapperClass = mapperClass;
+        this.loader = loader;
+        this.fullQuery = (MiniMapper<Object, List<T>>) builder.fullQuery;
+        this.keyOf = builder.keyOf;
+        this.changeQuery = (MiniChangeMapper<Object, Object, T>) builder.changeQuery;
+        this.versionOf = (Function<? super T, ? extends Comparable<Object>>) builder.versionOf;
+        this.removed = builder.removed;
+        this.fullQueryMethod = mapperMethod(mapperClass, builder.fullQuery);
+        this.lookupMethod = builder.lookup == null ? null : mapperMethod(mapperClass, builder.lookup);
+        if (builder.lookup != null && lookupMethod == null) {
+            throw new MybatisMiniException("Snapshot lookup must be a method reference of " + mapperClass.getName());
+        }
+        this.unregister = unregister;
+    }
+
+    /**
+     * @param key the key
+     * @return the row of the key, {@code null} if there is none
+     */
+    public T get(K key) {
+        return state.rows.get(key);
+    }
+
+    /**
+     * @return all rows by key, in the order of the full query with rows added since at the end
+     */
+    public Map<K, T> asMap() {
+        return state.rows;
+    }
+
+    public int size() {
+        return state.rows.size();
+    }
+
+    /**
+     * @return how many times the snapshot was replaced since it started, 0 after the initial load
+     */
+    public long getGeneration() {
+        return state.generation;
+    }
+
+    /**
+     * Applies the rows changed since the last refresh now, or reloads the full query when there is no change
+     * query, instead of waiting for the next interval.
+     *
+     * @throws MybatisMiniException if the query fails; the current snapshot is kept
+     */
+    public void refresh() {
+        if (changeQuery == null) {
+            reload();
+            return;
+        }
+        synchronized (refreshLock) {
+            State<K, T> current = state;
+            Comparable<Object> since = current.version;
+            if (since == null) {
+                // no row had a version yet, so there is nothing to fetch changes after
+                state = load(current.generation + 1);
+                return;
+            }
+            List<T> changed = loader.apply(mapper -> changeQuery.apply(mapper, since));
+            Map<K, T> rows = null;
+            Comparable<Object> version = current.version;
+            for (T row : changed == null ? Collections.<T>emptyList() : changed) {
+                version = max(version, versionOf.apply(row));
+                K key = keyOf.apply(row);
+                boolean gone = removed != null && removed.test(row);
+                T previous = (rows == null ? current.rows : rows).get(key);
+                if (gone ? previous == null : row.equals(previous)) {
+                    continue;
+                }
+                if (rows == null) {
+                    rows = new LinkedHashMap<>(current.rows);
+                }
+                if (gone) {
+                    rows.remove(key);
+                } else {
+                    rows.put(key, row);
+                }
+            }
+            if (rows != null) {
+                state = new State<>(this, Collections.unmodifiableMap(rows), version, current.generation + 1);
+                log.debug("Applied changes to snapshot of {}, {} rows", mapperClass.getName(), rows.size());
+            } else if (version != current.version) {
+                state = new State<>(this, current.rows, version, current.generation);
+            }
+        }
+    }
+
+    /**
+     * Loads the full query again, dropping rows deleted from the table.
+     *
+     * @throws MybatisMiniException if the query fails; the current snapshot is kept
+     */
+    public void reload() {
+        synchronized (refreshLock) {
+            State<K, T> current = state;
+            state = load(current == null ? 0 : current.generation + 1);
+        }
+    }
+
+    /**
+     * Stops refreshing and sends calls on the mapper to the database again.
+     */
+    @Override
+    public void close() {
+        synchronized (refreshLock) {
+            if (refreshTask != null) {
+                refreshTask.cancel(false);
+            }
+        }
+        unregister.accept(this);
+    }
+
+    /**
+     * Runs a mapper call against the snapshot.
+     *
+     * @param function the mapper call
+     * @return its result, or {@link #MISS} when it uses a mapper method the snapshot cannot answer
+     * @throws Exception if the call fails
+     */
+    @SuppressWarnings("unchecked")
+    Object answer(MiniMapper<?, ?> function) throws Exception {
+        try {
+            return ((MiniMapper<Object, Object>) function).apply(state.mapper);
+        } catch (NotInSnapshot e) {
+            return MISS;
+        }
+    }
+
+    private State<K, T> load(long generation) {
+        List<T> loaded = loader.apply(fullQuery);
+        Map<K, T> rows = new LinkedHashMap<>();
+        Comparable<Object> version = null;
+        for (T row : loaded == null ? Collections.<T>emptyList() : loaded) {
+            if (versionOf != null) {
+                version = max(version, versionOf.apply(row));
+            }
+            if (removed == null || !removed.test(row)) {
+                rows.put(keyOf.apply(row), row);
+            }
+        }
+        log.debug("Loaded snapshot of {} with {} rows", mapperClass.getName(), rows.size());
+        return new State<>(this, Collections.unmodifiableMap(rows), version, generation);
+    }
+
+    private void start(long refreshInterval, TimeUnit unit) {
+        state = load(0);
+        if (refreshInterval > 0) {
+            refreshTask = REFRESH_TIMER.scheduleWithFixedDelay(this::refreshQuietly, refreshInterval, refreshInterval, unit);
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refresh();
+        } catch (RuntimeException e) {
+            log.warn("Failed to refresh snapshot of {}, keeping the current one", mapperClass.getName(), e);
+        }
+    }
+
+    private Object invoke(State<K, T> snapshot, Method method, Object[] args) {
+        if (method.equals(lookupMethod)) {
+            return snapshot.rows.get(args[0]);
+        }
+        if (method.equals(fullQueryMethod)) {
+            return snapshot.values;
+        }
+        if (method.getDeclaringClass() == Object.class) {
+            switch (method.getName()) {
+                case "equals":
+                    return snapshot.mapper == args[0];
+                case "hashCode":
+                    return System.identityHashCode(snapshot.mapper);
+                default:
+                    return "Snapshot of " + mapperClass.getName();
+            }
+        }
+        throw NotInSnapshot.INSTANCE;
+    }
+
+    private static Comparable<Object> max(Comparable<Object> version, Comparable<Object> candidate) {
+        return candidate != null && (version == null || candidate.compareTo(version) > 0) ? candidate : version;
+    }
+
+    /**
+     * @return the mapper method a method reference points at, {@code null} for any other lambda
+     */
+    private static Method mapperMethod(Class<?> mapperClass, Serializable reference) {
+        SerializedLambda lambda = MapperClassResolver.serializeLambda(reference);
+        if (lambda.getImplMethodKind() != MethodHandleInfo.REF_invokeInterface) {
+            return null;
+        }
+        Class<?>[] parameterTypes = MethodType.fromMethodDescriptorString(lambda.getImplMethodSignature(),
+                mapperClass.getClassLoader()).parameterArray();
+        for (Method method : mapperClass.getMethods()) {
+            if (method.getName().equals(lambda.getImplMethodName())
+                    && Arrays.equals(method.getParameterTypes(), parameterTypes)) {
+                return method;
+            }
+        }
+        return null;
+    }
+
+    private static ScheduledThreadPoolExecutor newRefreshTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "mybatisMini-snapshot-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+
+    /**
+     * One immutable view: the rows, the highest version among them and a mapper answering from them.
+     */
+    private static final class State<K, T> {
+        final Map<K, T> rows;
+        final List<T> values;
+        final Comparable<Object> version;
+        final long generation;
+        final Object mapper;
+
+        State(MiniSnapshot<K, T> snapshot, Map<K, T> rows, Comparable<Object> version, long generation) {
+            this.rows = rows;
+            this.values = Collections.unmodifiableList(new ArrayList<>(rows.values()));
+            this.version = version;
+            this.generation = generation;
+            this.mapper = Proxy.newProxyInstance(snapshot.mapperClass.getClassLoader(),
+                    new Class<?>[]{snapshot.mapperClass}, (proxy, method, args) -> snapshot.invoke(this, method, args));
+        }
+    }
+
+    /**
+     * Thrown by the snapshot mapper for a method it cannot answer; never escapes {@link #answer(MiniMapper)}.
+     */
+    private static final class NotInSnapshot extends RuntimeException {
+        static final NotInSnapshot INSTANCE = new NotInSnapshot();
+
+        private NotInSnapshot() {
+            super(null, null, false, false);
+        }
+    }
+
+    /**
+     * Describes a snapshot; {@link #start()} loads and registers it.
+     *
+     * @param <M> the mapper type
+     * @param <K> the key type
+     * @param <T> the row type
+     */
+    public static final class Builder<M, K, T> {
+
+        private final MybatisMiniClient client;
+        private final MiniMapper<M, List<T>> fullQuery;
+        private final Function<? super T, ? extends K> keyOf;
+        private MiniKeyMapper<M, K, T> lookup;
+        private MiniChangeMapper<M, ?, T> changeQuery;
+        private Function<? super T, ?> versionOf;
+        private Predicate<? super T> removed;
+        private long refreshInterval = 30;
+        private TimeUnit refreshUnit = TimeUnit.SECONDS;
+
+        Builder(MybatisMiniClient client, MiniMapper<M, List<T>> fullQuery, Function<? super T, ? extends K> keyOf) {
+            this.client = client;
+            this.fullQuery = Objects.requireNonNull(fullQuery, "Full query cannot be null");
+            this.keyOf = Objects.requireNonNull(keyOf, "Key extractor cannot be null");
+        }
+
+        /**
+         * @param lookup the mapper method looking a row up by key, answered from the snapshot
+         * @return this builder
+         */
+        public Builder<M, K, T> lookup(MiniKeyMapper<M, K, T> lookup) {
+            this.lookup = Objects.requireNonNull(lookup, "Lookup cannot be null");
+            return this;
+        }
+
+        /**
+         * Refreshes incrementally instead of reloading the full query.
+         *
+         * @param changeQuery fetches the rows changed since a version, including those at the version
+         * @param versionOf   the version of a row, e.g. its update timestamp
+         * @param <V>         the version type
+         * @return this builder
+         */
+        public <V extends Comparable<? super V>> Builder<M, K, T> changes(MiniChangeMapper<M, V, T> changeQuery,
+                                                                        Function<? super T, ? extends V> versionOf) {
+            this.changeQuery = Objects.requireNonNull(changeQuery, "Change query cannot be null");
+            this.versionOf = Objects.requireNonNull(versionOf, "Version extractor cannot be null");
+            return this;
+        }
+
+        /**
+         * @param removed tells soft-deleted rows, which are dropped from the snapshot
+         * @return this builder
+         */
+        public Builder<M, K, T> removedWhen(Predicate<? super T> removed) {
+            this.removed = Objects.requireNonNull(removed, "Removal predicate cannot be null");
+            return this;
+        }
+
+        /**
+         * @param interval time between refreshes, 30 seconds by default; 0 refreshes only on {@link #refresh()}
+         * @param unit     the unit of the interval
+         * @return this builder
+         */
+        public Builder<M, K, T> refreshEvery(long interval, TimeUnit unit) {
+            if (interval < 0) {
+                throw new IllegalArgumentException("Refresh interval cannot be negative: " + interval);
+            }
+            this.refreshInterval = interval;
+            this.refreshUnit = Objects.requireNonNull(unit, "Time unit cannot be null");
+            return this;
+        }
+
+        /**
+         * Loads the snapshot and answers calls on the mapper from it, replacing any snapshot of the same mapper.
+         *
+         * @return the started snapshot
+         * @throws MybatisMiniException if the full query fails
+         */
+        public MiniSnapshot<K, T> start() {
+            return client.startSnapshot(this, fullQuery);
+        }
+
+        MiniSnapshot<K, T> build(Class<?> mapperClass, Function<MiniMapper<Object, List<T>>, List<T>> loader,
+                                 Consumer<MiniSnapshot<K, T>> unregister) {
+            MiniSnapshot<K, T> snapshot = new MiniSnapshot<>(this, mapperClass, loader, unregister);
+            snapshot.start(refreshInterval, refreshUnit);
+            return snapshot;
+        }
+    }
+}
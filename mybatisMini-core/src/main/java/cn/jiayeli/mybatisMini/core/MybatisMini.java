@@ -1,40 +1,67 @@
 package cn.jiayeli.mybatisMini.core;
 
-import lombok.extern.slf4j.Slf4j;
-import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.mapping.Environment;
 import org.apache.ibatis.session.SqlSession;
-import org.apache.ibatis.session.SqlSessionFactory;
-import org.apache.ibatis.session.SqlSessionFactoryBuilder;
 
-import java.io.IOException;
-import java.io.InputStream;
-import java.lang.invoke.SerializedLambda;
-import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * MybatisMini encapsulates MyBatis SqlSession and adds utility methods for query operations.
+ * <p>
+ * The static methods run against a default {@link MybatisMiniClient}, built from {@code mybatis/mybatisConfig.xml}
+ * on the first call. Use {@link #builder()} for a client with another config, or for several databases in one JVM.
  */
-@Slf4j
 public class MybatisMini {
 
-    private static final String MYBATIS_CONFIG_PATH = "mybatis/mybatisConfig.xml";
-    private static SqlSessionFactory sqlSessionFactory;
+    private static volatile MybatisMiniClient defaultClient;
 
-    static {
-        initializeSqlSessionFactory();
+    /**
+     * @return a builder for a {@link MybatisMiniClient} independent of the default one
+     */
+    public static MybatisMiniClient.Builder builder() {
+        return MybatisMiniClient.builder();
     }
 
-    private static void initializeSqlSessionFactory() {
-        try (InputStream inputStream = Resources.getResourceAsStream(MYBATIS_CONFIG_PATH)) {
-            if (inputStream == null) {
-                throw new MybatisMiniException("Failed to load mybatis config file: " + MYBATIS_CONFIG_PATH);
+    /**
+     * Returns the client the static methods run against, building it from {@code mybatis/mybatisConfig.xml}
+     * on the first call. A failed build is reported as a {@link MybatisMiniException} and retried on the next call.
+     *
+     * @return the default client
+     * @throws MybatisMiniException if the default config cannot be loaded
+     */
+    public static MybatisMiniClient getDefaultClient() {
+        MybatisMiniClient client = defaultClient;
+        if (client == null) {
+            synchronized (MybatisMini.class) {
+                client = defaultClient;
+                if (client == null) {
+                    client = MybatisMiniClient.builder().build();
+                    defaultClient = client;
+                }
             }
-            sqlSessionFactory = new SqlSessionFactoryBuilder().build(inputStream);
-        } catch (IOException e) {
-            throw new MybatisMiniException("Error initializing MyBatis SqlSessionFactory", e);
         }
+        return client;
+    }
+
+    /**
+     * Makes the static methods run against the given client, e.g. one built with warm-up at application start.
+     * The previous default client is not closed.
+     *
+     * @param client the new default client
+     */
+    public static void setDefaultClient(MybatisMiniClient client) {
+        Objects.requireNonNull(client, "Client cannot be null");
+        defaultClient = client;
     }
 
     /**
@@ -43,10 +70,19 @@ public class MybatisMini {
      * @return SqlSession object
      */
     public static SqlSession getSqlSession() {
-        if (sqlSessionFactory == null) {
-            throw new MybatisMiniException("SqlSessionFactory is not initialized");
-        }
-        return sqlSessionFactory.openSession();
+        return getDefaultClient().getSqlSession();
+    }
+
+    /**
+     * Returns a snapshot of the connection pool behind the configured environment,
+     * e.g. to export active/idle connections and waiting threads as metrics.
+     *
+     * @return the pool statistics
+     * @throws MybatisMiniException if the data source is neither HikariCP nor MyBatis POOLED
+     * @see HikariDataSourceFactory
+     */
+    public static PoolStats getPoolStats() {
+        return getDefaultClient().getPoolStats();
     }
 
     /**
@@ -58,16 +94,7 @@ public class MybatisMini {
      * @return the query result as a list
      */
     public static <M, T> List<T> queryList(MiniMapper<M, List<T>> function) {
-        Objects.requireNonNull(function, "Mapper function cannot be null");
-
-        try (SqlSession sqlSession = getSqlSession()) {
-            Class<M> mapperClass = resolveMapperClass(function);
-            M mapper = sqlSession.getMapper(mapperClass);
-            return function.apply(mapper);
-        } catch (Exception e) {
-            log.error("Error while querying list from MyBatis mapper", e);
-            throw new MybatisMiniException("Failed to query list", e);
-        }
+        return getDefaultClient().queryList(function);
     }
 
     /**
@@ -79,39 +106,767 @@ public class MybatisMini {
      * @return the query result as an object
      */
     public static <M, T> T queryObject(MiniMapper<M, T> function) {
-        Objects.requireNonNull(function, "Mapper function cannot be null");
-
-        try (SqlSession sqlSession = getSqlSession()) {
-            Class<M> mapperClass = resolveMapperClass(function);
-            M mapper = sqlSession.getMapper(mapperClass);
-            return function.apply(mapper);
-        } catch (Exception e) {
-            log.error("Error while querying object from MyBatis mapper", e);
-            throw new MybatisMiniException("Failed to query object", e);
-        }
+        return getDefaultClient().queryObject(function);
     }
 
     /**
-     * Resolves the mapper class from a MiniMapper lambda function.
+     * Sends {@code queryList}/{@code queryObject}/{@code stream} calls to the given read replicas, balanced by
+     * {@code balancing}. Writes ({@code executeBatch}) and everything inside {@link #inSession(MiniSessionWork)}
+     * or {@link #inTransaction(MiniSessionWork)} stay on the primary. A replica whose connection fails is taken
+     * out of rotation for {@code ejectFor}, the read is retried on the primary, and after that time one read
+     * probes the replica again.
+     * <p>
+     * Replicas can also be declared in the MyBatis config: list their environment ids in the
+     * {@code mybatisMini.replicas} property, optionally with {@code mybatisMini.replicas.balancing} and
+     * {@code mybatisMini.replicas.ejectMillis}.
      *
-     * @param lambda the mapper method reference as a lambda
-     * @param <T>    the mapper type
-     * @return the class of the mapper
-     * @throws MybatisMiniException if the lambda does not represent a valid mapper method
+     * @param replicas  the replica environments; they share the primary's mappers and settings
+     * @param balancing how reads are spread over healthy replicas
+     * @param ejectFor  how long a failed replica stays out of rotation
+     * @param unit      unit of {@code ejectFor}
      */
-    @SuppressWarnings("unchecked")
-    private static <T> Class<T> resolveMapperClass(MiniMapper<T, ?> lambda) {
-        try {
-            Method writeReplace = lambda.getClass().getDeclaredMethod("writeReplace");
-            writeReplace.setAccessible(true);
-            SerializedLambda serializedLambda = (SerializedLambda) writeReplace.invoke(lambda);
+    public static void useReplicas(List<Environment> replicas, ReplicaBalancing balancing, long ejectFor, TimeUnit unit) {
+        getDefaultClient().useReplicas(replicas, balancing, ejectFor, unit);
+    }
 
-            String className = ReflectUtils.getMybatisMiniMapperClass(serializedLambda);
-            return (Class<T>) Class.forName(className);
-        } catch (Exception e) {
-            log.error("Failed to resolve mapper class for lambda: {}", lambda, e);
-            throw new MybatisMiniException("Error resolving Mapper class from lambda", e);
-        }
+    /**
+     * Stops routing reads to replicas; every call goes to the primary again.
+     */
+    public static void clearReplicas() {
+        getDefaultClient().clearReplicas();
+    }
+
+    /**
+     * Spreads the {@code queryShard}/{@code queryAllShards}/{@code streamAllShards} calls over the given shard
+     * environments. The shards share the primary's mappers and settings; every other call keeps going to the
+     * primary. Fan-out queries run one shard on the calling thread and the others in parallel on an executor
+     * sized to the shards' connection pools, so they take as long as the slowest shard.
+     * <p>
+     * Shards can also be declared in the MyBatis config by listing their environment ids in the
+     * {@code mybatisMini.shards} property; they are then routed with {@link ShardRouter#hashing()}.
+     *
+     * @param shards the shard environments, in the order the router numbers them
+     * @param router picks the shard of a shard key
+     */
+    public static void useShards(List<Environment> shards, ShardRouter router) {
+        getDefaultClient().useShards(shards, router);
+    }
+
+    /**
+     * Stops using shards; shard queries fail until {@link #useShards(List, ShardRouter)} is called again.
+     */
+    public static void clearShards() {
+        getDefaultClient().clearShards();
+    }
+
+    /**
+     * Executes a query method on the one shard holding the shard key:
+     * <pre>{@code
+     * ConfigModel config = MybatisMini.queryShard(key, (ConfigMapper m) -> m.queryConfigByKey(key));
+     * }</pre>
+     *
+     * @param shardKey the key the router picks the shard by
+     * @param function a lambda function representing the mapper method reference
+     * @param <T>      the result type
+     * @param <M>      the mapper type
+     * @return the query result
+     * @throws MybatisMiniException if no shards are configured or the query fails
+     */
+    public static <M, T> T queryShard(Object shardKey, MiniMapper<M, T> function) {
+        return getDefaultClient().queryShard(shardKey, function);
+    }
+
+    /**
+     * Executes a list query method on every shard in parallel and concatenates the results in the order
+     * the shards answered. A failure on any shard fails the call, naming the shard.
+     *
+     * @param function a lambda function representing the mapper method reference
+     * @param <T>      the target list element type
+     * @param <M>      the mapper type
+     * @return the rows of all shards
+     */
+    public static <M, T> List<T> queryAllShards(MiniMapper<M, List<T>> function) {
+        return getDefaultClient().queryAllShards(function);
+    }
+
+    /**
+     * Executes a list query method on every shard in parallel and merges the results in order. Each shard's
+     * list must already be sorted by {@code order}, typically by an {@code ORDER BY} in the statement, so the
+     * lists are combined with a k-way merge instead of a sort.
+     *
+     * @param function a lambda function representing the mapper method reference
+     * @param order    the order every shard's rows are sorted by
+     * @param <T>      the target list element type
+     * @param <M>      the mapper type
+     * @return the rows of all shards, sorted by {@code order}
+     */
+    public static <M, T> List<T> queryAllShards(MiniMapper<M, List<T>> function, Comparator<? super T> order) {
+        return getDefaultClient().queryAllShards(function, order);
+    }
+
+    /**
+     * Opens a cursor query on every shard in parallel and streams their rows one shard after another.
+     * All shard sessions stay open until the stream is closed, so use try-with-resources.
+     *
+     * @param function a lambda function representing the mapper method reference
+     * @param <T>      the row type
+     * @param <M>      the mapper type
+     * @return a sequential stream over the rows of all shards
+     */
+    public static <M, T> Stream<T> streamAllShards(MiniMapper<M, Cursor<T>> function) {
+        return getDefaultClient().streamAllShards(function);
+    }
+
+    /**
+     * Opens a cursor query on every shard in parallel and streams their rows merged in order, reading each
+     * shard's cursor only as far as the merge needs. Each shard's rows must already be sorted by {@code order}:
+     * <pre>{@code
+     * try (Stream<ConfigModel> rows = MybatisMini.streamAllShards(ConfigMapper::streamAll,
+     *         Comparator.comparing(ConfigModel::getConfig_key))) {
+     *     rows.forEach(this::export);
+     * }
+     * }</pre>
+     *
+     * @param function a lambda function representing the mapper method reference
+     * @param order    the order every shard's rows are sorted by
+     * @param <T>      the row type
+     * @param <M>      the mapper type
+     * @return a sequential stream over the rows of all shards, sorted by {@code order}
+     */
+    public static <M, T> Stream<T> streamAllShards(MiniMapper<M, Cursor<T>> function, Comparator<? super T> order) {
+        return getDefaultClient().streamAllShards(function, order);
+    }
+
+    /**
+     * Caches the results of {@code queryList}/{@code queryObject} calls on the given mapper. Calls are keyed by
+     * the mapper method and the lambda's captured arguments, so {@code m -> m.queryConfigByKey(key)} is cached
+     * per {@code key}. Entries expire after the time to live and the least recently used entry is evicted once
+     * the cache is full.
+     * <p>
+     * Any insert, update or delete of the mapper's namespace that runs through MybatisMini clears its cache when
+     * it runs, and again when its session commits or rolls back, so rows other threads read while the write was
+     * not committed yet are not served after it. Calls inside {@link #inTransaction(MiniSessionWork)} bypass the cache. Cached results are shared between
+     * callers and must not be modified. Enabling a cache again replaces the existing one.
+     *
+     * @param mapperClass the mapper whose results to cache
+     * @param maximumSize maximum number of cached results
+     * @param ttl         time to live of a cached result
+     * @param unit        unit of {@code ttl}
+     */
+    public static void enableResultCache(Class<?> mapperClass, int maximumSize, long ttl, TimeUnit unit) {
+        getDefaultClient().enableResultCache(mapperClass, maximumSize, ttl, unit);
+    }
+
+    /**
+     * Stops caching the results of the given mapper and drops its cached results.
+     *
+     * @param mapperClass the mapper whose cache to remove
+     */
+    public static void disableResultCache(Class<?> mapperClass) {
+        getDefaultClient().disableResultCache(mapperClass);
+    }
+
+    /**
+     * Drops every cached result of the given mapper, e.g. after the table was changed outside MybatisMini.
+     *
+     * @param mapperClass the mapper whose cache to clear
+     */
+    public static void invalidateResultCache(Class<?> mapperClass) {
+        getDefaultClient().invalidateResultCache(mapperClass);
+    }
+
+    /**
+     * Returns the hit, miss and eviction counters of the given mapper's result cache.
+     *
+     * @param mapperClass the mapper with an enabled result cache
+     * @return the cache statistics
+     * @throws MybatisMiniException if no result cache is enabled for the mapper
+     */
+    public static ResultCacheStats getResultCacheStats(Class<?> mapperClass) {
+        return getDefaultClient().getResultCacheStats(mapperClass);
+    }
+
+    /**
+     * Coalesces identical concurrent {@code queryList}/{@code queryObject} calls on the given mapper: while one
+     * call runs, the same call from other threads waits for it and shares its result instead of querying again.
+     * Calls are identical when they go through the same mapper method with equal captured arguments, so a burst
+     * of {@code m -> m.queryConfigByKey("username")} reaches the database once.
+     * <p>
+     * A call only joins a query that is still running when it arrives, so no result is older than the call
+     * itself; an insert, update or delete of the mapper's namespace makes later calls query again. Calls inside
+     * {@link #inSession(MiniSessionWork)} or {@link #inTransaction(MiniSessionWork)} are never coalesced. With a
+     * result cache enabled too, only cache misses are coalesced. Shared results must not be modified.
+     * Coalesced calls are counted per mapper method by {@link MapperMethodMetrics#getCoalescedCalls()}.
+     *
+     * @param mapperClass the mapper whose calls to coalesce
+     */
+    public static void enableQueryCoalescing(Class<?> mapperClass) {
+        getDefaultClient().enableQueryCoalescing(mapperClass);
+    }
+
+    /**
+     * Stops coalescing the calls of the given mapper. Calls already waiting still get their shared result.
+     *
+     * @param mapperClass the mapper whose calls to stop coalescing
+     */
+    public static void disableQueryCoalescing(Class<?> mapperClass) {
+        getDefaultClient().disableQueryCoalescing(mapperClass);
+    }
+
+    /**
+     * Returns how many calls of the given mapper ran their query and how many shared another's.
+     *
+     * @param mapperClass the mapper with query coalescing enabled
+     * @return the coalescing statistics
+     * @throws MybatisMiniException if query coalescing is not enabled for the mapper
+     */
+    public static QueryCoalescingStats getQueryCoalescingStats(Class<?> mapperClass) {
+        return getDefaultClient().getQueryCoalescingStats(mapperClass);
+    }
+
+    /**
+     * Describes an in-memory snapshot of a small, rarely changing table, answering {@code queryList}/
+     * {@code queryObject} calls on its mapper from memory once started:
+     * <pre>{@code
+     * MiniSnapshot<String, ConfigModel> configs = MybatisMini.snapshot(ConfigMapper::queryAllVersioned, ConfigModel::getConfig_key)
+     *         .lookup(ConfigMapper::queryConfigByKey)
+     *         .changes(ConfigMapper::queryChangedSince, ConfigModel::getUpdated_at)
+     *         .start();
+     * }</pre>
+     * See {@link MiniSnapshot} for how it is refreshed and which calls it answers.
+     *
+     * @param fullQuery the mapper method loading the whole table, answered from the snapshot
+     * @param keyOf     extracts the key of a row, the argument of the lookup method
+     * @param <M>       the mapper type
+     * @param <K>       the key type
+     * @param <T>       the row type
+     * @return a builder whose {@link MiniSnapshot.Builder#start()} loads the snapshot
+     */
+    public static <M, K, T> MiniSnapshot.Builder<M, K, T> snapshot(MiniMapper<M, List<T>> fullQuery,
+                                                                 Function<? super T, ? extends K> keyOf) {
+        return getDefaultClient().snapshot(fullQuery, keyOf);
+    }
+
+    /**
+     * Runs {@code queryList}/{@code queryObject} calls on long-lived sessions with MyBatis's {@code REUSE}
+     * executor, so that a statement run again on a session skips its JDBC prepare. A call takes the idle session
+     * its thread used last, else any idle one, so sessions also serve short-lived and virtual threads. Each
+     * session pins a pooled connection; up to half the pool size are kept open, and calls finding none idle
+     * and none left use a session of their own as before. Sessions are auto-commit and their first-level cache is cleared
+     * after every call, so no call sees rows cached by another. Idle sessions close after 30 seconds, and
+     * sessions close after 10 minutes in any case. Also enabled with {@code mybatisMini.sessionReuse=true} in the
+     * config, tuned by {@code mybatisMini.sessionReuse.maxSessions}, {@code .idleMillis} and
+     * {@code .maxLifetimeMillis}.
+     * <p>
+     * Only reads of the primary database are affected. Calls inside {@link #inSession(MiniSessionWork)} or
+     * {@link #inTransaction(MiniSessionWork)} keep using the bound session, and calls of mappers with a MyBatis
+     * second-level cache always get a session of their own.
+     */
+    public static void enableSessionReuse() {
+        getDefaultClient().enableSessionReuse();
+    }
+
+    /**
+     * Like {@link #enableSessionReuse()} with explicit bounds. Replaces sessions reused so far.
+     *
+     * @param maxSessions most sessions, and so connections, held open at a time
+     * @param idleTimeout time after which a session without calls is closed
+     * @param maxLifetime time after which a session is closed once its current call returns
+     * @param unit        the unit of both times
+     */
+    public static void enableSessionReuse(int maxSessions, long idleTimeout, long maxLifetime, TimeUnit unit) {
+        getDefaultClient().enableSessionReuse(maxSessions, idleTimeout, maxLifetime, unit);
+    }
+
+    /**
+     * Stops reusing sessions and closes the idle ones; sessions running a call close when it returns.
+     */
+    public static void disableSessionReuse() {
+        getDefaultClient().disableSessionReuse();
+    }
+
+    /**
+     * Returns how many calls ran on reused sessions and how many sessions were opened and closed.
+     *
+     * @return the session reuse statistics
+     * @throws MybatisMiniException if session reuse is not enabled
+     */
+    public static SessionReuseStats getSessionReuseStats() {
+        return getDefaultClient().getSessionReuseStats();
+    }
+
+    /**
+     * Caps the {@code queryList}/{@code queryObject} calls of the given mapper running at once, so that a mapper
+     * whose queries turn slow cannot take every pooled connection and stall the other mappers. A call finding
+     * the limit reached waits up to {@code maxWait} for a running call to finish and is then rejected with a
+     * {@link QueryRejectedException} instead of queueing on the pool; a {@code maxWait} of 0 rejects at once.
+     * <p>
+     * Result cache hits, coalesced calls and snapshot answers do not count against the limit, and neither do
+     * calls inside {@link #inSession(MiniSessionWork)} or {@link #inTransaction(MiniSessionWork)}, which already
+     * hold their connection. Paged fetches and batch loads of the mapper do. Enabling a bulkhead again replaces
+     * the existing one.
+     *
+     * @param mapperClass   the mapper to limit
+     * @param maxConcurrent most calls of the mapper running at once
+     * @param maxWait       longest time a call waits for a free slot
+     * @param unit          unit of {@code maxWait}
+     */
+    public static void enableBulkhead(Class<?> mapperClass, int maxConcurrent, long maxWait, TimeUnit unit) {
+        getDefaultClient().enableBulkhead(mapperClass, maxConcurrent, maxWait, unit);
+    }
+
+    /**
+     * Like {@link #enableBulkhead(Class, int, long, TimeUnit)}, with a limit that starts at {@code maxConcurrent}
+     * and is lowered, down to {@code minConcurrent}, while the mapper's recent call latency is more than twice
+     * its usual latency. Fewer calls then load the struggling database and the others are shed early. The limit
+     * grows back by one every few calls once latency is normal again.
+     *
+     * @param mapperClass   the mapper to limit
+     * @param minConcurrent the lowest the limit drops to
+     * @param maxConcurrent the highest the limit grows to
+     * @param maxWait       longest time a call waits for a free slot
+     * @param unit          unit of {@code maxWait}
+     */
+    public static void enableAdaptiveBulkhead(Class<?> mapperClass, int minConcurrent, int maxConcurrent, long maxWait,
+                                              TimeUnit unit) {
+        getDefaultClient().enableAdaptiveBulkhead(mapperClass, minConcurrent, maxConcurrent, maxWait, unit);
+    }
+
+    /**
+     * Stops limiting the calls of the given mapper. Calls already waiting keep waiting on the removed bulkhead.
+     *
+     * @param mapperClass the mapper whose bulkhead to remove
+     */
+    public static void disableBulkhead(Class<?> mapperClass) {
+        getDefaultClient().disableBulkhead(mapperClass);
+    }
+
+    /**
+     * Returns how many calls of the given mapper ran, waited and were rejected, and its current limit.
+     *
+     * @param mapperClass the mapper with a bulkhead enabled
+     * @return the bulkhead statistics
+     * @throws MybatisMiniException if no bulkhead is enabled for the mapper
+     */
+    public static BulkheadStats getBulkheadStats(Class<?> mapperClass) {
+        return getDefaultClient().getBulkheadStats(mapperClass);
+    }
+
+    /**
+     * Sets the JDBC query timeout of statements that have neither a {@code timeout} attribute nor a timeout set
+     * through {@link #setStatementTimeout(Class, long, TimeUnit)}; MyBatis's {@code defaultStatementTimeout}.
+     * JDBC timeouts are whole seconds, shorter ones are rounded up. 0 means no timeout.
+     *
+     * @param timeout the timeout
+     * @param unit    unit of {@code timeout}
+     */
+    public static void setDefaultStatementTimeout(long timeout, TimeUnit unit) {
+        getDefaultClient().setDefaultStatementTimeout(timeout, unit);
+    }
+
+    /**
+     * Sets the JDBC query timeout of every statement of the given mapper, overriding their {@code timeout}
+     * attributes and the default. Takes effect on the next execution, also of statements a reused session
+     * prepared earlier.
+     *
+     * @param mapperClass the mapper whose statements to limit
+     * @param timeout     the timeout, rounded up to whole seconds; 0 for none
+     * @param unit        unit of {@code timeout}
+     */
+    public static void setStatementTimeout(Class<?> mapperClass, long timeout, TimeUnit unit) {
+        getDefaultClient().setStatementTimeout(mapperClass, timeout, unit);
+    }
+
+    /**
+     * Sets the JDBC query timeout of one mapper method's statement, overriding the timeout of its mapper.
+     *
+     * @param mapperClass the mapper
+     * @param method      the name of the mapper method, i.e. the statement id within the namespace
+     * @param timeout     the timeout, rounded up to whole seconds; 0 for none
+     * @param unit        unit of {@code timeout}
+     * @throws MybatisMiniException if the mapper has no such statement
+     */
+    public static void setStatementTimeout(Class<?> mapperClass, String method, long timeout, TimeUnit unit) {
+        getDefaultClient().setStatementTimeout(mapperClass, method, timeout, unit);
+    }
+
+    /**
+     * Removes the timeout set for the given mapper; its method timeouts stay.
+     *
+     * @param mapperClass the mapper
+     */
+    public static void clearStatementTimeout(Class<?> mapperClass) {
+        getDefaultClient().clearStatementTimeout(mapperClass);
+    }
+
+    /**
+     * Removes the timeout set for one mapper method, which then gets its mapper's timeout again.
+     *
+     * @param mapperClass the mapper
+     * @param method      the name of the mapper method
+     */
+    public static void clearStatementTimeout(Class<?> mapperClass, String method) {
+        getDefaultClient().clearStatementTimeout(mapperClass, method);
+    }
+
+    /**
+     * Runs the work with one auto-commit SqlSession bound to the current thread. Every
+     * {@code queryList}/{@code queryObject}/{@code stream} call made inside it on the same thread uses that
+     * session, so they share one connection checkout and MyBatis's first-level cache:
+     * <pre>{@code
+     * List<ConfigModel> configs = MybatisMini.inSession(session -> {
+     *     ConfigModel username = MybatisMini.queryObject(m -> m.queryConfigByKey("username"));
+     *     ConfigModel password = MybatisMini.queryObject(m -> m.queryConfigByKey("password"));
+     *     return Arrays.asList(username, password);
+     * });
+     * }</pre>
+     * Nested {@code inSession} blocks join the outer session. Async queries and {@code executeBatch}
+     * always use sessions of their own.
+     *
+     * @param work the unit of work, receiving the shared session
+     * @param <R>  the result type
+     * @return the work's result
+     * @throws MybatisMiniException if the work fails
+     */
+    public static <R> R inSession(MiniSessionWork<R> work) {
+        return getDefaultClient().inSession(work);
+    }
+
+    /**
+     * Runs the work in one transaction on a SqlSession bound to the current thread. The transaction is
+     * committed when the work returns and rolled back when it throws.
+     * <p>
+     * Nested {@code inTransaction} blocks join the outer transaction, so only the outermost block commits.
+     * When a nested block fails, the whole transaction is rolled back even if the outer block catches the
+     * failure, and the outermost block throws instead of returning. A transaction cannot be started inside a plain {@link #inSession(MiniSessionWork)} block, and
+     * {@code executeBatch} cannot run inside a transaction.
+     *
+     * @param work the unit of work, receiving the shared session
+     * @param <R>  the result type
+     * @return the work's result
+     * @throws MybatisMiniException if the work or a nested block fails, or a transaction is nested in a
+     *                              non-transactional session
+     */
+    public static <R> R inTransaction(MiniSessionWork<R> work) {
+        return getDefaultClient().inTransaction(work);
+    }
+
+    /**
+     * Turns per-mapper-method call metrics on or off for every client in the JVM, as they all record into the
+     * same metrics. Metrics are on by default and can be switched off from the start with the system property
+     * {@code -DmybatisMini.metrics.enabled=false}.
+     *
+     * @param enabled whether {@code queryList}/{@code queryObject} calls are recorded
+     * @see #getMapperMethodMetrics()
+     */
+    public static void setMetricsEnabled(boolean enabled) {
+        MiniMetrics.setEnabled(enabled);
+    }
+
+    /**
+     * Sets the latency from which a call of any client in the JVM is counted and logged as slow, 1 second by
+     * default. Also configurable with the system property {@code mybatisMini.metrics.slowCallMillis}; 0 turns
+     * slow-call logging off.
+     *
+     * @param threshold the slow-call threshold
+     * @param unit      unit of {@code threshold}
+     */
+    public static void setSlowCallThreshold(long threshold, TimeUnit unit) {
+        Objects.requireNonNull(unit, "Time unit cannot be null");
+        MiniMetrics.setSlowCallThreshold(threshold, unit);
+    }
+
+    /**
+     * Returns the call metrics recorded so far, keyed by mapped statement id (e.g.
+     * {@code cn.jiayeli.mybatisMini.example.dao.ConfigMapper.queryConfigByKey}). Calls that ran no SQL, such as
+     * result cache hits, are keyed by {@code <mapper class>.[no-sql]}. A stream is timed until its cursor is open,
+     * leaving out the rows read from it later, and {@code executeBatch} once per flush. Every entry is also
+     * registered as an MXBean named {@code cn.jiayeli.mybatisMini:type=MapperMethod,name="<key>"}.
+     *
+     * @return an unmodifiable live view of the metrics
+     */
+    public static Map<String, MapperMethodMetrics> getMapperMethodMetrics() {
+        return MiniMetrics.methods();
+    }
+
+    /**
+     * Executes a query method that returns a list on the MybatisMini async executor.
+     *
+     * @param function a lambda function representing the mapper method reference
+     * @param <T>      the target list element type
+     * @param <M>      the mapper type
+     * @return a future completed with the query result, or exceptionally with a {@link MybatisMiniException}
+     * @see #queryObjectAsync(MiniMapper)
+     */
+    public static <M, T> CompletableFuture<List<T>> queryListAsync(MiniMapper<M, List<T>> function) {
+        return getDefaultClient().queryListAsync(function);
+    }
+
+    /**
+     * Executes a query method that returns a list on the given executor.
+     *
+     * @param function a lambda function representing the mapper method reference
+     * @param executor the executor to run the query on
+     * @param <T>      the target list element type
+     * @param <M>      the mapper type
+     * @return a future completed with the query result, or exceptionally with a {@link MybatisMiniException}
+     */
+    public static <M, T> CompletableFuture<List<T>> queryListAsync(MiniMapper<M, List<T>> function, Executor executor) {
+        return getDefaultClient().queryListAsync(function, executor);
+    }
+
+    /**
+     * Executes a query method that returns a single object on the MybatisMini async executor.
+     * <p>
+     * The executor runs at most as many queries at once as the connection pool has connections, so
+     * independent lookups can be fanned out and joined without queueing on connection checkout:
+     * <pre>{@code
+     * CompletableFuture<ConfigModel> user = MybatisMini.queryObjectAsync(m -> m.queryConfigByKey("username"));
+     * CompletableFuture<ConfigModel> pass = MybatisMini.queryObjectAsync(m -> m.queryConfigByKey("password"));
+     * CompletableFuture.allOf(user, pass).join();
+     * }</pre>
+     * Set {@code -DmybatisMini.async.virtualThreads=true} to run queries on virtual threads where available.
+     *
+     * @param function a lambda function representing the mapper method reference
+     * @param <T>      the target object type
+     * @param <M>      the mapper type
+     * @return a future completed with the query result, or exceptionally with a {@link MybatisMiniException}
+     */
+    public static <M, T> CompletableFuture<T> queryObjectAsync(MiniMapper<M, T> function) {
+        return getDefaultClient().queryObjectAsync(function);
+    }
+
+    /**
+     * Executes a query method that returns a single object on the given executor.
+     *
+     * @param function a lambda function representing the mapper method reference
+     * @param executor the executor to run the query on
+     * @param <T>      the target object type
+     * @param <M>      the mapper type
+     * @return a future completed with the query result, or exceptionally with a {@link MybatisMiniException}
+     */
+    public static <M, T> CompletableFuture<T> queryObjectAsync(MiniMapper<M, T> function, Executor executor) {
+        return getDefaultClient().queryObjectAsync(function, executor);
+    }
+
+    /**
+     * Returns the executor async queries run on by default, creating it on first use with
+     * the connection pool size as its concurrency limit.
+     *
+     * @return the async executor
+     */
+    public static Executor getAsyncExecutor() {
+        return getDefaultClient().getAsyncExecutor();
+    }
+
+    /**
+     * Executes a query method that returns a MyBatis {@link Cursor} and exposes its rows as a lazy stream.
+     * <p>
+     * The SqlSession stays open until the rows are exhausted, reading fails, or the stream is closed.
+     * Inside {@link #inSession(MiniSessionWork)} the stream reads through the bound session instead.
+     * Use try-with-resources when the stream might not be fully consumed:
+     * <pre>{@code
+     * try (Stream<ConfigModel> rows = MybatisMini.stream(ConfigMapper::streamAll, 500)) {
+     *     rows.forEach(this::export);
+     * }
+     * }</pre>
+     *
+     * @param function a lambda function representing the mapper method reference
+     * @param <T>      the row type
+     * @param <M>      the mapper type
+     * @return a sequential stream over the cursor rows
+     */
+    public static <M, T> Stream<T> stream(MiniMapper<M, Cursor<T>> function) {
+        return getDefaultClient().stream(function);
+    }
+
+    /**
+     * Same as {@link #stream(MiniMapper)}, with a JDBC fetch size hint for this call only.
+     * A fetch size of 0 keeps the mapped statement's own setting. For MySQL, either pass
+     * {@link Integer#MIN_VALUE} or enable {@code useCursorFetch=true} on the URL to avoid buffering the whole result.
+     *
+     * @param function  a lambda function representing the mapper method reference
+     * @param fetchSize the JDBC fetch size, or 0 for the statement default
+     * @param <T>       the row type
+     * @param <M>       the mapper type
+     * @return a sequential stream over the cursor rows
+     */
+    public static <M, T> Stream<T> stream(MiniMapper<M, Cursor<T>> function, int fetchSize) {
+        return getDefaultClient().stream(function, fetchSize);
+    }
+
+    /**
+     * Walks a table with keyset pagination and exposes its rows as a lazy stream. Each page holds the rows
+     * after the key of the previous page's last row, so no page rescans the rows before it the way
+     * {@code LIMIT/OFFSET} does. While the caller works through one page, the next is already being fetched
+     * on the {@link #getAsyncExecutor() async executor}; a page shorter than {@code pageSize} ends the walk.
+     * <pre>{@code
+     * try (Stream<ConfigModel> rows = MybatisMini.paginate(ConfigMapper::queryPageAfter, "",
+     *         ConfigModel::getConfig_key, 1000)) {
+     *     rows.forEach(this::export);
+     * }
+     * }</pre>
+     * No connection is held between pages. Inside {@link #inSession(MiniSessionWork)} the pages are read through
+     * the bound session, on the calling thread and without prefetch.
+     *
+     * @param page       the page query, e.g. {@code WHERE config_key > #{afterKey} ORDER BY config_key LIMIT #{limit}}
+     * @param startAfter the key the first page starts after
+     * @param keyOf      extracts the key of a row; must be the key the page query orders by
+     * @param pageSize   rows per page
+     * @param <M>        the mapper type
+     * @param <K>        the key type
+     * @param <T>        the row type
+     * @return a sequential stream over the rows of all pages, in key order
+     */
+    public static <M, K, T> Stream<T> paginate(MiniPageMapper<M, K, T> page, K startAfter,
+                                               Function<? super T, ? extends K> keyOf, int pageSize) {
+        return getDefaultClient().paginate(page, startAfter, keyOf, pageSize);
+    }
+
+    /**
+     * Same as {@link #paginate(MiniPageMapper, Object, Function, int)}, fetching up to {@code prefetchPages} pages
+     * ahead of the reader. Memory is bounded by {@code prefetchPages + 1} pages; 0 fetches every page on the
+     * reading thread when it is needed.
+     *
+     * @param page          the page query
+     * @param startAfter    the key the first page starts after
+     * @param keyOf         extracts the key of a row; must be the key the page query orders by
+     * @param pageSize      rows per page
+     * @param prefetchPages pages fetched ahead of the reader, 0 for none
+     * @param <M>           the mapper type
+     * @param <K>           the key type
+     * @param <T>           the row type
+     * @return a sequential stream over the rows of all pages, in key order
+     */
+    public static <M, K, T> Stream<T> paginate(MiniPageMapper<M, K, T> page, K startAfter,
+                                               Function<? super T, ? extends K> keyOf, int pageSize, int prefetchPages) {
+        return getDefaultClient().paginate(page, startAfter, keyOf, pageSize, prefetchPages);
+    }
+
+    /**
+     * Creates a loader that batches single-key lookups into one batch mapper call, collecting the keys asked
+     * for within 1 ms and at most 100 per batch:
+     * <pre>{@code
+     * MiniBatchLoader<String, ConfigModel> configs =
+     *         MybatisMini.batchLoader(ConfigMapper::queryConfigByKeys, ConfigModel::getConfig_key);
+     * CompletableFuture<ConfigModel> username = configs.loadAsync("username");
+     * ConfigModel password = configs.load("password");
+     * }</pre>
+     * Batches run on the {@link #getAsyncExecutor() async executor} with a session of their own, also when the
+     * lookup is made inside {@link #inSession(MiniSessionWork)}, so {@code load} must not be called from a task
+     * running on that executor.
+     *
+     * @param batchQuery the batch query, e.g. {@code WHERE config_key IN <foreach collection="keys" ...>}
+     * @param keyOf      extracts the key of a row; must be equal to the key that was looked up
+     * @param <M>        the mapper type
+     * @param <K>        the key type
+     * @param <V>        the row type
+     * @return the loader, meant to be kept and shared by all callers
+     */
+    public static <M, K, V> MiniBatchLoader<K, V> batchLoader(MiniBatchMapper<M, K, V> batchQuery,
+                                                              Function<? super V, ? extends K> keyOf) {
+        return getDefaultClient().batchLoader(batchQuery, keyOf);
+    }
+
+    /**
+     * Same as {@link #batchLoader(MiniBatchMapper, Function)} with an explicit batch size cap and window.
+     * A window of 0 dispatches right away, so only lookups racing the dispatch share a batch.
+     *
+     * @param batchQuery   the batch query
+     * @param keyOf        extracts the key of a row; must be equal to the key that was looked up
+     * @param maxBatchSize maximum number of keys in one batch call
+     * @param window       how long the first key of a batch waits for others
+     * @param unit         unit of {@code window}
+     * @param <M>          the mapper type
+     * @param <K>          the key type
+     * @param <V>          the row type
+     * @return the loader, meant to be kept and shared by all callers
+     */
+    public static <M, K, V> MiniBatchLoader<K, V> batchLoader(MiniBatchMapper<M, K, V> batchQuery,
+                                                              Function<? super V, ? extends K> keyOf,
+                                                              int maxBatchSize, long window, TimeUnit unit) {
+        return getDefaultClient().batchLoader(batchQuery, keyOf, maxBatchSize, window, unit);
+    }
+
+    /**
+     * Describes an export of a cursor query to a file, holding only a bounded number of rows in memory however
+     * large the table:
+     * <pre>{@code
+     * MiniPipelineStats stats = MybatisMini.export(ConfigMapper::streamAll)
+     *         .transform(this::mask, 4)
+     *         .to(Paths.get("configs.csv"), MiniFileFormat.CSV,
+     *                 config -> new String[]{config.getConfig_key(), config.getConfig_value()});
+     * }</pre>
+     * See {@link MiniPipeline} for the stages the rows go through.
+     *
+     * @param query the cursor query reading the rows
+     * @param <M>   the mapper type
+     * @param <T>   the row type
+     * @return a builder whose {@link MiniPipeline.Export#to(Path, MiniFileFormat, Function)} runs the export
+     */
+    public static <M, T> MiniPipeline.Export<T> export(MiniMapper<M, Cursor<T>> query) {
+        return getDefaultClient().export(query);
+    }
+
+    /**
+     * Describes an import of a file written by {@link #export(MiniMapper)}, inserting its rows with multi-row
+     * inserts while holding only a bounded number of them in memory:
+     * <pre>{@code
+     * MiniPipelineStats stats = MybatisMini.importFrom(Paths.get("configs.csv"), MiniFileFormat.CSV, this::toConfig)
+     *         .rowsPerInsert(500)
+     *         .into(ConfigMapper.class, ConfigMapper::insertConfigs);
+     * }</pre>
+     *
+     * @param file    the file to read
+     * @param format  the file format
+     * @param decoder builds a row from its fields; returning {@code null} skips the row
+     * @param <T>     the row type
+     * @return a builder whose {@link MiniPipeline.Import#into(Class, MiniBatchWriter)} runs the import
+     */
+    public static <T> MiniPipeline.Import<T> importFrom(Path file, MiniFileFormat format, Function<String[], ? extends T> decoder) {
+        return getDefaultClient().importFrom(file, format, decoder);
+    }
+
+    /**
+     * Writes every item through the mapper in a {@code BATCH} executor session, flushing and committing
+     * every 1000 statements.
+     *
+     * @param mapperClass the mapper type to write through
+     * @param items       the items to write
+     * @param writer      issues the insert/update/delete for one item
+     * @param <M>         the mapper type
+     * @param <E>         the item type
+     * @return the update count of every statement, in execution order
+     * @see #executeBatch(Class, Iterable, MiniBatchWriter, int)
+     */
+    public static <M, E> int[] executeBatch(Class<M> mapperClass, Iterable<E> items, MiniBatchWriter<M, E> writer) {
+        return getDefaultClient().executeBatch(mapperClass, items, writer);
+    }
+
+    /**
+     * Writes every item through the mapper in a {@code BATCH} executor session, flushing and committing
+     * once per chunk of {@code batchSize} statements.
+     * <p>
+     * A failure rolls back the current chunk only; chunks committed before it stay committed. For MySQL,
+     * add {@code rewriteBatchedStatements=true} to the URL so each chunk is sent as multi-row inserts;
+     * the driver then reports {@link java.sql.Statement#SUCCESS_NO_INFO} as the update counts.
+     * <p>
+     * The batch always runs on a session of its own, also inside {@link #inSession(MiniSessionWork)}. Inside
+     * {@link #inTransaction(MiniSessionWork)} it is refused: its commits would escape the transaction's
+     * rollback, and its connection could wait for rows the transaction locked. Write through the transaction's
+     * session there instead.
+     *
+     * @param mapperClass the mapper type to write through
+     * @param items       the items to write
+     * @param writer      issues the insert/update/delete for one item
+     * @param batchSize   number of statements per flush and commit
+     * @param <M>         the mapper type
+     * @param <E>         the item type
+     * @return the update count of every statement, in execution order
+     * @throws MybatisMiniException if a statement fails, or when called inside a transaction
+     */
+    public static <M, E> int[] executeBatch(Class<M> mapperClass, Iterable<E> items, MiniBatchWriter<M, E> writer, int batchSize) {
+        return getDefaultClient().executeBatch(mapperClass, items, writer, batchSize);
     }
 
     /**
@@ -126,4 +881,14 @@ public class MybatisMini {
             super(message, cause);
         }
     }
+
+    /**
+     * Thrown when a call is turned away by its mapper's bulkhead without reaching the database, see
+     * {@link #enableBulkhead(Class, int, long, TimeUnit)}. Callers may fall back, e.g. to a stale value.
+     */
+    public static class QueryRejectedException extends MybatisMiniException {
+        public QueryRejectedException(String message) {
+            super(message);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,1445 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.core.MybatisMini.QueryRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.builder.annotation.ProviderSqlSource;
+import org.apache.ibatis.cursor.Cursor;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.defaults.DefaultSqlSessionFactory;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * One MybatisMini setup: a MyBatis configuration with its own connection pool, result caches, read replicas
+ * and async executor. Build one per database with {@link #builder()}; the static {@link MybatisMini} methods
+ * delegate to a default client built from {@code mybatis/mybatisConfig.xml} on first use.
+ * <pre>{@code
+ * MybatisMiniClient orders = MybatisMini.builder()
+ *         .configResource("mybatis/ordersConfig.xml")
+ *         .warmUp(true)
+ *         .build();
+ * List<OrderModel> open = orders.queryList(OrderMapper::queryOpen);
+ * }</pre>
+ * Mapper call metrics are shared by all clients of the JVM, see {@link MybatisMini#getMapperMethodMetrics()}.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+public final class MybatisMiniClient implements AutoCloseable {
+
+    static final String DEFAULT_CONFIG_PATH = "mybatis/mybatisConfig.xml";
+    private static final String REPLICAS_PROPERTY = "mybatisMini.replicas";
+    private static final String SHARDS_PROPERTY = "mybatisMini.shards";
+    private static final String WARM_UP_PROPERTY = "mybatisMini.warmUp";
+    private static final String FAST_ROW_MAPPING_PROPERTY = "mybatisMini.fastRowMapping";
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+    private static final int DEFAULT_PREFETCH_PAGES = 1;
+    private static final int DEFAULT_LOADER_BATCH_SIZE = 100;
+    private static final long DEFAULT_LOADER_WINDOW_MICROS = 1000;
+    private static final String SESSION_REUSE_PROPERTY = "mybatisMini.sessionReuse";
+    private static final int DEFAULT_REUSABLE_SESSIONS = 4;
+    private static final long DEFAULT_REUSE_IDLE_MILLIS = 30_000;
+    private static final long DEFAULT_REUSE_LIFETIME_MILLIS = 600_000;
+
+    private final SqlSessionFactory sqlSessionFactory;
+    private final Map<String, ResultCache> resultCaches = new ConcurrentHashMap<>();
+    private final Map<String, QueryCoalescer> coalescers = new ConcurrentHashMap<>();
+    private final List<Environment> ownedReplicas = new ArrayList<>();
+    private final List<Environment> ownedShards = new ArrayList<>();
+    private volatile Executor asyncExecutor;
+    private volatile ReplicaRouter replicaRouter;
+    private volatile ShardSet shardSet;
+    private volatile ReusableSessions reusableSessions;
+    private final Map<String, Boolean> secondLevelCached = new ConcurrentHashMap<>();
+    private final Map<String, MiniSnapshot<?, ?>> snapshots = new ConcurrentHashMap<>();
+    private final Map<String, MapperBulkhead> bulkheads = new ConcurrentHashMap<>();
+    private final StatementTimeoutInterceptor statementTimeouts = new StatementTimeoutInterceptor();
+
+    private MybatisMiniClient(Configuration configuration, boolean fastRowMapping) {
+        configuration.addInterceptor(new FetchSizeInterceptor());
+        configuration.addInterceptor(statementTimeouts);
+        configuration.addInterceptor(new ResultCacheInvalidationInterceptor(resultCaches, coalescers));
+        if (fastRowMapping) {
+            // added before the metrics interceptor so that result set mapping is still timed around it
+            configuration.addInterceptor(new RowMappingInterceptor());
+        }
+        configuration.addInterceptor(new MetricsInterceptor());
+        this.sqlSessionFactory = new DefaultSqlSessionFactory(configuration);
+    }
+
+    /**
+     * @return a builder reading {@code mybatis/mybatisConfig.xml} from the classpath unless told otherwise
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the MyBatis configuration of this client
+     */
+    public Configuration getConfiguration() {
+        return sqlSessionFactory.getConfiguration();
+    }
+
+    /**
+     * Returns a new MyBatis SqlSession instance (non-auto commit mode).
+     *
+     * @return SqlSession object
+     */
+    public SqlSession getSqlSession() {
+        return sqlSessionFactory.openSession();
+    }
+
+    /**
+     * @return a snapshot of this client's connection pool
+     * @throws MybatisMiniException if the data source is neither HikariCP nor MyBatis POOLED
+     * @see MybatisMini#getPoolStats()
+     */
+    public PoolStats getPoolStats() {
+        return PoolStats.of(getConfiguration().getEnvironment().getDataSource());
+    }
+
+    /**
+     * @see MybatisMini#queryList(MiniMapper)
+     */
+    public <M, T> List<T> queryList(MiniMapper<M, List<T>> function) {
+        return query(function, "list");
+    }
+
+    /**
+     * @see MybatisMini#queryObject(MiniMapper)
+     */
+    public <M, T> T queryObject(MiniMapper<M, T> function) {
+        return query(function, "object");
+    }
+
+    @SuppressWarnings("unchecked")
+    private <M, R> R query(MiniMapper<M, R> function, String resultKind) {
+        return record(function, resultKind, mapperClass -> {
+            MiniSnapshot<?, ?> snapshot = snapshots.isEmpty() ? null : snapshots.get(mapperClass.getName());
+            SessionContext context = snapshot == null ? null : SessionContext.current(this);
+            // transactions must see their own uncommitted writes, so they bypass the snapshot
+            if (snapshot != null && (context == null || !context.transactional)) {
+                Object answer = snapshot.answer(function);
+                if (answer != MiniSnapshot.MISS) {
+                    return (R) answer;
+                }
+            }
+            return execute(function, mapperClass);
+        });
+    }
+
+    private <M, R> R record(MiniMapper<M, R> function, String resultKind, MapperCall<M, R> call) {
+        Objects.requireNonNull(function, "Mapper function cannot be null");
+        return record(function, () -> MapperClassResolver.resolve(function), resultKind, call);
+    }
+
+    /**
+     * Runs a query call and records its metrics.
+     *
+     * @param lambda     the mapper function of the call, for flight recorder events
+     * @param resolver   resolves the mapper class of the call
+     * @param resultKind "list", "object", "page", "cursor" and so on, used in error messages
+     * @param call       runs the resolved mapper function
+     */
+    private <M, R> R record(Serializable lambda, Callable<Class<M>> resolver, String resultKind, MapperCall<M, R> call) {
+        MiniMetrics.CallRecorder recorder = MiniMetrics.begin(resultKind, lambda);
+        Class<M> mapperClass = null;
+        R result = null;
+        Exception error = null;
+        try {
+            mapperClass = resolver.call();
+            if (recorder != null) {
+                recorder.mapperResolved();
+            }
+            result = call.run(mapperClass);
+            return result;
+        } catch (Exception e) {
+            QueryRejectedException rejected = rejectionOf(e);
+            if (rejected != null) {
+                // shed load, not a failure of the query: callers tell it by its type and fall back
+                error = rejected;
+                log.debug("Rejected {} query: {}", resultKind, rejected.getMessage());
+                throw rejected;
+            }
+            error = e;
+            log.error("Error while querying {} from MyBatis mapper", resultKind, e);
+            throw new MybatisMiniException("Failed to query " + resultKind, e);
+        } finally {
+            if (recorder != null) {
+                recorder.finish(mapperClass, result, error);
+            }
+        }
+    }
+
+    /**
+     * @return the bulkhead rejection that caused the failure, possibly of a call this one shared, or {@code null}
+     */
+    private static QueryRejectedException rejectionOf(Throwable failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof QueryRejectedException) {
+                return (QueryRejectedException) cause;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Runs the mapper function against the session bound by {@link #inSession(MiniSessionWork)} or
+     * {@link #inTransaction(MiniSessionWork)}, or against a session of its own outside of one.
+     */
+    private <M, R> R execute(MiniMapper<M, R> function, Class<M> mapperClass) throws Exception {
+        SessionContext context = SessionContext.current(this);
+        ResultCache resultCache = resultCaches.isEmpty() ? null : resultCaches.get(mapperClass.getName());
+        // transactions must see their own uncommitted writes, so they bypass the result cache
+        if (context != null && context.transactional) {
+            resultCache = null;
+        }
+        // a call on a bound session must run on that session, so it is never coalesced
+        QueryCoalescer coalescer = context != null || coalescers.isEmpty() ? null : coalescers.get(mapperClass.getName());
+        if (resultCache == null && coalescer == null) {
+            return execute(function, mapperClass, context);
+        }
+
+        ResultCache.Key key = ResultCache.keyOf(MapperClassResolver.serialize(function));
+        Callable<R> load = coalescer == null
+                ? () -> execute(function, mapperClass, context)
+                : () -> coalescer.execute(key, () -> execute(function, mapperClass, context));
+        return resultCache == null ? load.call() : resultCache.get(key, load);
+    }
+
+    private <M, R> R execute(MiniMapper<M, R> function, Class<M> mapperClass, SessionContext context) throws Exception {
+        if (context != null) {
+            return function.apply(context.sqlSession.getMapper(mapperClass));
+        }
+        MapperBulkhead bulkhead = bulkheads.isEmpty() ? null : bulkheads.get(mapperClass.getName());
+        return bulkhead == null
+                ? executeUnbound(function, mapperClass)
+                : bulkhead.execute(() -> executeUnbound(function, mapperClass));
+    }
+
+    /**
+     * Runs the mapper function on a replica, a reusable session or a session of its own.
+     */
+    private <M, R> R executeUnbound(MiniMapper<M, R> function, Class<M> mapperClass) throws Exception {
+        ReplicaRouter router = replicaRouter;
+        ReplicaRouter.Replica replica = router == null ? null : router.acquire();
+        if (replica != null) {
+            try (SqlSession sqlSession = router.openSession(replica)) {
+                R result = function.apply(sqlSession.getMapper(mapperClass));
+                router.succeeded(replica);
+                return result;
+            } catch (Exception e) {
+                if (!ReplicaRouter.isConnectionFailure(e)) {
+                    throw e;
+                }
+                // the replica is unreachable: take it out of rotation and serve this read from the primary
+                router.eject(replica, e);
+            } finally {
+                router.release(replica);
+            }
+        }
+        ReusableSessions sessions = reusableSessions;
+        if (sessions != null && !usesSecondLevelCache(mapperClass)) {
+            return sessions.execute(sqlSession -> function.apply(sqlSession.getMapper(mapperClass)),
+                    () -> executeOnNewSession(function, mapperClass));
+        }
+        return executeOnNewSession(function, mapperClass);
+    }
+
+    private <M, R> R executeOnNewSession(MiniMapper<M, R> function, Class<M> mapperClass) throws Exception {
+        try (SqlSession sqlSession = getSqlSession()) {
+            return function.apply(sqlSession.getMapper(mapperClass));
+        }
+    }
+
+    /**
+     * MyBatis only publishes second-level cache entries when their session commits or closes, which a reusable
+     * session never does between calls.
+     */
+    private boolean usesSecondLevelCache(Class<?> mapperClass) {
+        return secondLevelCached.computeIfAbsent(mapperClass.getName(), namespace -> {
+            Configuration configuration = getConfiguration();
+            return configuration.getMappedStatementNames().stream()
+                    .filter(id -> id.startsWith(namespace + "."))
+                    .anyMatch(id -> configuration.getMappedStatement(id, false).getCache() != null);
+        });
+    }
+
+    /**
+     * @see MybatisMini#snapshot(MiniMapper, Function)
+     */
+    public <M, K, T> MiniSnapshot.Builder<M, K, T> snapshot(MiniMapper<M, List<T>> fullQuery,
+                                                          Function<? super T, ? extends K> keyOf) {
+        return new MiniSnapshot.Builder<>(this, fullQuery, keyOf);
+    }
+
+    @SuppressWarnings("unchecked")
+    <M, K, T> MiniSnapshot<K, T> startSnapshot(MiniSnapshot.Builder<M, K, T> builder, MiniMapper<M, List<T>> fullQuery) {
+        Class<Object> mapperClass = (Class<Object>) (Class<?>) MapperClassResolver.resolve(fullQuery);
+        String namespace = mapperClass.getName();
+        // snapshot queries skip result caches and coalescing, and never run on a caller's bound session
+        MiniSnapshot<K, T> snapshot = builder.build(mapperClass,
+                call -> record(call, () -> mapperClass, "snapshot", mc -> execute(call, mc, null)),
+                started -> snapshots.remove(namespace, started));
+        MiniSnapshot<?, ?> previous = snapshots.put(namespace, snapshot);
+        if (previous != null) {
+            previous.close();
+        }
+        log.info("Answering {} from a snapshot of {} rows", namespace, snapshot.size());
+        return snapshot;
+    }
+
+    /**
+     * @see MybatisMini#enableBulkhead(Class, int, long, TimeUnit)
+     */
+    public void enableBulkhead(Class<?> mapperClass, int maxConcurrent, long maxWait, TimeUnit unit) {
+        putBulkhead(mapperClass, maxConcurrent, maxConcurrent, maxWait, unit, false);
+    }
+
+    /**
+     * @see MybatisMini#enableAdaptiveBulkhead(Class, int, int, long, TimeUnit)
+     */
+    public void enableAdaptiveBulkhead(Class<?> mapperClass, int minConcurrent, int maxConcurrent, long maxWait,
+                                       TimeUnit unit) {
+        putBulkhead(mapperClass, minConcurrent, maxConcurrent, maxWait, unit, true);
+    }
+
+    private void putBulkhead(Class<?> mapperClass, int minConcurrent, int maxConcurrent, long maxWait, TimeUnit unit,
+                             boolean adaptive) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        Objects.requireNonNull(unit, "Time unit cannot be null");
+        bulkheads.put(mapperClass.getName(),
+                new MapperBulkhead(mapperClass.getName(), minConcurrent, maxConcurrent, maxWait, unit, adaptive));
+        log.debug("Enabled {} bulkhead for {} with limit {}..{}, maxWait={} {}", adaptive ? "adaptive" : "fixed",
+                mapperClass.getName(), minConcurrent, maxConcurrent, maxWait, unit);
+    }
+
+    /**
+     * @see MybatisMini#disableBulkhead(Class)
+     */
+    public void disableBulkhead(Class<?> mapperClass) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        bulkheads.remove(mapperClass.getName());
+    }
+
+    /**
+     * @see MybatisMini#getBulkheadStats(Class)
+     */
+    public BulkheadStats getBulkheadStats(Class<?> mapperClass) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        MapperBulkhead bulkhead = bulkheads.get(mapperClass.getName());
+        if (bulkhead == null) {
+            throw new MybatisMiniException("No bulkhead enabled for mapper: " + mapperClass.getName());
+        }
+        return bulkhead.stats();
+    }
+
+    /**
+     * @see MybatisMini#setDefaultStatementTimeout(long, TimeUnit)
+     */
+    public void setDefaultStatementTimeout(long timeout, TimeUnit unit) {
+        getConfiguration().setDefaultStatementTimeout(toTimeoutSeconds(timeout, unit));
+        statementTimeouts.defaultTimeoutChanged();
+    }
+
+    /**
+     * @see MybatisMini#setStatementTimeout(Class, long, TimeUnit)
+     */
+    public void setStatementTimeout(Class<?> mapperClass, long timeout, TimeUnit unit) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        statementTimeouts.setTimeout(mapperClass.getName(), toTimeoutSeconds(timeout, unit));
+    }
+
+    /**
+     * @see MybatisMini#setStatementTimeout(Class, String, long, TimeUnit)
+     */
+    public void setStatementTimeout(Class<?> mapperClass, String method, long timeout, TimeUnit unit) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        Objects.requireNonNull(method, "Mapper method cannot be null");
+        String statementId = mapperClass.getName() + "." + method;
+        if (!getConfiguration().hasStatement(statementId, false)) {
+            throw new MybatisMiniException("No mapped statement: " + statementId);
+        }
+        statementTimeouts.setTimeout(statementId, toTimeoutSeconds(timeout, unit));
+    }
+
+    /**
+     * @see MybatisMini#clearStatementTimeout(Class)
+     */
+    public void clearStatementTimeout(Class<?> mapperClass) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        statementTimeouts.setTimeout(mapperClass.getName(), null);
+    }
+
+    /**
+     * @see MybatisMini#clearStatementTimeout(Class, String)
+     */
+    public void clearStatementTimeout(Class<?> mapperClass, String method) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        Objects.requireNonNull(method, "Mapper method cannot be null");
+        statementTimeouts.setTimeout(mapperClass.getName() + "." + method, null);
+    }
+
+    /**
+     * JDBC query timeouts are whole seconds, so shorter timeouts are rounded up rather than disabled.
+     */
+    private static Integer toTimeoutSeconds(long timeout, TimeUnit unit) {
+        Objects.requireNonNull(unit, "Time unit cannot be null");
+        if (timeout < 0) {
+            throw new IllegalArgumentException("Statement timeout cannot be negative: " + timeout);
+        }
+        long seconds = unit.toSeconds(timeout);
+        if (unit.toNanos(timeout) > TimeUnit.SECONDS.toNanos(seconds)) {
+            seconds++;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, seconds);
+    }
+
+    /**
+     * @see MybatisMini#enableSessionReuse()
+     */
+    public void enableSessionReuse() {
+        enableSessionReuse(defaultReusableSessions(), DEFAULT_REUSE_IDLE_MILLIS, DEFAULT_REUSE_LIFETIME_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @see MybatisMini#enableSessionReuse(int, long, long, TimeUnit)
+     */
+    public void enableSessionReuse(int maxSessions, long idleTimeout, long maxLifetime, TimeUnit unit) {
+        Objects.requireNonNull(unit, "Time unit cannot be null");
+        ReusableSessions previous = reusableSessions;
+        reusableSessions = new ReusableSessions(sqlSessionFactory, maxSessions, idleTimeout, maxLifetime, unit);
+        if (previous != null) {
+            previous.close();
+        }
+        log.info("Reusing up to {} thread-bound sessions, idle timeout {} ms, lifetime {} ms", maxSessions,
+                unit.toMillis(idleTimeout), unit.toMillis(maxLifetime));
+    }
+
+    /**
+     * @see MybatisMini#disableSessionReuse()
+     */
+    public void disableSessionReuse() {
+        ReusableSessions sessions = reusableSessions;
+        reusableSessions = null;
+        if (sessions != null) {
+            sessions.close();
+        }
+    }
+
+    /**
+     * @see MybatisMini#getSessionReuseStats()
+     */
+    public SessionReuseStats getSessionReuseStats() {
+        ReusableSessions sessions = reusableSessions;
+        if (sessions == null) {
+            throw new MybatisMiniException("Session reuse is not enabled, call enableSessionReuse first");
+        }
+        return sessions.stats();
+    }
+
+    private int defaultReusableSessions() {
+        try {
+            // leave half of the pool to calls that check out a connection each
+            return Math.max(1, getPoolStats().getMaximumPoolSize() / 2);
+        } catch (MybatisMiniException e) {
+            return DEFAULT_REUSABLE_SESSIONS;
+        }
+    }
+
+    /**
+     * @see MybatisMini#useReplicas(List, ReplicaBalancing, long, TimeUnit)
+     */
+    public void useReplicas(List<Environment> replicas, ReplicaBalancing balancing, long ejectFor, TimeUnit unit) {
+        Objects.requireNonNull(replicas, "Replica environments cannot be null");
+        Objects.requireNonNull(balancing, "Replica balancing cannot be null");
+        Objects.requireNonNull(unit, "Time unit cannot be null");
+        replicaRouter = new ReplicaRouter(getConfiguration(), replicas, balancing, ejectFor, unit);
+        log.info("Routing reads to {} replicas with {} balancing", replicas.size(), balancing);
+    }
+
+    /**
+     * @see MybatisMini#clearReplicas()
+     */
+    public void clearReplicas() {
+        replicaRouter = null;
+    }
+
+    /**
+     * @see MybatisMini#useShards(List, ShardRouter)
+     */
+    public void useShards(List<Environment> shards, ShardRouter router) {
+        Objects.requireNonNull(shards, "Shard environments cannot be null");
+        useShards(shards, router, AsyncExecutors.create(shardConcurrency(shards)), true);
+    }
+
+    /**
+     * Same as {@link #useShards(List, ShardRouter)}, running the shard queries on the given executor.
+     *
+     * @param shards   the shard environments, in the order the router numbers them
+     * @param router   picks the shard of a shard key
+     * @param executor runs the queries of all shards but one, which runs on the calling thread
+     */
+    public void useShards(List<Environment> shards, ShardRouter router, Executor executor) {
+        useShards(shards, router, executor, false);
+    }
+
+    private void useShards(List<Environment> shards, ShardRouter router, Executor executor, boolean ownsExecutor) {
+        Objects.requireNonNull(shards, "Shard environments cannot be null");
+        Objects.requireNonNull(router, "Shard router cannot be null");
+        Objects.requireNonNull(executor, "Executor cannot be null");
+        ShardSet previous = shardSet;
+        shardSet = new ShardSet(getConfiguration(), shards, router, executor, ownsExecutor);
+        if (previous != null) {
+            previous.close();
+        }
+        log.info("Fanning out shard queries to {} shards", shards.size());
+    }
+
+    /**
+     * @see MybatisMini#clearShards()
+     */
+    public void clearShards() {
+        ShardSet previous = shardSet;
+        shardSet = null;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    private static int shardConcurrency(List<Environment> shards) {
+        int concurrency = 0;
+        for (Environment shard : shards) {
+            try {
+                concurrency += PoolStats.of(shard.getDataSource()).getMaximumPoolSize();
+            } catch (MybatisMiniException e) {
+                // Unknown data source: count it as one connection per CPU
+                concurrency += Runtime.getRuntime().availableProcessors();
+            }
+        }
+        return concurrency;
+    }
+
+    /**
+     * @see MybatisMini#queryShard(Object, MiniMapper)
+     */
+    public <M, T> T queryShard(Object shardKey, MiniMapper<M, T> function) {
+        ShardSet shards = requireShards();
+        int shard = shards.route(shardKey);
+        return record(function, "object", mapperClass -> onShard(shards, shard, function, mapperClass));
+    }
+
+    /**
+     * @see MybatisMini#queryAllShards(MiniMapper)
+     */
+    public <M, T> List<T> queryAllShards(MiniMapper<M, List<T>> function) {
+        List<List<T>> shardResults = fanOut(function);
+        int size = 0;
+        for (List<T> shardResult : shardResults) {
+            size += shardResult.size();
+        }
+        List<T> merged = new ArrayList<>(size);
+        for (List<T> shardResult : shardResults) {
+            merged.addAll(shardResult);
+        }
+        return merged;
+    }
+
+    /**
+     * @see MybatisMini#queryAllShards(MiniMapper, Comparator)
+     */
+    public <M, T> List<T> queryAllShards(MiniMapper<M, List<T>> function, Comparator<? super T> order) {
+        Objects.requireNonNull(order, "Comparator cannot be null");
+        List<List<T>> shardResults = fanOut(function);
+        List<Spliterator<T>> sources = new ArrayList<>(shardResults.size());
+        int size = 0;
+        for (List<T> shardResult : shardResults) {
+            sources.add(shardResult.spliterator());
+            size += shardResult.size();
+        }
+        List<T> merged = new ArrayList<>(size);
+        new MergingSpliterator<>(sources, order).forEachRemaining(merged::add);
+        return merged;
+    }
+
+    private <M, T> List<List<T>> fanOut(MiniMapper<M, List<T>> function) {
+        Objects.requireNonNull(function, "Mapper function cannot be null");
+        ShardSet shards = requireShards();
+        List<List<T>> shardResults = shards.fanOut(
+                shard -> record(function, "list", mapperClass -> onShard(shards, shard, function, mapperClass)), null);
+        shardResults.removeIf(Objects::isNull);
+        return shardResults;
+    }
+
+    private static <M, R> R onShard(ShardSet shards, int shard, MiniMapper<M, R> function, Class<M> mapperClass) throws Exception {
+        try (SqlSession sqlSession = shards.openSession(shard)) {
+            return function.apply(sqlSession.getMapper(mapperClass));
+        }
+    }
+
+    /**
+     * @see MybatisMini#streamAllShards(MiniMapper)
+     */
+    public <M, T> Stream<T> streamAllShards(MiniMapper<M, Cursor<T>> function) {
+        // comparing every row as equal makes the merge drain the shards one after another
+        return streamAllShards(function, (left, right) -> 0);
+    }
+
+    /**
+     * @see MybatisMini#streamAllShards(MiniMapper, Comparator)
+     */
+    public <M, T> Stream<T> streamAllShards(MiniMapper<M, Cursor<T>> function, Comparator<? super T> order) {
+        Objects.requireNonNull(function, "Mapper function cannot be null");
+        Objects.requireNonNull(order, "Comparator cannot be null");
+        ShardSet shards = requireShards();
+        List<CursorSpliterator<T>> cursors = shards.fanOut(shard -> record(function, () -> MapperClassResolver.resolve(function),
+                "cursor", mapperClass -> openShardCursor(shards, shard, function, mapperClass)), MybatisMiniClient::closeQuietly);
+        return StreamSupport.stream(new MergingSpliterator<>(cursors, order), false)
+                .onClose(() -> cursors.forEach(MybatisMiniClient::closeQuietly));
+    }
+
+    private static <M, T> CursorSpliterator<T> openShardCursor(ShardSet shards, int shard, MiniMapper<M, Cursor<T>> function,
+                                                               Class<M> mapperClass) throws Exception {
+        SqlSession sqlSession = shards.openSession(shard);
+        try {
+            Cursor<T> cursor = function.apply(sqlSession.getMapper(mapperClass));
+            if (cursor == null) {
+                throw new MybatisMiniException("Mapper method returned a null cursor");
+            }
+            return new CursorSpliterator<>(sqlSession, cursor);
+        } catch (Exception e) {
+            sqlSession.close();
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(CursorSpliterator<?> cursor) {
+        try {
+            cursor.close();
+        } catch (MybatisMiniException e) {
+            log.warn("Error closing shard cursor", e);
+        }
+    }
+
+    private ShardSet requireShards() {
+        ShardSet shards = shardSet;
+        if (shards == null) {
+            throw new MybatisMiniException("No shards configured, call useShards first");
+        }
+        return shards;
+    }
+
+    /**
+     * @see MybatisMini#enableResultCache(Class, int, long, TimeUnit)
+     */
+    public void enableResultCache(Class<?> mapperClass, int maximumSize, long ttl, TimeUnit unit) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        Objects.requireNonNull(unit, "Time unit cannot be null");
+        resultCaches.put(mapperClass.getName(), new ResultCache(maximumSize, ttl, unit));
+        log.debug("Enabled result cache for {} with maximumSize={}, ttl={} {}", mapperClass.getName(), maximumSize, ttl, unit);
+    }
+
+    /**
+     * @see MybatisMini#disableResultCache(Class)
+     */
+    public void disableResultCache(Class<?> mapperClass) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        resultCaches.remove(mapperClass.getName());
+    }
+
+    /**
+     * @see MybatisMini#invalidateResultCache(Class)
+     */
+    public void invalidateResultCache(Class<?> mapperClass) {
+        requireResultCache(mapperClass).invalidateAll();
+    }
+
+    /**
+     * @see MybatisMini#getResultCacheStats(Class)
+     */
+    public ResultCacheStats getResultCacheStats(Class<?> mapperClass) {
+        return requireResultCache(mapperClass).stats();
+    }
+
+    private ResultCache requireResultCache(Class<?> mapperClass) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        ResultCache resultCache = resultCaches.get(mapperClass.getName());
+        if (resultCache == null) {
+            throw new MybatisMiniException("No result cache enabled for mapper: " + mapperClass.getName());
+        }
+        return resultCache;
+    }
+
+    /**
+     * @see MybatisMini#enableQueryCoalescing(Class)
+     */
+    public void enableQueryCoalescing(Class<?> mapperClass) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        coalescers.putIfAbsent(mapperClass.getName(), new QueryCoalescer());
+        log.debug("Enabled query coalescing for {}", mapperClass.getName());
+    }
+
+    /**
+     * @see MybatisMini#disableQueryCoalescing(Class)
+     */
+    public void disableQueryCoalescing(Class<?> mapperClass) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        coalescers.remove(mapperClass.getName());
+    }
+
+    /**
+     * @see MybatisMini#getQueryCoalescingStats(Class)
+     */
+    public QueryCoalescingStats getQueryCoalescingStats(Class<?> mapperClass) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        QueryCoalescer coalescer = coalescers.get(mapperClass.getName());
+        if (coalescer == null) {
+            throw new MybatisMiniException("No query coalescing enabled for mapper: " + mapperClass.getName());
+        }
+        return coalescer.stats();
+    }
+
+    /**
+     * @see MybatisMini#inSession(MiniSessionWork)
+     */
+    public <R> R inSession(MiniSessionWork<R> work) {
+        return runInSession(work, false);
+    }
+
+    /**
+     * @see MybatisMini#inTransaction(MiniSessionWork)
+     */
+    public <R> R inTransaction(MiniSessionWork<R> work) {
+        return runInSession(work, true);
+    }
+
+    private <R> R runInSession(MiniSessionWork<R> work, boolean transactional) {
+        Objects.requireNonNull(work, "Session work cannot be null");
+
+        SessionContext outer = SessionContext.current(this);
+        if (outer != null) {
+            if (transactional && !outer.transactional) {
+                throw new MybatisMiniException("Cannot start a transaction inside a non-transactional session");
+            }
+            try {
+                return work.execute(outer.sqlSession);
+            } catch (Exception e) {
+                if (transactional) {
+                    outer.rollbackOnly = true;
+                }
+                if (e instanceof MybatisMiniException) {
+                    throw (MybatisMiniException) e;
+                }
+                throw new MybatisMiniException("Session work failed", e);
+            }
+        }
+
+        try (SqlSession sqlSession = sqlSessionFactory.openSession(!transactional)) {
+            SessionContext context = SessionContext.bind(this, sqlSession, transactional);
+            try {
+                R result = work.execute(sqlSession);
+                if (transactional) {
+                    if (context.rollbackOnly) {
+                        throw new MybatisMiniException("Transaction rolled back, a nested inTransaction block failed");
+                    }
+                    sqlSession.commit(true);
+                }
+                return result;
+            } catch (Exception e) {
+                if (transactional) {
+                    sqlSession.rollback(true);
+                }
+                log.error("Error while running MybatisMini {}", transactional ? "transaction" : "session", e);
+                if (e instanceof MybatisMiniException) {
+                    throw (MybatisMiniException) e;
+                }
+                throw new MybatisMiniException(transactional ? "Transaction failed" : "Session work failed", e);
+            } finally {
+                SessionContext.unbind();
+            }
+        }
+    }
+
+    /**
+     * @see MybatisMini#queryListAsync(MiniMapper)
+     */
+    public <M, T> CompletableFuture<List<T>> queryListAsync(MiniMapper<M, List<T>> function) {
+        return queryListAsync(function, getAsyncExecutor());
+    }
+
+    /**
+     * @see MybatisMini#queryListAsync(MiniMapper, Executor)
+     */
+    public <M, T> CompletableFuture<List<T>> queryListAsync(MiniMapper<M, List<T>> function, Executor executor) {
+        Objects.requireNonNull(function, "Mapper function cannot be null");
+        return supplyAsync(() -> queryList(function), executor);
+    }
+
+    /**
+     * @see MybatisMini#queryObjectAsync(MiniMapper)
+     */
+    public <M, T> CompletableFuture<T> queryObjectAsync(MiniMapper<M, T> function) {
+        return queryObjectAsync(function, getAsyncExecutor());
+    }
+
+    /**
+     * @see MybatisMini#queryObjectAsync(MiniMapper, Executor)
+     */
+    public <M, T> CompletableFuture<T> queryObjectAsync(MiniMapper<M, T> function, Executor executor) {
+        Objects.requireNonNull(function, "Mapper function cannot be null");
+        return supplyAsync(() -> queryObject(function), executor);
+    }
+
+    private static <T> CompletableFuture<T> supplyAsync(Supplier<T> query, Executor executor) {
+        Objects.requireNonNull(executor, "Executor cannot be null");
+        try {
+            return CompletableFuture.supplyAsync(query, executor);
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<T> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(new MybatisMiniException("Async query rejected, executor queue is full or the client is closed", e));
+            return rejected;
+        }
+    }
+
+    /**
+     * @see MybatisMini#getAsyncExecutor()
+     */
+    public Executor getAsyncExecutor() {
+        Executor executor = asyncExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = asyncExecutor;
+                if (executor == null) {
+                    executor = AsyncExecutors.create(asyncConcurrency());
+                    asyncExecutor = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    private int asyncConcurrency() {
+        try {
+            return getPoolStats().getMaximumPoolSize();
+        } catch (MybatisMiniException e) {
+            // Unknown data source: fall back to the CPU count
+            return Runtime.getRuntime().availableProcessors();
+        }
+    }
+
+    /**
+     * @see MybatisMini#stream(MiniMapper)
+     */
+    public <M, T> Stream<T> stream(MiniMapper<M, Cursor<T>> function) {
+        return stream(function, 0);
+    }
+
+    /**
+     * @see MybatisMini#stream(MiniMapper, int)
+     */
+    public <M, T> Stream<T> stream(MiniMapper<M, Cursor<T>> function, int fetchSize) {
+        Objects.requireNonNull(function, "Mapper function cannot be null");
+
+        SqlSession boundSession = SessionContext.currentSession(this);
+        if (boundSession != null) {
+            // a session bound by inSession/inTransaction is closed by its owner, not by the stream
+            return openStream(function, fetchSize, boundSession, null);
+        }
+
+        ReplicaRouter router = replicaRouter;
+        ReplicaRouter.Replica replica = router == null ? null : router.acquire();
+        if (replica != null) {
+            SqlSession replicaSession = router.openSession(replica);
+            try {
+                Stream<T> rows = openStream(function, fetchSize, replicaSession, () -> {
+                    try {
+                        replicaSession.close();
+                    } finally {
+                        router.release(replica);
+                    }
+                });
+                router.succeeded(replica);
+                return rows;
+            } catch (MybatisMiniException e) {
+                if (!ReplicaRouter.isConnectionFailure(e)) {
+                    throw e;
+                }
+                router.eject(replica, e);
+            }
+        }
+        SqlSession sqlSession = getSqlSession();
+        return openStream(function, fetchSize, sqlSession, sqlSession);
+    }
+
+    private <M, T> Stream<T> openStream(MiniMapper<M, Cursor<T>> function, int fetchSize,
+                                        SqlSession sqlSession, AutoCloseable ownedResource) {
+        Cursor<T> cursor;
+        try {
+            // the call ends once the cursor is open, the rows read from it later are not timed
+            cursor = record(function, "cursor", mapperClass -> {
+                M mapper = sqlSession.getMapper(mapperClass);
+                Cursor<T> opened = fetchSize == 0
+                        ? function.apply(mapper)
+                        : FetchSizeInterceptor.withFetchSize(fetchSize, () -> function.apply(mapper));
+                if (opened == null) {
+                    throw new MybatisMiniException("Mapper method returned a null cursor");
+                }
+                return opened;
+            });
+        } catch (MybatisMiniException e) {
+            CursorSpliterator.closeQuietly(ownedResource, e);
+            throw e;
+        }
+        CursorSpliterator<T> spliterator = new CursorSpliterator<>(ownedResource, cursor);
+        return StreamSupport.stream(spliterator, false).onClose(spliterator::close);
+    }
+
+    /**
+     * @see MybatisMini#paginate(MiniPageMapper, Object, Function, int)
+     */
+    public <M, K, T> Stream<T> paginate(MiniPageMapper<M, K, T> page, K startAfter,
+                                        Function<? super T, ? extends K> keyOf, int pageSize) {
+        return paginate(page, startAfter, keyOf, pageSize, DEFAULT_PREFETCH_PAGES);
+    }
+
+    /**
+     * @see MybatisMini#paginate(MiniPageMapper, Object, Function, int, int)
+     */
+    public <M, K, T> Stream<T> paginate(MiniPageMapper<M, K, T> page, K startAfter,
+                                        Function<? super T, ? extends K> keyOf, int pageSize, int prefetchPages) {
+        Objects.requireNonNull(page, "Page query cannot be null");
+        SessionContext context = SessionContext.current(this);
+        // a bound session is not thread-safe, so its pages are fetched on the reading thread only
+        KeysetPager<K, T> pager = new KeysetPager<>((afterKey, limit) -> fetchPage(page, afterKey, limit, context),
+                startAfter, keyOf, pageSize, context == null ? prefetchPages : 0,
+                context == null ? getAsyncExecutor() : null);
+        return StreamSupport.stream(pager, false).onClose(pager::close);
+    }
+
+    private <M, K, T> List<T> fetchPage(MiniPageMapper<M, K, T> page, K afterKey, int limit, SessionContext context) {
+        return record(page, () -> MapperClassResolver.resolve(page), "page",
+                mapperClass -> execute(mapper -> page.apply(mapper, afterKey, limit), mapperClass, context));
+    }
+
+    /**
+     * @see MybatisMini#batchLoader(MiniBatchMapper, Function)
+     */
+    public <M, K, V> MiniBatchLoader<K, V> batchLoader(MiniBatchMapper<M, K, V> batchQuery,
+                                                       Function<? super V, ? extends K> keyOf) {
+        return batchLoader(batchQuery, keyOf, DEFAULT_LOADER_BATCH_SIZE, DEFAULT_LOADER_WINDOW_MICROS, TimeUnit.MICROSECONDS);
+    }
+
+    /**
+     * @see MybatisMini#batchLoader(MiniBatchMapper, Function, int, long, TimeUnit)
+     */
+    public <M, K, V> MiniBatchLoader<K, V> batchLoader(MiniBatchMapper<M, K, V> batchQuery,
+                                                       Function<? super V, ? extends K> keyOf,
+                                                       int maxBatchSize, long window, TimeUnit unit) {
+        Objects.requireNonNull(batchQuery, "Batch query cannot be null");
+        Objects.requireNonNull(unit, "Time unit cannot be null");
+        // batches run on executor threads, so they never use a session bound to the caller's thread
+        return new MiniBatchLoader<>(keys -> record(batchQuery, () -> MapperClassResolver.resolve(batchQuery), "batch",
+                mapperClass -> execute(mapper -> batchQuery.apply(mapper, keys), mapperClass, null)),
+                keyOf, maxBatchSize, window, unit, getAsyncExecutor());
+    }
+
+    /**
+     * @see MybatisMini#export(MiniMapper)
+     */
+    public <M, T> MiniPipeline.Export<T> export(MiniMapper<M, Cursor<T>> query) {
+        return new MiniPipeline.Export<>(this, query);
+    }
+
+    /**
+     * @see MybatisMini#importFrom(Path, MiniFileFormat, Function)
+     */
+    public <T> MiniPipeline.Import<T> importFrom(Path file, MiniFileFormat format, Function<String[], ? extends T> decoder) {
+        return new MiniPipeline.Import<>(this, file, format, decoder);
+    }
+
+    /**
+     * @see MybatisMini#executeBatch(Class, Iterable, MiniBatchWriter)
+     */
+    public <M, E> int[] executeBatch(Class<M> mapperClass, Iterable<E> items, MiniBatchWriter<M, E> writer) {
+        return executeBatch(mapperClass, items, writer, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @see MybatisMini#executeBatch(Class, Iterable, MiniBatchWriter, int)
+     */
+    public <M, E> int[] executeBatch(Class<M> mapperClass, Iterable<E> items, MiniBatchWriter<M, E> writer, int batchSize) {
+        Objects.requireNonNull(mapperClass, "Mapper class cannot be null");
+        Objects.requireNonNull(items, "Items cannot be null");
+        Objects.requireNonNull(writer, "Batch writer cannot be null");
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        SessionContext context = SessionContext.current(this);
+        if (context != null && context.transactional) {
+            // its chunks would commit on a connection of their own, and could wait for the transaction's row locks
+            throw new MybatisMiniException("executeBatch cannot run inside inTransaction, it commits on a session of its own");
+        }
+
+        List<int[]> updateCounts = new ArrayList<>();
+        int committed = 0;
+        try (SqlSession sqlSession = sqlSessionFactory.openSession(ExecutorType.BATCH)) {
+            M mapper = sqlSession.getMapper(mapperClass);
+            int pending = 0;
+            for (E item : items) {
+                writer.write(mapper, item);
+                if (++pending == batchSize) {
+                    flushAndCommit(sqlSession, mapperClass, updateCounts);
+                    committed += pending;
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                flushAndCommit(sqlSession, mapperClass, updateCounts);
+                committed += pending;
+            }
+        } catch (Exception e) {
+            log.error("Error while executing batch through {}, {} statements committed", mapperClass.getName(), committed, e);
+            throw new MybatisMiniException("Failed to execute batch after " + committed + " committed statements", e);
+        }
+        return flatten(updateCounts);
+    }
+
+    /**
+     * Runs the queued statements and commits them, recorded as one "flush" call: the writes before only queue
+     * statements on the session.
+     */
+    private static void flushAndCommit(SqlSession sqlSession, Class<?> mapperClass, List<int[]> updateCounts) {
+        MiniMetrics.CallRecorder recorder = MiniMetrics.begin("flush", null);
+        RuntimeException error = null;
+        try {
+            long startNanos = System.nanoTime();
+            List<BatchResult> batchResults = sqlSession.flushStatements();
+            if (recorder != null) {
+                recorder.batchFlushed(batchResults, System.nanoTime() - startNanos);
+            }
+            for (BatchResult batchResult : batchResults) {
+                updateCounts.add(batchResult.getUpdateCounts());
+            }
+            sqlSession.commit();
+        } catch (RuntimeException e) {
+            error = e;
+            throw e;
+        } finally {
+            if (recorder != null) {
+                recorder.finish(mapperClass, null, error);
+            }
+        }
+    }
+
+    private static int[] flatten(List<int[]> chunks) {
+        int length = 0;
+        for (int[] chunk : chunks) {
+            length += chunk.length;
+        }
+        int[] result = new int[length];
+        int offset = 0;
+        for (int[] chunk : chunks) {
+            System.arraycopy(chunk, 0, result, offset, chunk.length);
+            offset += chunk.length;
+        }
+        return result;
+    }
+
+    /**
+     * Pays the first-call costs up front, e.g. before a pod reports ready: resolves the mapper class of every
+     * given call site, creates every registered mapper's proxy factory, and prepares every statically known SQL
+     * statement once on a pooled connection. Preparing opens the pool, validates the SQL against the database
+     * and fills the driver's statement cache where it has one. Statements that fail to prepare are logged and
+     * skipped; dynamic SQL cannot be prepared without parameters and is skipped as well.
+     *
+     * @param mapperCalls call sites of one mapper to pre-resolve, e.g. {@code ConfigMapper::queryList}
+     * @param <M>         the mapper type
+     * @return number of statements prepared
+     */
+    @SafeVarargs
+    public final <M> int warmUp(MiniMapper<M, ?>... mapperCalls) {
+        return warmUp(Arrays.asList(mapperCalls));
+    }
+
+    private int warmUp(List<MiniMapper<?, ?>> mapperCalls) {
+        long started = System.nanoTime();
+        for (MiniMapper<?, ?> mapperCall : mapperCalls) {
+            MapperClassResolver.resolve(mapperCall);
+        }
+
+        Configuration configuration = getConfiguration();
+        int prepared = 0;
+        try (SqlSession sqlSession = getSqlSession()) {
+            for (Class<?> mapperType : configuration.getMapperRegistry().getMappers()) {
+                sqlSession.getMapper(mapperType);
+            }
+            Connection connection = sqlSession.getConnection();
+            // short statement ids alias the qualified ones, which always contain the namespace
+            for (String statementId : new ArrayList<>(configuration.getMappedStatementNames())) {
+                if (statementId.indexOf('.') >= 0 && prepare(connection, configuration.getMappedStatement(statementId))) {
+                    prepared++;
+                }
+            }
+        }
+        log.info("Warmed up {} mappers and {} statements in {} ms", configuration.getMapperRegistry().getMappers().size(),
+                prepared, (System.nanoTime() - started) / 1_000_000);
+        return prepared;
+    }
+
+    private static boolean prepare(Connection connection, MappedStatement mappedStatement) {
+        if (mappedStatement.getStatementType() == StatementType.CALLABLE
+                || mappedStatement.getSqlSource() instanceof DynamicSqlSource
+                || mappedStatement.getSqlSource() instanceof ProviderSqlSource) {
+            return false;
+        }
+        try (PreparedStatement ignored = connection.prepareStatement(mappedStatement.getBoundSql(null).getSql())) {
+            return true;
+        } catch (SQLException | RuntimeException e) {
+            log.warn("Could not prepare statement {} during warm-up: {}", mappedStatement.getId(), e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Shuts down the async and shard executors and closes the connection pools this client created, including
+     * the replicas and shards declared in its config. Environments passed to {@link #useReplicas} or
+     * {@link #useShards} are left open.
+     */
+    @Override
+    public void close() {
+        replicaRouter = null;
+        disableSessionReuse();
+        snapshots.values().forEach(MiniSnapshot::close);
+        clearShards();
+        Executor executor = asyncExecutor;
+        if (executor != null) {
+            AsyncExecutors.shutdown(executor);
+        }
+        closeDataSource(getConfiguration().getEnvironment().getDataSource());
+        for (Environment replica : ownedReplicas) {
+            closeDataSource(replica.getDataSource());
+        }
+        for (Environment shard : ownedShards) {
+            closeDataSource(shard.getDataSource());
+        }
+    }
+
+    private static void closeDataSource(DataSource dataSource) {
+        try {
+            if (dataSource instanceof AutoCloseable) {
+                ((AutoCloseable) dataSource).close();
+            } else if (dataSource instanceof PooledDataSource) {
+                ((PooledDataSource) dataSource).forceCloseAll();
+            }
+        } catch (Exception e) {
+            log.warn("Error closing data source {}", dataSource, e);
+        }
+    }
+
+    private void initializeReplicas(MiniConfigurationParser parser, Properties properties) {
+        Properties variables = getConfiguration().getVariables();
+        String replicaIds = variables == null ? null : variables.getProperty(REPLICAS_PROPERTY);
+        if (replicaIds == null || replicaIds.trim().isEmpty()) {
+            return;
+        }
+        for (String replicaId : replicaIds.split(",")) {
+            ownedReplicas.add(parser.parseEnvironment(replicaId.trim(), properties));
+        }
+        ReplicaBalancing balancing = ReplicaBalancing.valueOf(
+                variables.getProperty(REPLICAS_PROPERTY + ".balancing", ReplicaBalancing.ROUND_ROBIN.name()).trim());
+        long ejectMillis = Long.parseLong(variables.getProperty(REPLICAS_PROPERTY + ".ejectMillis", "30000").trim());
+        useReplicas(Collections.unmodifiableList(ownedReplicas), balancing, ejectMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void initializeShards(MiniConfigurationParser parser, Properties properties) {
+        Properties variables = getConfiguration().getVariables();
+        String shardIds = variables == null ? null : variables.getProperty(SHARDS_PROPERTY);
+        if (shardIds == null || shardIds.trim().isEmpty()) {
+            return;
+        }
+        for (String shardId : shardIds.split(",")) {
+            ownedShards.add(parser.parseEnvironment(shardId.trim(), properties));
+        }
+        useShards(Collections.unmodifiableList(ownedShards), ShardRouter.hashing());
+    }
+
+    private void initializeSessionReuse() {
+        Properties variables = getConfiguration().getVariables();
+        if (variables == null || !Boolean.parseBoolean(variables.getProperty(SESSION_REUSE_PROPERTY, "false").trim())) {
+            return;
+        }
+        String maxSessions = variables.getProperty(SESSION_REUSE_PROPERTY + ".maxSessions");
+        enableSessionReuse(maxSessions == null ? defaultReusableSessions() : Integer.parseInt(maxSessions.trim()),
+                Long.parseLong(variables.getProperty(SESSION_REUSE_PROPERTY + ".idleMillis",
+                        String.valueOf(DEFAULT_REUSE_IDLE_MILLIS)).trim()),
+                Long.parseLong(variables.getProperty(SESSION_REUSE_PROPERTY + ".maxLifetimeMillis",
+                        String.valueOf(DEFAULT_REUSE_LIFETIME_MILLIS)).trim()),
+                TimeUnit.MILLISECONDS);
+    }
+
+    private void checkMetricsProperties() {
+        Properties variables = getConfiguration().getVariables();
+        if (variables == null) {
+            return;
+        }
+        for (String property : Arrays.asList(MiniMetrics.ENABLED_PROPERTY, MiniMetrics.SLOW_CALL_MILLIS_PROPERTY)) {
+            if (variables.getProperty(property) != null) {
+                log.warn("Ignoring {} in the MyBatis config: metrics are shared by all clients, set it as a system property",
+                        property);
+            }
+        }
+    }
+
+    /**
+     * Runs a mapper function once its mapper class is resolved.
+     */
+    @FunctionalInterface
+    private interface MapperCall<M, R> {
+        R run(Class<M> mapperClass) throws Exception;
+    }
+
+    /**
+     * Builds a {@link MybatisMiniClient}. The config is parsed and the client set up by {@link #build()};
+     * configuration errors surface there as a {@link MybatisMiniException}.
+     */
+    public static final class Builder {
+
+        private Callable<InputStream> configSource = () -> Resources.getResourceAsStream(DEFAULT_CONFIG_PATH);
+        private String configName = DEFAULT_CONFIG_PATH;
+        private Configuration configuration;
+        private String environment;
+        private Properties properties;
+        private int parseParallelism = Runtime.getRuntime().availableProcessors();
+        private Boolean warmUp;
+        private Boolean fastRowMapping;
+        private final List<MiniMapper<?, ?>> warmUpCalls = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * @param resource classpath location of the MyBatis config XML
+         * @return this builder
+         */
+        public Builder configResource(String resource) {
+            Objects.requireNonNull(resource, "Config resource cannot be null");
+            this.configSource = () -> Resources.getResourceAsStream(resource);
+            this.configName = resource;
+            this.configuration = null;
+            return this;
+        }
+
+        /**
+         * @param file the MyBatis config XML on the file system
+         * @return this builder
+         */
+        public Builder configFile(Path file) {
+            Objects.requireNonNull(file, "Config file cannot be null");
+            this.configSource = () -> Files.newInputStream(file);
+            this.configName = file.toString();
+            this.configuration = null;
+            return this;
+        }
+
+        /**
+         * @param source opens the MyBatis config XML; the stream is closed after reading
+         * @return this builder
+         */
+        public Builder configSource(Callable<InputStream> source) {
+            this.configSource = Objects.requireNonNull(source, "Config source cannot be null");
+            this.configName = "config source";
+            this.configuration = null;
+            return this;
+        }
+
+        /**
+         * Uses an already built MyBatis configuration instead of parsing a config XML.
+         * MybatisMini adds its interceptors to it, so it should not be shared with another client.
+         *
+         * @param configuration the MyBatis configuration
+         * @return this builder
+         */
+        public Builder configuration(Configuration configuration) {
+            this.configuration = Objects.requireNonNull(configuration, "Configuration cannot be null");
+            return this;
+        }
+
+        /**
+         * @param environment the environment id to use instead of the config's default
+         * @return this builder
+         */
+        public Builder environment(String environment) {
+            this.environment = environment;
+            return this;
+        }
+
+        /**
+         * @param properties properties overriding those of the config, e.g. the database url per deployment
+         * @return this builder
+         */
+        public Builder properties(Properties properties) {
+            this.properties = properties;
+            return this;
+        }
+
+        /**
+         * @param parseParallelism number of threads reading mapper XML files, the CPU count by default
+         * @return this builder
+         */
+        public Builder parseParallelism(int parseParallelism) {
+            if (parseParallelism <= 0) {
+                throw new IllegalArgumentException("Parse parallelism must be positive: " + parseParallelism);
+            }
+            this.parseParallelism = parseParallelism;
+            return this;
+        }
+
+        /**
+         * Runs {@link MybatisMiniClient#warmUp(MiniMapper[])} as part of {@link #build()}. Off by default, or
+         * as set by {@code mybatisMini.warmUp} in the config.
+         *
+         * @param warmUp whether to warm up the client when it is built
+         * @return this builder
+         */
+        public Builder warmUp(boolean warmUp) {
+            this.warmUp = warmUp;
+            return this;
+        }
+
+        /**
+         * Maps the rows of plain {@code resultType} selects with row mappers compiled once per result type and
+         * column layout instead of MyBatis's per-row reflection, see {@link RowMappingInterceptor}. Off by
+         * default, or as set by {@code mybatisMini.fastRowMapping} in the config.
+         *
+         * @param fastRowMapping whether to map rows with compiled row mappers
+         * @return this builder
+         */
+        public Builder fastRowMapping(boolean fastRowMapping) {
+            this.fastRowMapping = fastRowMapping;
+            return this;
+        }
+
+        /**
+         * Warms up the client when it is built, pre-resolving the given call sites. Call once per mapper.
+         *
+         * @param mapperCalls call sites of one mapper to pre-resolve, e.g. {@code ConfigMapper::queryList}
+         * @param <M>         the mapper type
+         * @return this builder
+         */
+        @SafeVarargs
+        public final <M> Builder warmUp(MiniMapper<M, ?>... mapperCalls) {
+            this.warmUp = true;
+            this.warmUpCalls.addAll(Arrays.asList(mapperCalls));
+            return this;
+        }
+
+        /**
+         * @return the configured client
+         * @throws MybatisMiniException if the config cannot be read or parsed, or warm-up fails
+         */
+        public MybatisMiniClient build() {
+            long started = System.nanoTime();
+            MiniConfigurationParser parser = null;
+            Configuration built = configuration;
+            if (built == null) {
+                parser = MiniConfigurationParser.of(readConfig());
+                built = parser.parse(environment, properties, parseParallelism);
+            }
+
+            Properties variables = built.getVariables();
+            MybatisMiniClient client = new MybatisMiniClient(built, fastRowMapping != null
+                    ? fastRowMapping
+                    : enabled(variables, FAST_ROW_MAPPING_PROPERTY));
+            try {
+                client.checkMetricsProperties();
+                if (parser != null) {
+                    client.initializeReplicas(parser, properties);
+                    client.initializeShards(parser, properties);
+                }
+                client.initializeSessionReuse();
+                log.info("Built MybatisMini client from {} in {} ms", configuration == null ? configName : "configuration",
+                        (System.nanoTime() - started) / 1_000_000);
+
+                boolean warmUpEnabled = warmUp != null ? warmUp : enabled(variables, WARM_UP_PROPERTY);
+                if (warmUpEnabled) {
+                    client.warmUp(warmUpCalls);
+                }
+                return client;
+            } catch (RuntimeException | Error e) {
+                // the pools started so far belong to nobody else
+                try {
+                    client.close();
+                } catch (RuntimeException closeFailure) {
+                    e.addSuppressed(closeFailure);
+                }
+                throw e;
+            }
+        }
+
+        private static boolean enabled(Properties variables, String property) {
+            return variables != null && Boolean.parseBoolean(variables.getProperty(property, "false").trim());
+        }
+
+        private byte[] readConfig() {
+            try (InputStream inputStream = configSource.call()) {
+                if (inputStream == null) {
+                    throw new MybatisMiniException("Failed to load mybatis config file: " + configName);
+                }
+                ByteArrayOutputStream output = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = inputStream.read(buffer)) != -1) {
+                    output.write(buffer, 0, read);
+                }
+                return output.toByteArray();
+            } catch (MybatisMiniException e) {
+                throw e;
+            } catch (IOException e) {
+                throw new MybatisMiniException("Failed to load mybatis config file: " + configName, e);
+            } catch (Exception e) {
+                throw new MybatisMiniException("Error opening mybatis config: " + configName, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package cn.jiayeli.mybatisMini.core;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import lombok.Value;
+import org.apache.ibatis.datasource.pooled.PoolState;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+
+import javax.sql.DataSource;
+
+/**
+ * Point-in-time snapshot of a connection pool's state.
+ * <p>
+ * Supports HikariCP and MyBatis's own {@link PooledDataSource}. MyBatis's pool does not count waiting
+ * threads, so {@link #getThreadsAwaitingConnection()} is always 0 for it.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Value
+public class PoolStats {
+
+    int activeConnections;
+    int idleConnections;
+    int totalConnections;
+    int threadsAwaitingConnection;
+    int maximumPoolSize;
+
+    /**
+     * Reads the current state of the given data source.
+     *
+     * @param dataSource the data source backing the MyBatis environment
+     * @return the pool snapshot
+     * @throws MybatisMini.MybatisMiniException if the data source is not a supported pool
+     */
+    public static PoolStats of(DataSource dataSource) {
+        if (dataSource instanceof HikariDataSource) {
+            HikariDataSource hikariDataSource = (HikariDataSource) dataSource;
+            HikariPoolMXBean pool = hikariDataSource.getHikariPoolMXBean();
+            if (pool == null) {
+                // The pool starts lazily on the first connection request
+                return new PoolStats(0, 0, 0, 0, hikariDataSource.getMaximumPoolSize());
+            }
+            return new PoolStats(pool.getActiveConnections(), pool.getIdleConnections(), pool.getTotalConnections(),
+                    pool.getThreadsAwaitingConnection(), hikariDataSource.getMaximumPoolSize());
+        }
+        if (dataSource instanceof PooledDataSource) {
+            PooledDataSource pooledDataSource = (PooledDataSource) dataSource;
+            PoolState state = pooledDataSource.getPoolState();
+            int active = state.getActiveConnectionCount();
+            int idle = state.getIdleConnectionCount();
+            return new PoolStats(active, idle, active + idle, 0, pooledDataSource.getPoolMaximumActiveConnections());
+        }
+        throw new MybatisMini.MybatisMiniException("Pool statistics are not supported for data source: "
+                + (dataSource == null ? null : dataSource.getClass().getName()));
+    }
+}
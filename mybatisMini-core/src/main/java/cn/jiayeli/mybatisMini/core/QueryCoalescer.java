@@ -0,0 +1,126 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Single-flight execution of one mapper's MiniMapper calls: while a call is running, identical calls from
+ * other threads wait for it and share its result instead of querying the database again.
+ * <p>
+ * Calls are identical when their {@link ResultCache.Key keys} are, i.e. the same implementation method with
+ * equal captured arguments. A call only ever joins an execution that is still running when it arrives, so it
+ * never gets a result older than its own start, and a write to the mapper's namespace detaches the running
+ * executions so calls arriving after it query again. Shared results must not be modified.
+ *
+ * @author kuro@jiayeli.com
+ * @see MybatisMini#enableQueryCoalescing(Class)
+ */
+final class QueryCoalescer {
+
+    private final ConcurrentMap<ResultCache.Key, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder executions = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * Runs the loader, or waits for the identical call already running and returns its result.
+     */
+    @SuppressWarnings("unchecked")
+    <R> R execute(ResultCache.Key key, Callable<R> loader) throws Exception {
+        calls.increment();
+        Flight flight = new Flight();
+        Flight running = inFlight.putIfAbsent(key, flight);
+        if (running != null) {
+            coalesced.increment();
+            return (R) running.await(key);
+        }
+
+        executions.increment();
+        R result;
+        try {
+            result = loader.call();
+        } catch (Exception | Error e) {
+            inFlight.remove(key, flight);
+            flight.fail(e);
+            throw e;
+        }
+        // leave the map before publishing, so no call arriving from now on gets this result
+        inFlight.remove(key, flight);
+        flight.complete(result);
+        return result;
+    }
+
+    /**
+     * Lets the calls arriving from now on start new executions; calls already waiting still get their result.
+     */
+    void detachAll() {
+        inFlight.clear();
+    }
+
+    QueryCoalescingStats stats() {
+        return new QueryCoalescingStats(calls.sum(), executions.sum(), coalesced.sum(), inFlight.size());
+    }
+
+    /**
+     * One running execution and the statement it ran, so waiting calls are recorded under the same mapper method.
+     */
+    private static final class Flight {
+
+        private Object result;
+        private Throwable failure;
+        private String statementId;
+        private boolean done;
+
+        private synchronized void complete(Object result) {
+            this.result = result;
+            finish();
+        }
+
+        private synchronized void fail(Throwable failure) {
+            this.failure = failure;
+            finish();
+        }
+
+        private void finish() {
+            MiniMetrics.CallRecorder recorder = MiniMetrics.current();
+            statementId = recorder == null ? null : recorder.statementId();
+            done = true;
+            notifyAll();
+        }
+
+        private synchronized Object await(ResultCache.Key key) {
+            boolean interrupted = false;
+            try {
+                while (!done) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // the shared execution runs on regardless, so waiting for it costs nothing extra
+                        interrupted = true;
+                    }
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            MiniMetrics.CallRecorder recorder = MiniMetrics.current();
+            if (recorder != null) {
+                recorder.coalesced(statementId);
+            }
+            // a rejection or another MybatisMini failure reads the same to every caller sharing it
+            if (failure instanceof MybatisMiniException) {
+                throw (MybatisMiniException) failure;
+            }
+            if (failure != null) {
+                throw new MybatisMiniException("Coalesced call " + key + " failed", failure);
+            }
+            return result;
+        }
+    }
+}
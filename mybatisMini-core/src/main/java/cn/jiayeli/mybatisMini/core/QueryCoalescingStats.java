@@ -0,0 +1,30 @@
+package cn.jiayeli.mybatisMini.core;
+
+import lombok.Value;
+
+/**
+ * Counters of one mapper's query coalescing since it was enabled.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Value
+public class QueryCoalescingStats {
+
+    long calls;
+    /**
+     * Calls that ran their query.
+     */
+    long executions;
+    /**
+     * Calls that shared the result of an identical call already running.
+     */
+    long coalesced;
+    /**
+     * Executions running at the time of the snapshot.
+     */
+    int inFlight;
+
+    public double getCoalescedRate() {
+        return calls == 0 ? 0D : (double) coalesced / calls;
+    }
+}
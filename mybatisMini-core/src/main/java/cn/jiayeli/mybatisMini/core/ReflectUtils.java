@@ -32,6 +32,18 @@ public class ReflectUtils {
      * @throws ClassNotFoundException if a parameter type cannot be resolved to a class.
      */
     public static String findMiniMapperParameterType(String methodSignature) throws ClassNotFoundException {
+        return findMiniMapperParameterType(methodSignature, ReflectUtils.class.getClassLoader());
+    }
+
+    /**
+     * Same as {@link #findMiniMapperParameterType(String)}, resolving parameter classes through the given class loader.
+     *
+     * @param methodSignature Method signature string in JNI format.
+     * @param classLoader     The class loader the signature's classes are visible to.
+     * @return The canonical name of the parameter class that corresponds to MiniMapper, or `null` if not found.
+     * @throws ClassNotFoundException if a parameter type cannot be resolved to a class.
+     */
+    public static String findMiniMapperParameterType(String methodSignature, ClassLoader classLoader) throws ClassNotFoundException {
         if (StringUtils.isNullOrEmpty(methodSignature)) {
             log.error("Method signature is empty or null.");
             throw new IllegalArgumentException("Method signature cannot be null or empty");
@@ -48,23 +60,51 @@ public class ReflectUtils {
         String parametersPart = methodSignature.substring(start + 1, end);
         log.debug("Parameters part extracted from signature: {}", parametersPart);
 
-        // Process each parameter type
-        String[] parameterTypes = parametersPart.split(";");
-        for (String paramType : parameterTypes) {
-            if (paramType.startsWith("L")) {
-                String className = paramType.substring(1).replace('/', '.');
-                Class<?> clazz = Class.forName(className);
+        // Process each object parameter type, skipping primitives and arrays
+        for (String internalName : objectParameterTypes(methodSignature)) {
+            String className = internalName.replace('/', '.');
+            Class<?> clazz = MapperClassResolver.loadClass(className, classLoader);
 
-                if (implementsInterface(clazz, MiniMapper.class)) {
-                    log.debug("Parameter implements MiniMapper: {}", className);
-                    return className;
-                }
+            if (implementsInterface(clazz, MiniMapper.class)) {
+                log.debug("Parameter implements MiniMapper: {}", className);
+                return className;
             }
         }
         log.warn("No parameter implements MiniMapper in method signature: {}", methodSignature);
         return null;
     }
 
+    /**
+     * Lists the internal names of the non-array object parameters of a JVM method descriptor,
+     * e.g. {@code [java/lang/String, cn/jiayeli/dao/ConfigMapper]} for {@code (I[JLjava/lang/String;Lcn/jiayeli/dao/ConfigMapper;)V}.
+     *
+     * @param methodSignature Method signature string in JNI format.
+     * @return The internal names in parameter order.
+     */
+    static List<String> objectParameterTypes(String methodSignature) {
+        List<String> internalNames = new ArrayList<>();
+        int index = methodSignature.indexOf('(') + 1;
+        int end = methodSignature.indexOf(')');
+        while (index < end) {
+            char kind = methodSignature.charAt(index);
+            boolean array = false;
+            while (kind == '[') {
+                array = true;
+                kind = methodSignature.charAt(++index);
+            }
+            if (kind == 'L') {
+                int semicolon = methodSignature.indexOf(';', index);
+                if (!array) {
+                    internalNames.add(methodSignature.substring(index + 1, semicolon));
+                }
+                index = semicolon + 1;
+            } else {
+                index++;
+            }
+        }
+        return internalNames;
+    }
+
     /**
      * Extracts the return type of a method from its signature.
      *
@@ -104,10 +144,23 @@ public class ReflectUtils {
      * @throws ClassNotFoundException if the mapper class cannot be resolved.
      */
     public static String getMybatisMiniMapperClass(SerializedLambda serializedLambda) throws ClassNotFoundException {
+        return getMybatisMiniMapperClass(serializedLambda, ReflectUtils.class.getClassLoader());
+    }
+
+    /**
+     * Same as {@link #getMybatisMiniMapperClass(SerializedLambda)}, resolving classes through the given class loader
+     * (normally the loader of the lambda's capturing class).
+     *
+     * @param serializedLambda Serialized lambda instance containing metadata about the lambda.
+     * @param classLoader      The class loader the lambda's classes are visible to.
+     * @return The fully qualified class name of the mapper class.
+     * @throws ClassNotFoundException if the mapper class cannot be resolved.
+     */
+    public static String getMybatisMiniMapperClass(SerializedLambda serializedLambda, ClassLoader classLoader) throws ClassNotFoundException {
         Objects.requireNonNull(serializedLambda, "SerializedLambda cannot be null");
 
         String implClassName = serializedLambda.getImplClass().replace("/", ".");
-        Class<?> clazz = Class.forName(implClassName);
+        Class<?> clazz = MapperClassResolver.loadClass(implClassName, classLoader);
 
         // Check implemented interfaces for MiniMapper
         for (AnnotatedType annotatedType : clazz.getAnnotatedInterfaces()) {
@@ -119,7 +172,7 @@ public class ReflectUtils {
 
         // Fallback: Infer from method signature
         String implMethodSignature = serializedLambda.getImplMethodSignature();
-        String mapperClassName = findMiniMapperParameterType(implMethodSignature);
+        String mapperClassName = findMiniMapperParameterType(implMethodSignature, classLoader);
         if (mapperClassName == null) {
             log.error("Unable to identify MiniMapper implementation for SerializedLambda: {}", serializedLambda);
             throw new IllegalStateException("Cannot find MiniMapper class");
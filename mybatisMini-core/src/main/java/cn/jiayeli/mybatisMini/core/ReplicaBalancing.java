@@ -0,0 +1,17 @@
+package cn.jiayeli.mybatisMini.core;
+
+/**
+ * How MybatisMini spreads reads across healthy replicas.
+ *
+ * @author kuro@jiayeli.com
+ */
+public enum ReplicaBalancing {
+    /**
+     * Take turns over the replicas.
+     */
+    ROUND_ROBIN,
+    /**
+     * Pick the replica currently running the fewest MybatisMini reads.
+     */
+    LEAST_IN_FLIGHT
+}
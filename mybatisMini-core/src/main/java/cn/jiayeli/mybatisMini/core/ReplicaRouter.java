@@ -0,0 +1,176 @@
+package cn.jiayeli.mybatisMini.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.defaults.DefaultSqlSession;
+import org.apache.ibatis.transaction.Transaction;
+
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Routes MybatisMini reads to read replicas and takes failing replicas out of rotation.
+ * <p>
+ * Replica sessions share the primary's {@link Configuration}, so mapped statements, interceptors and caches
+ * are the same everywhere; only the environment (data source and transaction factory) differs.
+ * A replica whose connection fails is ejected for a while. Once that time has passed a single read is let
+ * through as a probe, which either brings the replica back or ejects it once more.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+final class ReplicaRouter {
+
+    private final Configuration configuration;
+    private final Replica[] replicas;
+    private final ReplicaBalancing balancing;
+    private final long ejectNanos;
+    private final AtomicInteger nextIndex = new AtomicInteger();
+
+    ReplicaRouter(Configuration configuration, List<Environment> environments, ReplicaBalancing balancing,
+                  long ejectFor, TimeUnit unit) {
+        if (environments.isEmpty()) {
+            throw new IllegalArgumentException("At least one replica environment is required");
+        }
+        List<Replica> replicaList = new ArrayList<>();
+        for (Environment environment : environments) {
+            replicaList.add(new Replica(environment));
+        }
+        this.configuration = configuration;
+        this.replicas = replicaList.toArray(new Replica[0]);
+        this.balancing = balancing;
+        this.ejectNanos = unit.toNanos(ejectFor);
+    }
+
+    /**
+     * Picks a healthy replica and counts a read against it. Every non-null result must be
+     * handed back through {@link #release(Replica)}.
+     *
+     * @return the replica to read from, or {@code null} when all replicas are ejected
+     */
+    Replica acquire() {
+        long now = System.nanoTime();
+        Replica chosen = balancing == ReplicaBalancing.LEAST_IN_FLIGHT ? leastInFlight(now) : roundRobin(now);
+        if (chosen != null) {
+            chosen.inFlight.incrementAndGet();
+        }
+        return chosen;
+    }
+
+    void release(Replica replica) {
+        replica.inFlight.decrementAndGet();
+    }
+
+    /**
+     * Takes the replica out of rotation after a connection failure.
+     */
+    void eject(Replica replica, Exception cause) {
+        replica.ejectedUntilNanos.set(System.nanoTime() + ejectNanos);
+        replica.ejected = true;
+        Throwable rootCause = cause;
+        while (rootCause.getCause() != null && rootCause.getCause() != rootCause) {
+            rootCause = rootCause.getCause();
+        }
+        log.warn("Ejected replica {} for {} ms after connection failure: {}",
+                replica.getId(), TimeUnit.NANOSECONDS.toMillis(ejectNanos), rootCause.toString());
+    }
+
+    /**
+     * Records a successful read, bringing a probed replica back into rotation.
+     */
+    void succeeded(Replica replica) {
+        if (replica.ejected) {
+            replica.ejected = false;
+            log.info("Replica {} is back in rotation", replica.getId());
+        }
+    }
+
+    SqlSession openSession(Replica replica) {
+        Environment environment = replica.environment;
+        Transaction transaction = environment.getTransactionFactory()
+                .newTransaction(environment.getDataSource(), null, false);
+        return new DefaultSqlSession(configuration, configuration.newExecutor(transaction), false);
+    }
+
+    private Replica roundRobin(long now) {
+        int start = nextIndex.getAndIncrement();
+        for (int i = 0; i < replicas.length; i++) {
+            Replica replica = replicas[Math.floorMod(start + i, replicas.length)];
+            if (!replica.ejected || replica.tryClaimProbe(now, ejectNanos)) {
+                return replica;
+            }
+        }
+        return null;
+    }
+
+    private Replica leastInFlight(long now) {
+        Replica chosen = null;
+        int start = nextIndex.getAndIncrement();
+        for (int i = 0; i < replicas.length; i++) {
+            // rotate the starting point so ties are spread out
+            Replica replica = replicas[Math.floorMod(start + i, replicas.length)];
+            if (replica.ejected) {
+                if (replica.tryClaimProbe(now, ejectNanos)) {
+                    return replica;
+                }
+            } else if (chosen == null || replica.inFlight.get() < chosen.inFlight.get()) {
+                chosen = replica;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Tells connection failures, which say something about the replica, apart from statement errors.
+     */
+    static boolean isConnectionFailure(Throwable throwable) {
+        for (Throwable cause = throwable; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLTransientConnectionException || cause instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+            if (cause instanceof SQLException) {
+                String sqlState = ((SQLException) cause).getSQLState();
+                if (sqlState != null && sqlState.startsWith("08")) {
+                    return true;
+                }
+            }
+            if (cause.getCause() == cause) {
+                break;
+            }
+        }
+        return false;
+    }
+
+    static final class Replica {
+
+        private final Environment environment;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicLong ejectedUntilNanos = new AtomicLong();
+        private volatile boolean ejected;
+
+        private Replica(Environment environment) {
+            this.environment = environment;
+        }
+
+        String getId() {
+            return environment.getId();
+        }
+
+        /**
+         * Lets exactly one caller probe an ejected replica once its ejection has run out; the others keep
+         * skipping it for another ejection period unless the probe brings it back.
+         */
+        private boolean tryClaimProbe(long now, long ejectNanos) {
+            long until = ejectedUntilNanos.get();
+            return now - until >= 0 && ejectedUntilNanos.compareAndSet(until, now + ejectNanos);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package cn.jiayeli.mybatisMini.core;
+
+import java.lang.invoke.SerializedLambda;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded LRU cache with a time to live for the results of one mapper's MiniMapper calls.
+ * <p>
+ * Entries are keyed by the lambda's implementation method and its captured arguments, so
+ * {@code m -> m.queryConfigByKey(key)} is cached per value of {@code key}. Cached results are
+ * shared between callers and must not be modified.
+ *
+ * @author kuro@jiayeli.com
+ * @see MybatisMini#enableResultCache(Class, int, long, TimeUnit)
+ */
+final class ResultCache {
+
+    private static final Object NULL_RESULT = new Object();
+
+    private final int maximumSize;
+    private final long ttlNanos;
+    private final LinkedHashMap<Key, Entry> entries;
+    /**
+     * Bumped on every invalidation so loads that started before a write never store their stale result.
+     */
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    ResultCache(int maximumSize, long ttl, TimeUnit unit) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Maximum cache size must be positive: " + maximumSize);
+        }
+        if (ttl <= 0) {
+            throw new IllegalArgumentException("Cache time to live must be positive: " + ttl);
+        }
+        this.maximumSize = maximumSize;
+        this.ttlNanos = unit.toNanos(ttl);
+        this.entries = new LinkedHashMap<Key, Entry>(16, 0.75F, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                if (size() > ResultCache.this.maximumSize) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached result for the key, or runs the loader and caches what it returns.
+     */
+    @SuppressWarnings("unchecked")
+    <R> R get(Key key, Callable<R> loader) throws Exception {
+        long now = System.nanoTime();
+        long loadGeneration;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (now - entry.expiresAtNanos < 0) {
+                    hits.increment();
+                    return entry.value == NULL_RESULT ? null : (R) entry.value;
+                }
+                entries.remove(key);
+                expirations.increment();
+            }
+            loadGeneration = generation.get();
+        }
+        misses.increment();
+
+        R result = loader.call();
+        synchronized (entries) {
+            if (generation.get() == loadGeneration) {
+                entries.put(key, new Entry(result == null ? NULL_RESULT : result, System.nanoTime() + ttlNanos));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Drops every entry, e.g. after a write to the cached mapper's namespace.
+     */
+    void invalidateAll() {
+        synchronized (entries) {
+            generation.incrementAndGet();
+            entries.clear();
+        }
+        invalidations.increment();
+    }
+
+    ResultCacheStats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new ResultCacheStats(hits.sum(), misses.sum(), evictions.sum(), expirations.sum(), invalidations.sum(), size);
+    }
+
+    /**
+     * Builds the cache key of a MiniMapper call from its serialized lambda.
+     */
+    static Key keyOf(SerializedLambda serializedLambda) {
+        Object[] capturedArgs = new Object[serializedLambda.getCapturedArgCount()];
+        for (int i = 0; i < capturedArgs.length; i++) {
+            capturedArgs[i] = serializedLambda.getCapturedArg(i);
+        }
+        return new Key(serializedLambda.getImplClass(), serializedLambda.getImplMethodName(),
+                serializedLambda.getImplMethodSignature(), capturedArgs);
+    }
+
+    static final class Key {
+
+        private final String implClass;
+        private final String implMethodName;
+        private final String implMethodSignature;
+        private final Object[] capturedArgs;
+        private final int hashCode;
+
+        private Key(String implClass, String implMethodName, String implMethodSignature, Object[] capturedArgs) {
+            this.implClass = implClass;
+            this.implMethodName = implMethodName;
+            this.implMethodSignature = implMethodSignature;
+            this.capturedArgs = capturedArgs;
+            int hash = implClass.hashCode();
+            hash = 31 * hash + implMethodName.hashCode();
+            hash = 31 * hash + implMethodSignature.hashCode();
+            this.hashCode = 31 * hash + Arrays.deepHashCode(capturedArgs);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hashCode == other.hashCode
+                    && implMethodName.equals(other.implMethodName)
+                    && implClass.equals(other.implClass)
+                    && implMethodSignature.equals(other.implMethodSignature)
+                    && Arrays.deepEquals(capturedArgs, other.capturedArgs);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public String toString() {
+            return implClass + "." + implMethodName + Arrays.deepToString(capturedArgs);
+        }
+    }
+
+    private static final class Entry {
+
+        private final Object value;
+        private final long expiresAtNanos;
+
+        private Entry(Object value, long expiresAtNanos) {
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+}
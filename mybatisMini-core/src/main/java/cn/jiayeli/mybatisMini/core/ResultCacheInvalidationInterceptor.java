@@ -0,0 +1,104 @@
+package cn.jiayeli.mybatisMini.core;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+/**
+ * Clears the MybatisMini result cache of a namespace, and detaches its in-flight coalesced calls, whenever an
+ * insert, update or delete of that namespace runs through MybatisMini's SqlSessionFactory, and again when the
+ * session that ran it commits, rolls back or closes.
+ * <p>
+ * The cache is cleared both before and after the statement, so reads racing the write cannot keep the
+ * old row cached. Other connections keep reading the old row until the write is committed, as do the
+ * statements a batch session only queues until its flush, so the namespaces a session wrote to are cleared
+ * once more around its commit; as every clearing stops the loads started before it from storing their
+ * result, no row read before the commit stays cached. Calls arriving after the write never join a query
+ * that started before it.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = Executor.class, method = "commit", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "rollback", args = {boolean.class}),
+        @Signature(type = Executor.class, method = "close", args = {boolean.class})
+})
+public class ResultCacheInvalidationInterceptor implements Interceptor {
+
+    private final Map<String, ResultCache> resultCaches;
+    private final Map<String, QueryCoalescer> coalescers;
+    /**
+     * Namespaces written through each executor since its last commit or rollback. Weak, in case a session is
+     * dropped without being closed.
+     */
+    private final Map<Executor, Set<String>> dirtyNamespaces = Collections.synchronizedMap(new WeakHashMap<>());
+
+    ResultCacheInvalidationInterceptor(Map<String, ResultCache> resultCaches, Map<String, QueryCoalescer> coalescers) {
+        this.resultCaches = resultCaches;
+        this.coalescers = coalescers;
+    }
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Executor executor = (Executor) invocation.getTarget();
+        if (!"update".equals(invocation.getMethod().getName())) {
+            return endTransaction(invocation, executor);
+        }
+        String namespace = namespaceOf((MappedStatement) invocation.getArgs()[0]);
+        if (namespace == null || !isCached(namespace)) {
+            return invocation.proceed();
+        }
+        dirtyNamespaces.computeIfAbsent(executor, key -> new HashSet<>()).add(namespace);
+        invalidate(namespace);
+        try {
+            return invocation.proceed();
+        } finally {
+            invalidate(namespace);
+        }
+    }
+
+    private Object endTransaction(Invocation invocation, Executor executor) throws Throwable {
+        Set<String> namespaces = dirtyNamespaces.isEmpty() ? null : dirtyNamespaces.remove(executor);
+        if (namespaces == null) {
+            return invocation.proceed();
+        }
+        namespaces.forEach(this::invalidate);
+        try {
+            return invocation.proceed();
+        } finally {
+            namespaces.forEach(this::invalidate);
+        }
+    }
+
+    private boolean isCached(String namespace) {
+        return !resultCaches.isEmpty() && resultCaches.containsKey(namespace)
+                || !coalescers.isEmpty() && coalescers.containsKey(namespace);
+    }
+
+    private void invalidate(String namespace) {
+        ResultCache resultCache = resultCaches.get(namespace);
+        if (resultCache != null) {
+            resultCache.invalidateAll();
+        }
+        QueryCoalescer coalescer = coalescers.get(namespace);
+        if (coalescer != null) {
+            coalescer.detachAll();
+        }
+    }
+
+    private static String namespaceOf(MappedStatement mappedStatement) {
+        String statementId = mappedStatement.getId();
+        int namespaceEnd = statementId.lastIndexOf('.');
+        return namespaceEnd < 0 ? null : statementId.substring(0, namespaceEnd);
+    }
+}
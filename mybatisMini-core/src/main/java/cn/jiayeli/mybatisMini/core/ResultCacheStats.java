@@ -0,0 +1,33 @@
+package cn.jiayeli.mybatisMini.core;
+
+import lombok.Value;
+
+/**
+ * Counters of one mapper's result cache since it was enabled.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Value
+public class ResultCacheStats {
+
+    long hits;
+    long misses;
+    /**
+     * Entries dropped because the cache reached its maximum size.
+     */
+    long evictions;
+    /**
+     * Entries dropped because their time to live passed.
+     */
+    long expirations;
+    /**
+     * Times the whole cache was cleared by a write to its namespace.
+     */
+    long invalidations;
+    int size;
+
+    public double getHitRate() {
+        long requests = hits + misses;
+        return requests == 0 ? 0D : (double) hits / requests;
+    }
+}
@@ -0,0 +1,265 @@
+package cn.jiayeli.mybatisMini.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Long-lived auto-commit sessions with a {@link ExecutorType#REUSE} executor, so that a query run again and
+ * again prepares its JDBC statement once per session instead of on every call.
+ * <p>
+ * A call takes the session its thread used last if that one is idle, else the session released most recently
+ * by any thread, and only opens a new one when none is idle. Released sessions are never tied to a thread, so
+ * the sessions of threads that end, like the virtual thread of every async call, serve the next calls rather
+ * than waiting for the idle sweep. Each session pins a pooled connection, so at most {@code maxSessions} are
+ * open at a time; a call finding none left and none idle runs on a session of its own as usual. The
+ * first-level cache is cleared after every call.
+ * A session idle for {@code idleTimeout} is closed by a background sweep, and one older than
+ * {@code maxLifetime} is closed when its call returns, which also bounds the statements it keeps prepared.
+ * A call that fails closes its session, in case the connection went bad.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+final class ReusableSessions implements AutoCloseable {
+
+    private static final ScheduledThreadPoolExecutor EVICTOR = newEvictor();
+
+    private final SqlSessionFactory sqlSessionFactory;
+    private final int maxSessions;
+    private final long idleTimeoutNanos;
+    private final long maxLifetimeNanos;
+    private final ThreadLocal<Slot> threadSlot = new ThreadLocal<>();
+    private final Set<Slot> openSlots = ConcurrentHashMap.newKeySet();
+    // most recently released first, so that rarely needed sessions stay idle and are swept
+    private final ConcurrentLinkedDeque<Slot> idleSlots = new ConcurrentLinkedDeque<>();
+    private final Semaphore permits;
+    private final ScheduledFuture<?> sweep;
+    private volatile boolean closed;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder reusedCalls = new LongAdder();
+    private final LongAdder fallbackCalls = new LongAdder();
+    private final LongAdder sessionsOpened = new LongAdder();
+    private final LongAdder sessionsClosed = new LongAdder();
+
+    ReusableSessions(SqlSessionFactory sqlSessionFactory, int maxSessions, long idleTimeout, long maxLifetime,
+                     TimeUnit unit) {
+        if (maxSessions < 1) {
+            throw new IllegalArgumentException("Maximum sessions must be positive: " + maxSessions);
+        }
+        if (idleTimeout <= 0 || maxLifetime <= 0) {
+            throw new IllegalArgumentException("Idle timeout and maximum lifetime must be positive");
+        }
+        this.sqlSessionFactory = sqlSessionFactory;
+        this.maxSessions = maxSessions;
+        this.idleTimeoutNanos = unit.toNanos(idleTimeout);
+        this.maxLifetimeNanos = unit.toNanos(maxLifetime);
+        this.permits = new Semaphore(maxSessions);
+        long sweepNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(10), idleTimeoutNanos / 2);
+        this.sweep = EVICTOR.scheduleWithFixedDelay(this::evictIdle, sweepNanos, sweepNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Runs the work on an idle session, opening one if none is idle.
+     *
+     * @param work     the mapper call
+     * @param fallback runs the call on a session of its own when no reusable session is left
+     * @param <R>      the result type
+     * @return the work's result
+     * @throws Exception if the work fails
+     */
+    <R> R execute(MiniSessionWork<R> work, Callable<R> fallback) throws Exception {
+        Slot slot = acquire();
+        if (slot == null) {
+            fallbackCalls.increment();
+            return fallback.call();
+        }
+        boolean failed = true;
+        try {
+            R result = work.execute(slot.sqlSession);
+            failed = false;
+            return result;
+        } finally {
+            release(slot, failed);
+        }
+    }
+
+    /**
+     * @return an idle or new session marked in use, or {@code null} when the limit of open sessions is reached
+     * or the call is made from inside another one on this thread
+     */
+    private Slot acquire() {
+        if (closed) {
+            return null;
+        }
+        Thread caller = Thread.currentThread();
+        Slot slot = threadSlot.get();
+        if (slot != null) {
+            synchronized (slot) {
+                if (slot.inUse && slot.user == caller) {
+                    // a call made from inside another one on this thread
+                    return null;
+                }
+            }
+            if (claim(slot, caller)) {
+                idleSlots.remove(slot);
+                return slot;
+            }
+        }
+        for (slot = idleSlots.pollFirst(); slot != null; slot = idleSlots.pollFirst()) {
+            // entries whose session was claimed by its own thread or closed meanwhile are dropped
+            if (claim(slot, caller)) {
+                threadSlot.set(slot);
+                return slot;
+            }
+        }
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+        try {
+            slot = new Slot(sqlSessionFactory.openSession(ExecutorType.REUSE, true));
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+        slot.user = caller;
+        openSlots.add(slot);
+        threadSlot.set(slot);
+        sessionsOpened.increment();
+        calls.increment();
+        log.debug("Opened reusable session on thread {}", Thread.currentThread().getName());
+        return slot;
+    }
+
+    private boolean claim(Slot slot, Thread caller) {
+        synchronized (slot) {
+            if (slot.inUse || slot.closed) {
+                return false;
+            }
+            slot.inUse = true;
+            slot.user = caller;
+        }
+        calls.increment();
+        reusedCalls.increment();
+        return true;
+    }
+
+    private void release(Slot slot, boolean failed) {
+        if (!failed) {
+            // the next call must not see rows cached by this one
+            slot.sqlSession.clearCache();
+        }
+        long now = System.nanoTime();
+        boolean retire;
+        synchronized (slot) {
+            slot.inUse = false;
+            slot.user = null;
+            slot.lastUsedNanos = now;
+            retire = failed || closed || now - slot.openedNanos >= maxLifetimeNanos;
+            if (retire) {
+                slot.closed = true;
+            }
+        }
+        if (retire) {
+            close(slot);
+        } else {
+            idleSlots.offerFirst(slot);
+        }
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (Slot slot : openSlots) {
+            boolean evict;
+            synchronized (slot) {
+                evict = !slot.inUse && !slot.closed
+                        && (now - slot.lastUsedNanos >= idleTimeoutNanos || now - slot.openedNanos >= maxLifetimeNanos);
+                if (evict) {
+                    slot.closed = true;
+                }
+            }
+            if (evict) {
+                close(slot);
+            }
+        }
+    }
+
+    private void close(Slot slot) {
+        openSlots.remove(slot);
+        idleSlots.remove(slot);
+        sessionsClosed.increment();
+        permits.release();
+        try {
+            slot.sqlSession.close();
+        } catch (RuntimeException e) {
+            log.warn("Error closing reusable session", e);
+        }
+    }
+
+    /**
+     * @return the counters since the sessions were enabled
+     */
+    SessionReuseStats stats() {
+        return new SessionReuseStats(calls.sum(), reusedCalls.sum(), fallbackCalls.sum(), sessionsOpened.sum(),
+                sessionsClosed.sum(), openSlots.size(), maxSessions);
+    }
+
+    /**
+     * Closes the idle sessions; those running a call are closed when it returns.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        sweep.cancel(false);
+        for (Slot slot : openSlots) {
+            boolean idle;
+            synchronized (slot) {
+                idle = !slot.inUse && !slot.closed;
+                if (idle) {
+                    slot.closed = true;
+                }
+            }
+            if (idle) {
+                close(slot);
+            }
+        }
+    }
+
+    private static ScheduledThreadPoolExecutor newEvictor() {
+        ScheduledThreadPoolExecutor evictor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "mybatisMini-session-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        evictor.setRemoveOnCancelPolicy(true);
+        return evictor;
+    }
+
+    /**
+     * One session. Its flags are guarded by the slot itself, shared by the threads using it and the sweep.
+     */
+    private static final class Slot {
+        final SqlSession sqlSession;
+        final long openedNanos = System.nanoTime();
+        long lastUsedNanos = openedNanos;
+        boolean inUse = true;
+        boolean closed;
+        Thread user;
+
+        Slot(SqlSession sqlSession) {
+            this.sqlSession = sqlSession;
+        }
+    }
+}
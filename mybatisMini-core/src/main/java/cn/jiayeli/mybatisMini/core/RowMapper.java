@@ -0,0 +1,491 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.annotations.AutomapConstructor;
+import org.apache.ibatis.reflection.Reflector;
+import org.apache.ibatis.reflection.property.PropertyNamer;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.type.JdbcType;
+import org.apache.ibatis.type.TypeHandler;
+import org.apache.ibatis.type.TypeHandlerRegistry;
+
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Maps the rows of one result type and column layout to objects, following MyBatis auto-mapping rules.
+ * <p>
+ * Everything MyBatis looks up per row — the property of each column, its type handler, the setter — is resolved
+ * once when the mapper is compiled. Setters of public classes become {@link BiConsumer}s spun by
+ * {@link LambdaMetafactory}, other setters and fields bound {@link MethodHandle}s, so mapping a row costs one
+ * type handler and one direct call per column. Types without a no-arg constructor are built through their
+ * constructor: records by component name, otherwise the {@link AutomapConstructor} or only constructor with
+ * the columns in order, as MyBatis does.
+ *
+ * @author kuro@jiayeli.com
+ * @see RowMappingInterceptor
+ */
+@Slf4j
+final class RowMapper {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final Method IS_RECORD = classMethod("isRecord");
+    private static final Method GET_RECORD_COMPONENTS = classMethod("getRecordComponents");
+
+    private final Supplier<Object> newInstance;
+    private final MethodHandle constructor;
+    private final int[] argumentColumns;
+    private final TypeHandler<?>[] argumentHandlers;
+    private final int[] propertyColumns;
+    private final TypeHandler<?>[] propertyHandlers;
+    private final BiConsumer<Object, Object>[] setters;
+    private final boolean[] primitives;
+    private final boolean callSettersOnNulls;
+    private final boolean returnInstanceForEmptyRow;
+
+    private RowMapper(Supplier<Object> newInstance, MethodHandle constructor, int[] argumentColumns,
+                      TypeHandler<?>[] argumentHandlers, List<PropertyColumn> properties, Configuration configuration) {
+        this.newInstance = newInstance;
+        this.constructor = constructor;
+        this.argumentColumns = argumentColumns;
+        this.argumentHandlers = argumentHandlers;
+        this.propertyColumns = new int[properties.size()];
+        this.propertyHandlers = new TypeHandler<?>[properties.size()];
+        @SuppressWarnings("unchecked")
+        BiConsumer<Object, Object>[] setters = new BiConsumer[properties.size()];
+        this.setters = setters;
+        this.primitives = new boolean[properties.size()];
+        for (int i = 0; i < properties.size(); i++) {
+            PropertyColumn property = properties.get(i);
+            propertyColumns[i] = property.column;
+            propertyHandlers[i] = property.typeHandler;
+            setters[i] = property.setter;
+            primitives[i] = property.primitive;
+        }
+        this.callSettersOnNulls = configuration.isCallSettersOnNulls();
+        this.returnInstanceForEmptyRow = configuration.isReturnInstanceForEmptyRow();
+    }
+
+    /**
+     * Maps the current row.
+     *
+     * @param resultSet the result set positioned on the row
+     * @return the row object, {@code null} for a row without any value unless {@code returnInstanceForEmptyRow}
+     * is set, as MyBatis does
+     * @throws SQLException if a column cannot be read
+     */
+    Object map(ResultSet resultSet) throws SQLException {
+        Object row;
+        boolean found;
+        if (constructor == null) {
+            row = newInstance.get();
+            found = false;
+        } else {
+            Object[] arguments = new Object[argumentColumns.length];
+            for (int i = 0; i < arguments.length; i++) {
+                arguments[i] = argumentHandlers[i].getResult(resultSet, argumentColumns[i]);
+            }
+            try {
+                row = (Object) constructor.invokeExact(arguments);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+            // MyBatis keeps a constructed row even when all its values are null
+            found = true;
+        }
+        for (int i = 0; i < setters.length; i++) {
+            Object value = propertyHandlers[i].getResult(resultSet, propertyColumns[i]);
+            if (value != null) {
+                setters[i].accept(row, value);
+                found = true;
+            } else if (callSettersOnNulls && !primitives[i]) {
+                setters[i].accept(row, null);
+            }
+        }
+        return found || returnInstanceForEmptyRow ? row : null;
+    }
+
+    /**
+     * Tells whether rows of the type can be mapped without knowing the columns: a concrete bean or record that
+     * MyBatis does not map through a type handler, with a no-arg constructor or one it binds columns to.
+     *
+     * @param type          the result type
+     * @param configuration the configuration of the statement
+     * @return whether {@link #compile} can be tried for the type
+     */
+    static boolean supports(Class<?> type, Configuration configuration) {
+        if (type.isInterface() || type.isArray() || type.isPrimitive() || type.isEnum()
+                || Modifier.isAbstract(type.getModifiers())
+                || Map.class.isAssignableFrom(type) || Collection.class.isAssignableFrom(type)
+                || configuration.getTypeHandlerRegistry().hasTypeHandler(type)) {
+            return false;
+        }
+        if (type.isMemberClass() && !Modifier.isStatic(type.getModifiers())) {
+            return false;
+        }
+        if (hasDefaultConstructor(type) || isRecord(type)) {
+            return true;
+        }
+        return !configuration.isArgNameBasedConstructorAutoMapping() && boundConstructor(type) != null;
+    }
+
+    /**
+     * Builds the mapper of a column layout.
+     *
+     * @param layout        the result type and columns
+     * @param configuration the configuration of the statement
+     * @return the mapper, or {@code null} when the layout needs something only MyBatis does, such as nested
+     * property names or a column count not matching the constructor
+     */
+    static RowMapper compile(Layout layout, Configuration configuration) {
+        Class<?> type = layout.type;
+        try {
+            Supplier<Object> newInstance = null;
+            MethodHandle constructor = null;
+            int[] argumentColumns = new int[0];
+            TypeHandler<?>[] argumentHandlers = new TypeHandler<?>[0];
+            boolean[] bound = new boolean[layout.columns.length];
+            if (hasDefaultConstructor(type)) {
+                newInstance = instantiator(type.getDeclaredConstructor());
+            } else {
+                Constructor<?> target = isRecord(type) ? canonicalConstructor(type) : boundConstructor(type);
+                argumentColumns = isRecord(type) ? componentColumns(type, layout, configuration) : null;
+                if (argumentColumns == null) {
+                    argumentColumns = positionalColumns(target.getParameterCount(), layout);
+                    if (argumentColumns == null) {
+                        return null;
+                    }
+                }
+                argumentHandlers = new TypeHandler<?>[argumentColumns.length];
+                Class<?>[] parameterTypes = target.getParameterTypes();
+                for (int i = 0; i < argumentColumns.length; i++) {
+                    argumentHandlers[i] = typeHandler(parameterTypes[i], layout, argumentColumns[i], configuration);
+                    if (argumentHandlers[i] == null) {
+                        return null;
+                    }
+                    bound[argumentColumns[i] - 1] = true;
+                }
+                target.setAccessible(true);
+                constructor = LOOKUP.unreflectConstructor(target)
+                        .asSpreader(Object[].class, argumentColumns.length)
+                        .asType(MethodType.methodType(Object.class, Object[].class));
+            }
+
+            Reflector reflector = configuration.getReflectorFactory().findForClass(type);
+            List<PropertyColumn> properties = new ArrayList<>();
+            for (int column = 1; column <= layout.columns.length; column++) {
+                if (bound[column - 1]) {
+                    continue;
+                }
+                String label = layout.columns[column - 1];
+                if (label.indexOf('.') >= 0) {
+                    return null;
+                }
+                String property = reflector.findPropertyName(configuration.isMapUnderscoreToCamelCase()
+                        ? label.replace("_", "") : label);
+                if (property == null || !reflector.hasSetter(property)) {
+                    continue;
+                }
+                Class<?> propertyType = reflector.getSetterType(property);
+                TypeHandler<?> typeHandler = typeHandler(propertyType, layout, column, configuration);
+                if (typeHandler == null) {
+                    // MyBatis leaves columns without a type handler unmapped
+                    continue;
+                }
+                BiConsumer<Object, Object> setter = setter(type, property, propertyType);
+                if (setter == null) {
+                    return null;
+                }
+                properties.add(new PropertyColumn(column, typeHandler, setter, propertyType.isPrimitive()));
+            }
+            log.debug("Compiled row mapper of {} for columns {}", type.getName(), Arrays.toString(layout.columns));
+            return new RowMapper(newInstance, constructor, argumentColumns, argumentHandlers, properties, configuration);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.debug("Rows of {} are mapped by MyBatis: {}", type.getName(), e.toString());
+            return null;
+        }
+    }
+
+    private static TypeHandler<?> typeHandler(Class<?> javaType, Layout layout, int column, Configuration configuration) {
+        TypeHandlerRegistry registry = configuration.getTypeHandlerRegistry();
+        JdbcType jdbcType = JdbcType.forCode(layout.jdbcTypes[column - 1]);
+        return registry.hasTypeHandler(javaType, jdbcType) ? registry.getTypeHandler(javaType, jdbcType) : null;
+    }
+
+    private static Supplier<Object> instantiator(Constructor<?> constructor) throws IllegalAccessException {
+        Class<?> type = constructor.getDeclaringClass();
+        if (Modifier.isPublic(type.getModifiers()) && Modifier.isPublic(constructor.getModifiers()) && visible(type)) {
+            try {
+                MethodHandle handle = LOOKUP.unreflectConstructor(constructor);
+                @SuppressWarnings("unchecked")
+                Supplier<Object> supplier = (Supplier<Object>) LambdaMetafactory.metafactory(LOOKUP, "get",
+                        MethodType.methodType(Supplier.class), MethodType.methodType(Object.class), handle,
+                        MethodType.methodType(type)).getTarget().invoke();
+                return supplier;
+            } catch (Throwable e) {
+                log.debug("Falling back to a method handle to create {}: {}", type.getName(), e.toString());
+            }
+        }
+        constructor.setAccessible(true);
+        MethodHandle handle = LOOKUP.unreflectConstructor(constructor).asType(MethodType.methodType(Object.class));
+        return () -> {
+            try {
+                return (Object) handle.invokeExact();
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        };
+    }
+
+    /**
+     * Binds the setter MyBatis would use for the property: a {@code setX} method of the type or a superclass,
+     * else the field itself.
+     */
+    private static BiConsumer<Object, Object> setter(Class<?> type, String property, Class<?> propertyType)
+            throws IllegalAccessException {
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Method method : current.getDeclaredMethods()) {
+                if (method.getParameterCount() == 1 && !method.isBridge() && !Modifier.isStatic(method.getModifiers())
+                        && method.getName().startsWith("set") && method.getName().length() > 3
+                        && property.equals(PropertyNamer.methodToProperty(method.getName()))
+                        && method.getParameterTypes()[0].isAssignableFrom(propertyType)) {
+                    return methodSetter(method);
+                }
+            }
+        }
+        for (Class<?> current = type; current != null && current != Object.class; current = current.getSuperclass()) {
+            for (Field field : current.getDeclaredFields()) {
+                if (field.getName().equals(property) && !Modifier.isStatic(field.getModifiers())
+                        && !Modifier.isFinal(field.getModifiers())) {
+                    field.setAccessible(true);
+                    return handleSetter(LOOKUP.unreflectSetter(field));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static BiConsumer<Object, Object> methodSetter(Method method) throws IllegalAccessException {
+        Class<?> owner = method.getDeclaringClass();
+        Class<?> parameterType = method.getParameterTypes()[0];
+        if (Modifier.isPublic(owner.getModifiers()) && Modifier.isPublic(method.getModifiers())
+                && visible(owner) && visible(parameterType)) {
+            try {
+                @SuppressWarnings("unchecked")
+                BiConsumer<Object, Object> setter = (BiConsumer<Object, Object>) LambdaMetafactory.metafactory(LOOKUP,
+                        "accept", MethodType.methodType(BiConsumer.class),
+                        MethodType.methodType(void.class, Object.class, Object.class), LOOKUP.unreflect(method),
+                        MethodType.methodType(void.class, owner, MethodType.methodType(parameterType).wrap().returnType()))
+                        .getTarget().invoke();
+                return setter;
+            } catch (Throwable e) {
+                log.debug("Falling back to a method handle for {}: {}", method, e.toString());
+            }
+        }
+        method.setAccessible(true);
+        return handleSetter(LOOKUP.unreflect(method));
+    }
+
+    private static BiConsumer<Object, Object> handleSetter(MethodHandle setter) {
+        MethodHandle handle = setter.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        return (row, value) -> {
+            try {
+                handle.invokeExact(row, value);
+            } catch (Throwable e) {
+                throw rethrow(e);
+            }
+        };
+    }
+
+    /**
+     * @return the columns of the record components matched by name, or {@code null} unless every component has one
+     */
+    private static int[] componentColumns(Class<?> type, Layout layout, Configuration configuration)
+            throws ReflectiveOperationException {
+        Object[] components = (Object[]) GET_RECORD_COMPONENTS.invoke(type);
+        int[] columns = new int[components.length];
+        for (int i = 0; i < components.length; i++) {
+            String name = (String) components[i].getClass().getMethod("getName").invoke(components[i]);
+            columns[i] = layout.columnOf(name, configuration.isMapUnderscoreToCamelCase());
+            if (columns[i] == 0) {
+                return null;
+            }
+        }
+        return columns;
+    }
+
+    private static int[] positionalColumns(int parameterCount, Layout layout) {
+        if (parameterCount > layout.columns.length) {
+            return null;
+        }
+        int[] columns = new int[parameterCount];
+        for (int i = 0; i < parameterCount; i++) {
+            columns[i] = i + 1;
+        }
+        return columns;
+    }
+
+    private static Constructor<?> canonicalConstructor(Class<?> type) throws ReflectiveOperationException {
+        Object[] components = (Object[]) GET_RECORD_COMPONENTS.invoke(type);
+        Class<?>[] types = new Class<?>[components.length];
+        for (int i = 0; i < components.length; i++) {
+            types[i] = (Class<?>) components[i].getClass().getMethod("getType").invoke(components[i]);
+        }
+        return type.getDeclaredConstructor(types);
+    }
+
+    /**
+     * @return the constructor MyBatis binds columns to in order: the one marked {@link AutomapConstructor},
+     * else the only one
+     */
+    private static Constructor<?> boundConstructor(Class<?> type) {
+        Constructor<?>[] constructors = type.getDeclaredConstructors();
+        for (Constructor<?> constructor : constructors) {
+            if (constructor.isAnnotationPresent(AutomapConstructor.class)) {
+                return constructor;
+            }
+        }
+        return constructors.length == 1 ? constructors[0] : null;
+    }
+
+    private static boolean hasDefaultConstructor(Class<?> type) {
+        try {
+            type.getDeclaredConstructor();
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static boolean isRecord(Class<?> type) {
+        try {
+            return IS_RECORD != null && (Boolean) IS_RECORD.invoke(type);
+        } catch (ReflectiveOperationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Spun classes live in this class loader, so they can only call classes it sees.
+     */
+    private static boolean visible(Class<?> type) {
+        if (type.isPrimitive()) {
+            return true;
+        }
+        try {
+            return Class.forName(type.getName(), false, RowMapper.class.getClassLoader()) == type;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    private static Method classMethod(String name) {
+        try {
+            return Class.class.getMethod(name);
+        } catch (NoSuchMethodException e) {
+            // before Java 16
+            return null;
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        return new MybatisMiniException("Failed to map row", e);
+    }
+
+    private static final class PropertyColumn {
+        final int column;
+        final TypeHandler<?> typeHandler;
+        final BiConsumer<Object, Object> setter;
+        final boolean primitive;
+
+        PropertyColumn(int column, TypeHandler<?> typeHandler, BiConsumer<Object, Object> setter, boolean primitive) {
+            this.column = column;
+            this.typeHandler = typeHandler;
+            this.setter = setter;
+            this.primitive = primitive;
+        }
+    }
+
+    /**
+     * A result type with the labels and JDBC types of its columns; one {@link RowMapper} is compiled per layout.
+     */
+    static final class Layout {
+        final Class<?> type;
+        final String[] columns;
+        final int[] jdbcTypes;
+        private final int hash;
+
+        private Layout(Class<?> type, String[] columns, int[] jdbcTypes) {
+            this.type = type;
+            this.columns = columns;
+            this.jdbcTypes = jdbcTypes;
+            this.hash = 31 * (31 * type.hashCode() + Arrays.hashCode(columns)) + Arrays.hashCode(jdbcTypes);
+        }
+
+        static Layout of(Class<?> type, ResultSetMetaData metaData, boolean useColumnLabel) throws SQLException {
+            int count = metaData.getColumnCount();
+            String[] columns = new String[count];
+            int[] jdbcTypes = new int[count];
+            for (int i = 1; i <= count; i++) {
+                columns[i - 1] = useColumnLabel ? metaData.getColumnLabel(i) : metaData.getColumnName(i);
+                jdbcTypes[i - 1] = metaData.getColumnType(i);
+            }
+            return new Layout(type, columns, jdbcTypes);
+        }
+
+        /**
+         * @return the 1-based column of the property, {@code 0} if there is none
+         */
+        int columnOf(String property, boolean mapUnderscoreToCamelCase) {
+            for (int i = 0; i < columns.length; i++) {
+                String column = mapUnderscoreToCamelCase ? columns[i].replace("_", "") : columns[i];
+                if (column.toUpperCase(Locale.ENGLISH).equals(property.toUpperCase(Locale.ENGLISH))) {
+                    return i + 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Layout)) {
+                return false;
+            }
+            Layout layout = (Layout) other;
+            return type == layout.type && Arrays.equals(columns, layout.columns)
+                    && Arrays.equals(jdbcTypes, layout.jdbcTypes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package cn.jiayeli.mybatisMini.core;
+
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.executor.resultset.DefaultResultSetHandler;
+import org.apache.ibatis.executor.resultset.ResultSetHandler;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.mapping.ResultMap;
+import org.apache.ibatis.mapping.StatementType;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.reflection.factory.DefaultObjectFactory;
+import org.apache.ibatis.session.AutoMappingBehavior;
+import org.apache.ibatis.session.AutoMappingUnknownColumnBehavior;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.RowBounds;
+
+import java.lang.reflect.Field;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps the rows of plain {@code resultType} selects with a {@link RowMapper} compiled once per result type and
+ * column layout, instead of MyBatis's per-row reflection. Enabled with
+ * {@link MybatisMiniClient.Builder#fastRowMapping(boolean)}.
+ * <p>
+ * Only statements whose result MyBatis would auto-map column by column take this path: a single result map
+ * without result mappings, discriminator or nested results, auto-mapping on and unknown columns ignored, the
+ * default object factory, and no {@code ResultHandler} or {@code RowBounds} on the call. Everything else, and
+ * any column layout a row mapper cannot be compiled for, is left to MyBatis.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+@Intercepts(@Signature(type = ResultSetHandler.class, method = "handleResultSets", args = {Statement.class}))
+public class RowMappingInterceptor implements Interceptor {
+
+    private static final Field MAPPED_STATEMENT = handlerField("mappedStatement");
+    private static final Field ROW_BOUNDS = handlerField("rowBounds");
+    private static final Field RESULT_HANDLER = handlerField("resultHandler");
+
+    private final Map<String, Boolean> supportedStatements = new ConcurrentHashMap<>();
+    private final Map<RowMapper.Layout, Optional<RowMapper>> rowMappers = new ConcurrentHashMap<>();
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        Object target = invocation.getTarget();
+        if (!(target instanceof DefaultResultSetHandler) || MAPPED_STATEMENT == null || ROW_BOUNDS == null
+                || RESULT_HANDLER == null || RESULT_HANDLER.get(target) != null
+                || !isDefault((RowBounds) ROW_BOUNDS.get(target))) {
+            return invocation.proceed();
+        }
+        MappedStatement mappedStatement = (MappedStatement) MAPPED_STATEMENT.get(target);
+        if (!supportedStatements.computeIfAbsent(mappedStatement.getId(), id -> supports(mappedStatement))) {
+            return invocation.proceed();
+        }
+
+        Statement statement = (Statement) invocation.getArgs()[0];
+        ResultSet resultSet = firstResultSet(statement);
+        if (resultSet == null) {
+            return new ArrayList<>();
+        }
+        Configuration configuration = mappedStatement.getConfiguration();
+        RowMapper.Layout layout = RowMapper.Layout.of(mappedStatement.getResultMaps().get(0).getType(),
+                resultSet.getMetaData(), configuration.isUseColumnLabel());
+        Optional<RowMapper> rowMapper = rowMappers.get(layout);
+        if (rowMapper == null) {
+            rowMapper = Optional.ofNullable(RowMapper.compile(layout, configuration));
+            rowMappers.putIfAbsent(layout, rowMapper);
+        }
+        if (!rowMapper.isPresent()) {
+            // no row has been read, MyBatis takes the result set from the statement again
+            return invocation.proceed();
+        }
+
+        RowMapper mapper = rowMapper.get();
+        List<Object> rows = new ArrayList<>();
+        try {
+            while (resultSet.next()) {
+                rows.add(mapper.map(resultSet));
+            }
+        } finally {
+            try {
+                resultSet.close();
+            } catch (SQLException e) {
+                log.debug("Failed to close result set of {}", mappedStatement.getId(), e);
+            }
+        }
+        return rows;
+    }
+
+    private static boolean supports(MappedStatement mappedStatement) {
+        Configuration configuration = mappedStatement.getConfiguration();
+        if (mappedStatement.getStatementType() == StatementType.CALLABLE || mappedStatement.getResultSets() != null
+                || mappedStatement.getResultMaps().size() != 1
+                || configuration.getAutoMappingUnknownColumnBehavior() != AutoMappingUnknownColumnBehavior.NONE
+                || configuration.getObjectFactory().getClass() != DefaultObjectFactory.class) {
+            return false;
+        }
+        ResultMap resultMap = mappedStatement.getResultMaps().get(0);
+        boolean autoMapping = resultMap.getAutoMapping() != null
+                ? resultMap.getAutoMapping()
+                : configuration.getAutoMappingBehavior() != AutoMappingBehavior.NONE;
+        boolean supported = autoMapping && resultMap.getResultMappings().isEmpty() && resultMap.getDiscriminator() == null
+                && !resultMap.hasNestedResultMaps() && !resultMap.hasNestedQueries()
+                && RowMapper.supports(resultMap.getType(), configuration);
+        log.debug("Rows of {} are mapped by {}", mappedStatement.getId(), supported ? "a compiled row mapper" : "MyBatis");
+        return supported;
+    }
+
+    private static boolean isDefault(RowBounds rowBounds) {
+        return rowBounds.getOffset() == RowBounds.NO_ROW_OFFSET && rowBounds.getLimit() == RowBounds.NO_ROW_LIMIT;
+    }
+
+    /**
+     * Skips update counts before the first result set the way MyBatis does.
+     */
+    private static ResultSet firstResultSet(Statement statement) throws SQLException {
+        ResultSet resultSet = statement.getResultSet();
+        while (resultSet == null) {
+            if (statement.getMoreResults()) {
+                resultSet = statement.getResultSet();
+            } else if (statement.getUpdateCount() == -1) {
+                return null;
+            }
+        }
+        return resultSet;
+    }
+
+    private static Field handlerField(String name) {
+        try {
+            Field field = DefaultResultSetHandler.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        } catch (NoSuchFieldException | RuntimeException e) {
+            log.warn("Fast row mapping is unavailable for this MyBatis version, rows are mapped by MyBatis: {}", e.toString());
+            return null;
+        }
+    }
+}
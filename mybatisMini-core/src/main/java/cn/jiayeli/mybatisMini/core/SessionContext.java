@@ -0,0 +1,79 @@
+package cn.jiayeli.mybatisMini.core;
+
+import org.apache.ibatis.session.SqlSession;
+
+/**
+ * Holds the SqlSession bound to the current thread by {@link MybatisMiniClient#inSession(MiniSessionWork)}
+ * or {@link MybatisMiniClient#inTransaction(MiniSessionWork)}.
+ * <p>
+ * Every binding belongs to one client, so a unit of work of one client is never joined by calls made
+ * through another client on the same thread.
+ *
+ * @author kuro@jiayeli.com
+ */
+final class SessionContext {
+
+    private static final ThreadLocal<SessionContext> CURRENT = new ThreadLocal<>();
+
+    final SqlSession sqlSession;
+    final boolean transactional;
+    /**
+     * Set when a nested transaction block joined to this one failed, so the outermost block rolls back instead of
+     * committing the writes it left half done, even if its caller caught the failure.
+     */
+    boolean rollbackOnly;
+    private final MybatisMiniClient owner;
+    private final SessionContext previous;
+
+    private SessionContext(MybatisMiniClient owner, SqlSession sqlSession, boolean transactional, SessionContext previous) {
+        this.owner = owner;
+        this.sqlSession = sqlSession;
+        this.transactional = transactional;
+        this.previous = previous;
+    }
+
+    /**
+     * @param owner the client asking
+     * @return the client's session context bound to this thread, or {@code null} outside its units of work
+     */
+    static SessionContext current(MybatisMiniClient owner) {
+        SessionContext context = CURRENT.get();
+        while (context != null && context.owner != owner) {
+            context = context.previous;
+        }
+        return context;
+    }
+
+    /**
+     * @param owner the client asking
+     * @return the client's session bound to this thread, or {@code null} outside its units of work
+     */
+    static SqlSession currentSession(MybatisMiniClient owner) {
+        SessionContext context = current(owner);
+        return context == null ? null : context.sqlSession;
+    }
+
+    /**
+     * @param owner         the client binding the session
+     * @param sqlSession    the session its calls on this thread run on until {@link #unbind()}
+     * @param transactional whether the session is committed or rolled back as one transaction
+     * @return the new binding
+     */
+    static SessionContext bind(MybatisMiniClient owner, SqlSession sqlSession, boolean transactional) {
+        SessionContext context = new SessionContext(owner, sqlSession, transactional, CURRENT.get());
+        CURRENT.set(context);
+        return context;
+    }
+
+    /**
+     * Removes the innermost binding, restoring the binding of another client it was nested in.
+     */
+    static void unbind() {
+        SessionContext context = CURRENT.get();
+        if (context == null || context.previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context.previous);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package cn.jiayeli.mybatisMini.core;
+
+import lombok.Value;
+
+/**
+ * Counters of a client's reusable sessions since they were enabled.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Value
+public class SessionReuseStats {
+
+    /**
+     * Calls that ran on a reusable session.
+     */
+    long calls;
+    /**
+     * Calls that found an idle session already open, and its statements prepared.
+     */
+    long reusedCalls;
+    /**
+     * Calls that ran on a session of their own because {@code maxSessions} sessions were open and busy.
+     */
+    long fallbackCalls;
+    long sessionsOpened;
+    /**
+     * Sessions closed for being idle, too old or failing a call.
+     */
+    long sessionsClosed;
+    int openSessions;
+    int maxSessions;
+
+    public double getReuseRate() {
+        return calls == 0 ? 0D : (double) reusedCalls / calls;
+    }
+}
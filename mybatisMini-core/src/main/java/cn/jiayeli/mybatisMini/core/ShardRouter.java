@@ -0,0 +1,28 @@
+package cn.jiayeli.mybatisMini.core;
+
+import java.util.Objects;
+
+/**
+ * Picks the shard holding a shard key, so single-key lookups go to exactly one shard.
+ * The routing must match how the data was split across the shards.
+ *
+ * @author kuro@jiayeli.com
+ * @see MybatisMini#useShards(java.util.List, ShardRouter)
+ */
+@FunctionalInterface
+public interface ShardRouter {
+
+    /**
+     * @param shardKey   the key of the row, e.g. the {@code config_key} of a lookup
+     * @param shardCount number of shards
+     * @return the index of the shard holding the key, from 0 to {@code shardCount - 1}
+     */
+    int shardFor(Object shardKey, int shardCount);
+
+    /**
+     * @return a router taking the key's {@code hashCode()} modulo the shard count
+     */
+    static ShardRouter hashing() {
+        return (shardKey, shardCount) -> Math.floorMod(Objects.hashCode(shardKey), shardCount);
+    }
+}
@@ -0,0 +1,176 @@
+package cn.jiayeli.mybatisMini.core;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.defaults.DefaultSqlSession;
+import org.apache.ibatis.transaction.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * The shard environments of a MybatisMini client, and the fan-out of one call to all of them.
+ * <p>
+ * Like replicas, shard sessions share the client's {@link Configuration}; only the environment differs.
+ * A fan-out runs one shard on the calling thread and the others on the shard executor, so its latency is
+ * that of the slowest shard rather than the sum of all of them. A saturated executor makes the caller run
+ * the rejected shards itself.
+ *
+ * @author kuro@jiayeli.com
+ */
+@Slf4j
+final class ShardSet {
+
+    private final Configuration configuration;
+    private final Environment[] shards;
+    private final ShardRouter router;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+
+    ShardSet(Configuration configuration, List<Environment> shards, ShardRouter router, Executor executor,
+             boolean ownsExecutor) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("At least one shard environment is required");
+        }
+        this.configuration = configuration;
+        this.shards = shards.toArray(new Environment[0]);
+        this.router = router;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    /**
+     * Shuts the shard executor down if it was created for this shard set. Running fan-outs still complete.
+     */
+    void close() {
+        if (ownsExecutor) {
+            AsyncExecutors.shutdown(executor);
+        }
+    }
+
+    /**
+     * @param shardKey the key to route
+     * @return the index of the shard holding the key
+     * @throws MybatisMiniException if the router returns an index out of range
+     */
+    int route(Object shardKey) {
+        int shard = router.shardFor(shardKey, shards.length);
+        if (shard < 0 || shard >= shards.length) {
+            throw new MybatisMiniException("Shard router returned shard " + shard + " for key " + shardKey
+                    + ", expected 0 to " + (shards.length - 1));
+        }
+        return shard;
+    }
+
+    SqlSession openSession(int shard) {
+        Environment environment = shards[shard];
+        Transaction transaction = environment.getTransactionFactory()
+                .newTransaction(environment.getDataSource(), null, false);
+        return new DefaultSqlSession(configuration, configuration.newExecutor(transaction), false);
+    }
+
+    /**
+     * Runs the task on every shard in parallel. Every shard is waited for even when one fails, so no query is
+     * left running on a session nobody will close; the results of the other shards are then passed to
+     * {@code discard}.
+     *
+     * @param task    the work to run on one shard
+     * @param discard releases a result when another shard failed, may be {@code null}
+     * @param <R>     the result type
+     * @return the results of all shards, in the order they arrived
+     * @throws MybatisMiniException naming the first shard that failed
+     */
+    <R> List<R> fanOut(ShardTask<R> task, Consumer<R> discard) {
+        CompletionService<R> completionService = new ExecutorCompletionService<>(executor);
+        List<R> completed = new ArrayList<>(shards.length);
+        MybatisMiniException failure = null;
+        int pending = 0;
+
+        for (int shard = 1; shard < shards.length; shard++) {
+            int target = shard;
+            try {
+                completionService.submit(() -> run(task, target));
+                pending++;
+            } catch (RejectedExecutionException e) {
+                log.debug("Shard executor saturated, running shard {} on the calling thread", shards[target].getId());
+                failure = collect(() -> run(task, target), completed, failure);
+            }
+        }
+        failure = collect(() -> run(task, 0), completed, failure);
+        for (; pending > 0; pending--) {
+            failure = collect(() -> takeUninterruptibly(completionService), completed, failure);
+        }
+
+        if (failure != null) {
+            if (discard != null) {
+                completed.forEach(discard);
+            }
+            throw failure;
+        }
+        return completed;
+    }
+
+    private static <R> MybatisMiniException collect(ShardCall<R> call, List<R> completed, MybatisMiniException failure) {
+        try {
+            completed.add(call.call());
+            return failure;
+        } catch (MybatisMiniException e) {
+            return failure != null ? failure : e;
+        }
+    }
+
+    private <R> R run(ShardTask<R> task, int shard) {
+        try {
+            return task.run(shard);
+        } catch (Exception e) {
+            throw new MybatisMiniException("Query failed on shard " + shards[shard].getId(), e);
+        }
+    }
+
+    private static <R> R takeUninterruptibly(CompletionService<R> completionService) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return completionService.take().get();
+                } catch (InterruptedException e) {
+                    // keep waiting: the shard's session is only released once its task is done
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    throw cause instanceof MybatisMiniException
+                            ? (MybatisMiniException) cause
+                            : new MybatisMiniException("Shard query failed", cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Work run against one shard.
+     *
+     * @param <R> the result type
+     */
+    @FunctionalInterface
+    interface ShardTask<R> {
+        R run(int shard) throws Exception;
+    }
+
+    @FunctionalInterface
+    private interface ShardCall<R> {
+        R call();
+    }
+}
@@ -0,0 +1,103 @@
+package cn.jiayeli.mybatisMini.core;
+
+import org.apache.ibatis.executor.Executor;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.mapping.MappedStatement;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.apache.ibatis.session.ResultHandler;
+import org.apache.ibatis.session.RowBounds;
+
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Overrides the JDBC query timeout of statements per mapper namespace or mapper method at runtime.
+ * <p>
+ * MyBatis only takes timeouts from the {@code timeout} attribute of a mapped statement or the configuration's
+ * {@code defaultStatementTimeout}, and only when it prepares a statement. This interceptor notes the statement
+ * an executor call runs and sets the timeout configured for it when the statement is parameterized, which
+ * MyBatis does for every execution, also of the statements a {@code REUSE} executor prepared earlier. Once a
+ * timeout was configured at runtime, statements without an override get MyBatis's own timeout the same way, so
+ * that a cleared override or a changed default also reaches reused statements.
+ *
+ * @author kuro@jiayeli.com
+ * @see MybatisMini#setStatementTimeout(Class, String, long, java.util.concurrent.TimeUnit)
+ */
+@Intercepts({
+        @Signature(type = Executor.class, method = "query", args = {MappedStatement.class, Object.class, RowBounds.class, ResultHandler.class}),
+        @Signature(type = Executor.class, method = "queryCursor", args = {MappedStatement.class, Object.class, RowBounds.class}),
+        @Signature(type = Executor.class, method = "update", args = {MappedStatement.class, Object.class}),
+        @Signature(type = StatementHandler.class, method = "parameterize", args = {Statement.class})
+})
+public class StatementTimeoutInterceptor implements Interceptor {
+
+    private static final ThreadLocal<Integer> TIMEOUT = new ThreadLocal<>();
+
+    private final Map<String, Integer> timeouts = new ConcurrentHashMap<>();
+    private volatile boolean active;
+
+    @Override
+    public Object intercept(Invocation invocation) throws Throwable {
+        if (!active) {
+            return invocation.proceed();
+        }
+        if (invocation.getTarget() instanceof Executor) {
+            Integer previous = TIMEOUT.get();
+            TIMEOUT.set(timeoutOf((MappedStatement) invocation.getArgs()[0]));
+            try {
+                return invocation.proceed();
+            } finally {
+                if (previous == null) {
+                    TIMEOUT.remove();
+                } else {
+                    TIMEOUT.set(previous);
+                }
+            }
+        }
+        Integer timeout = TIMEOUT.get();
+        if (timeout != null) {
+            ((Statement) invocation.getArgs()[0]).setQueryTimeout(timeout);
+        }
+        return invocation.proceed();
+    }
+
+    /**
+     * @param scope   a mapper namespace or a statement id
+     * @param seconds the timeout, 0 for none; {@code null} removes the override
+     */
+    void setTimeout(String scope, Integer seconds) {
+        if (seconds == null) {
+            timeouts.remove(scope);
+        } else {
+            timeouts.put(scope, seconds);
+        }
+        active = true;
+    }
+
+    /**
+     * Applies the default statement timeout to statements prepared before it changed, like reused statements.
+     */
+    void defaultTimeoutChanged() {
+        active = true;
+    }
+
+    private Integer timeoutOf(MappedStatement mappedStatement) {
+        String statementId = mappedStatement.getId();
+        Integer timeout = timeouts.get(statementId);
+        int dot = statementId.lastIndexOf('.');
+        if (timeout == null && dot > 0) {
+            timeout = timeouts.get(statementId.substring(0, dot));
+        }
+        if (timeout != null) {
+            return timeout;
+        }
+        // what MyBatis sets when it prepares the statement
+        Integer own = mappedStatement.getTimeout() != null ? mappedStatement.getTimeout()
+                : mappedStatement.getConfiguration().getDefaultStatementTimeout();
+        return own == null ? 0 : own;
+    }
+}
@@ -0,0 +1,97 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.core.MybatisMiniClient;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AsyncQueryTestCase {
+
+    @Test
+    public void fanOutTestCase() {
+        CompletableFuture<ConfigModel> username = MybatisMini.queryObjectAsync(
+                (ConfigMapper mapper) -> mapper.queryConfigByKey("username"));
+        CompletableFuture<ConfigModel> password = MybatisMini.queryObjectAsync(
+                (ConfigMapper mapper) -> mapper.queryConfigByKey("password"));
+        CompletableFuture<List<ConfigModel>> all = MybatisMini.queryListAsync(ConfigMapper::queryList);
+
+        CompletableFuture.allOf(username, password, all).join();
+
+        assert "root".equals(username.join().getConfig_value());
+        assert "pass".equals(password.join().getConfig_value());
+        assert all.join().size() >= 3;
+    }
+
+    @Test
+    public void concurrencyBoundedByPoolSizeTestCase() {
+        int poolSize = MybatisMini.getPoolStats().getMaximumPoolSize();
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxInFlight = new AtomicInteger();
+
+        List<CompletableFuture<ConfigModel>> futures = new ArrayList<>();
+        for (int i = 0; i < poolSize * 4; i++) {
+            futures.add(MybatisMini.queryObjectAsync((ConfigMapper mapper) -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                    return mapper.queryConfigByKey("username");
+                } finally {
+                    inFlight.decrementAndGet();
+                }
+            }));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
+
+        System.out.println("max in flight: " + maxInFlight.get() + ", pool size: " + poolSize);
+        assert maxInFlight.get() <= poolSize;
+        assert MybatisMini.getPoolStats().getThreadsAwaitingConnection() == 0;
+    }
+
+    @Test
+    public void failureCompletesExceptionallyTestCase() {
+        CompletableFuture<ConfigModel> future = MybatisMini.queryObjectAsync((ConfigMapper mapper) -> {
+            throw new IllegalStateException("boom");
+        });
+        try {
+            future.join();
+            assert false : "expected CompletionException";
+        } catch (CompletionException e) {
+            assert e.getCause() instanceof MybatisMiniException;
+        }
+    }
+
+    @Test
+    public void closeShutsDownVirtualThreadExecutorTestCase() {
+        // platform threads on a JDK without virtual threads, both are shut down by close
+        System.setProperty("mybatisMini.async.virtualThreads", "true");
+        MybatisMiniClient client;
+        try {
+            client = MybatisMini.builder().build();
+            assert "root".equals(client.<ConfigMapper, ConfigModel>queryObjectAsync(
+                    mapper -> mapper.queryConfigByKey("username")).join().getConfig_value());
+        } finally {
+            System.clearProperty("mybatisMini.async.virtualThreads");
+        }
+        client.close();
+
+        CompletableFuture<ConfigModel> future = client.queryObjectAsync(
+                (ConfigMapper mapper) -> mapper.queryConfigByKey("username"));
+        try {
+            future.join();
+            assert false : "expected CompletionException";
+        } catch (CompletionException e) {
+            System.out.println(e.getCause().getMessage());
+            assert e.getCause() instanceof MybatisMiniException;
+            assert e.getCause().getCause() instanceof RejectedExecutionException;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MapperMethodMetrics;
+import cn.jiayeli.mybatisMini.core.MiniBatchLoader;
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class BatchLoaderTestCase {
+
+    private static final String QUERY_BY_KEYS = "cn.jiayeli.mybatisMini.test.dao.ConfigMapper.queryConfigByKeys";
+
+    private ExecutorService callers;
+
+    @Before
+    public void setUp() {
+        callers = Executors.newFixedThreadPool(8);
+    }
+
+    @After
+    public void cleanUp() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void loadAllInOneBatchTestCase() {
+        MiniBatchLoader<String, ConfigModel> loader = MybatisMini.batchLoader(ConfigMapper::queryConfigByKeys, ConfigModel::getConfig_key);
+        long batchCalls = batchCalls();
+
+        Map<String, ConfigModel> configs = loader.loadAll(Arrays.asList("username", "password", "timeout", "missing"));
+
+        System.out.println(configs);
+        assert "root".equals(configs.get("username").getConfig_value());
+        assert "pass".equals(configs.get("password").getConfig_value());
+        assert "30".equals(configs.get("timeout").getConfig_value());
+        assert configs.containsKey("missing") && configs.get("missing") == null;
+        assert batchCalls() == batchCalls + 1;
+    }
+
+    @Test
+    public void asyncLookupsShareBatchesUpToTheCapTestCase() {
+        MiniBatchLoader<String, ConfigModel> loader = MybatisMini.batchLoader(ConfigMapper::queryConfigByKeys,
+                ConfigModel::getConfig_key, 2, 1, TimeUnit.SECONDS);
+        long batchCalls = batchCalls();
+
+        CompletableFuture<ConfigModel> username = loader.loadAsync("username");
+        // a key already waiting shares its lookup
+        assert loader.loadAsync("username") == username;
+        // the cap of two distinct keys dispatches the batch, the next key waits for its window
+        CompletableFuture<ConfigModel> password = loader.loadAsync("password");
+        CompletableFuture<ConfigModel> timeout = loader.loadAsync("timeout");
+        assert "root".equals(username.join().getConfig_value());
+        assert "pass".equals(password.join().getConfig_value());
+        assert !timeout.isDone();
+        loader.dispatch();
+
+        assert "30".equals(timeout.join().getConfig_value());
+        assert batchCalls() == batchCalls + 2;
+    }
+
+    @Test
+    public void concurrentSynchronousLookupsTestCase() throws Exception {
+        MiniBatchLoader<String, ConfigModel> loader = MybatisMini.batchLoader(ConfigMapper::queryConfigByKeys,
+                ConfigModel::getConfig_key, 100, 200, TimeUnit.MILLISECONDS);
+        long batchCalls = batchCalls();
+
+        CountDownLatch gate = new CountDownLatch(1);
+        List<Future<ConfigModel>> results = new ArrayList<>();
+        String[] keys = {"username", "password", "timeout", "missing"};
+        for (int i = 0; i < 8; i++) {
+            String key = keys[i % keys.length];
+            results.add(callers.submit(() -> {
+                gate.await();
+                return loader.load(key);
+            }));
+        }
+        gate.countDown();
+        for (int i = 0; i < results.size(); i++) {
+            ConfigModel config = results.get(i).get(10, TimeUnit.SECONDS);
+            assert i % keys.length == 3 ? config == null : keys[i % keys.length].equals(config.getConfig_key());
+        }
+        assert batchCalls() == batchCalls + 1;
+    }
+
+    @Test
+    public void failedBatchFailsEveryLookupTestCase() throws Exception {
+        MiniBatchLoader<String, ConfigModel> loader = MybatisMini.batchLoader(BatchLoaderTestCase::failingBatch,
+                ConfigModel::getConfig_key, 100, 0, TimeUnit.MILLISECONDS);
+        CompletableFuture<ConfigModel> username = loader.loadAsync("username");
+        CompletableFuture<ConfigModel> password = loader.loadAsync("password");
+        for (CompletableFuture<ConfigModel> lookup : Arrays.asList(username, password)) {
+            try {
+                lookup.get(10, TimeUnit.SECONDS);
+                assert false : "expected MybatisMiniException";
+            } catch (ExecutionException e) {
+                assert e.getCause() instanceof MybatisMiniException;
+            }
+        }
+        try {
+            loader.load("timeout");
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    @Test
+    public void errorInBatchReleasesItsKeysTestCase() throws Exception {
+        AtomicBoolean broken = new AtomicBoolean(true);
+        MiniBatchLoader<String, ConfigModel> loader = MybatisMini.batchLoader(ConfigMapper::queryConfigByKeys, config -> {
+            if (broken.getAndSet(false)) {
+                throw new NoClassDefFoundError("key extractor");
+            }
+            return config.getConfig_key();
+        }, 100, 0, TimeUnit.MILLISECONDS);
+        try {
+            loader.loadAsync("username").get(10, TimeUnit.SECONDS);
+            assert false : "expected MybatisMiniException";
+        } catch (ExecutionException e) {
+            assert e.getCause() instanceof MybatisMiniException;
+            assert e.getCause().getCause() instanceof NoClassDefFoundError;
+        }
+        // the key is no longer in flight, so the next lookup runs a batch of its own instead of hanging
+        assert "root".equals(loader.loadAsync("username").get(10, TimeUnit.SECONDS).getConfig_value());
+    }
+
+    private static long batchCalls() {
+        MapperMethodMetrics metrics = MybatisMini.getMapperMethodMetrics().get(QUERY_BY_KEYS);
+        return metrics == null ? 0 : metrics.getCalls();
+    }
+
+    private static List<ConfigModel> failingBatch(ConfigMapper mapper, List<String> keys) {
+        throw new IllegalStateException("batch of " + keys + " failed");
+    }
+}
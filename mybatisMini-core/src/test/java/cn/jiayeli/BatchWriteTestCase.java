@@ -0,0 +1,94 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class BatchWriteTestCase {
+
+    private static final String BATCH_TYPE = "batch";
+
+    @After
+    public void cleanUp() {
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(BATCH_TYPE), ConfigMapper::deleteConfigByType);
+    }
+
+    @Test
+    public void chunkedInsertTestCase() {
+        List<ConfigModel> configs = configs("chunked_", 25);
+
+        int[] updateCounts = MybatisMini.executeBatch(ConfigMapper.class, configs, ConfigMapper::insertConfig, 10);
+
+        assert updateCounts.length == 25;
+        for (int updateCount : updateCounts) {
+            assert updateCount == 1;
+        }
+        long inserted = MybatisMini.stream(ConfigMapper::streamAll)
+                .filter(config -> config.getConfig_key().startsWith("chunked_"))
+                .count();
+        assert inserted == 25;
+    }
+
+    @Test
+    public void failureKeepsCommittedChunksTestCase() {
+        List<ConfigModel> configs = configs("failing_", 15);
+        // duplicate key in the second chunk violates the unique constraint
+        configs.get(12).setConfig_key("failing_0");
+
+        try {
+            MybatisMini.executeBatch(ConfigMapper.class, configs, ConfigMapper::insertConfig, 10);
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage());
+        }
+
+        long inserted = MybatisMini.stream(ConfigMapper::streamAll)
+                .filter(config -> config.getConfig_key().startsWith("failing_"))
+                .count();
+        assert inserted == 10;
+        assert MybatisMini.getPoolStats().getActiveConnections() == 0;
+    }
+
+    @Test
+    public void refusedInsideTransactionTestCase() {
+        try {
+            MybatisMini.inTransaction(sqlSession -> {
+                sqlSession.getMapper(ConfigMapper.class).insertConfig(configs("outer_", 1).get(0));
+                return MybatisMini.executeBatch(ConfigMapper.class, configs("inner_", 3), ConfigMapper::insertConfig);
+            });
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage());
+            assert e.getMessage().contains("inTransaction");
+        }
+
+        // neither the transaction's write nor the batch was committed
+        long inserted = MybatisMini.stream(ConfigMapper::streamAll)
+                .filter(config -> BATCH_TYPE.equals(config.getConfig_type()))
+                .count();
+        assert inserted == 0;
+        // a plain session still runs the batch on a session of its own
+        int[] updateCounts = MybatisMini.inSession(sqlSession ->
+                MybatisMini.executeBatch(ConfigMapper.class, configs("session_", 3), ConfigMapper::insertConfig));
+        assert updateCounts.length == 3;
+    }
+
+    private static List<ConfigModel> configs(String keyPrefix, int count) {
+        List<ConfigModel> configs = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ConfigModel config = new ConfigModel();
+            config.setConfig_type(BATCH_TYPE);
+            config.setConfig_key(keyPrefix + i);
+            config.setConfig_value("value_" + i);
+            configs.add(config);
+        }
+        return configs;
+    }
+}
@@ -0,0 +1,294 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.BulkheadStats;
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.core.MybatisMini.QueryRejectedException;
+import cn.jiayeli.mybatisMini.core.MybatisMiniClient;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.dao.H2Functions;
+import cn.jiayeli.mybatisMini.test.dao.HealthMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class BulkheadTestCase {
+
+    private MybatisMiniClient client;
+    private ExecutorService callers;
+
+    @Before
+    public void setUp() {
+        client = MybatisMini.builder().build();
+        client.getConfiguration().addMapper(HealthMapper.class);
+        client.inSession(sqlSession -> {
+            try (Statement statement = sqlSession.getConnection().createStatement()) {
+                H2Functions.register(statement);
+            }
+            return null;
+        });
+        callers = Executors.newFixedThreadPool(12);
+    }
+
+    @After
+    public void cleanUp() {
+        callers.shutdownNow();
+        client.close();
+    }
+
+    @Test
+    public void rejectsWhenFullTestCase() throws Exception {
+        client.enableBulkhead(ConfigMapper.class, 2, 0, TimeUnit.MILLISECONDS);
+        List<Future<ConfigModel>> slow = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            slow.add(callers.submit(() -> querySlowly(500)));
+        }
+        await(() -> client.getBulkheadStats(ConfigMapper.class).getInFlight() == 2);
+
+        long started = System.nanoTime();
+        try {
+            client.queryObject((ConfigMapper mapper) -> mapper.queryConfigByKey("username"));
+            assert false : "expected QueryRejectedException";
+        } catch (QueryRejectedException e) {
+            System.out.println(e.getMessage());
+            assert e instanceof MybatisMiniException;
+        }
+        assert System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(400);
+        // other mappers are not limited
+        assert client.queryObject(HealthMapper::ping) == 1;
+
+        for (Future<ConfigModel> result : slow) {
+            assert "root".equals(result.get(10, TimeUnit.SECONDS).getConfig_value());
+        }
+        BulkheadStats stats = client.getBulkheadStats(ConfigMapper.class);
+        System.out.println(stats);
+        assert stats.getCalls() == 2 && stats.getRejectedCalls() == 1 && stats.getInFlight() == 0;
+    }
+
+    @Test
+    public void boundedWaitTestCase() throws Exception {
+        client.enableBulkhead(ConfigMapper.class, 1, 5, TimeUnit.SECONDS);
+        Future<ConfigModel> slow = callers.submit(() -> querySlowly(200));
+        await(() -> client.getBulkheadStats(ConfigMapper.class).getInFlight() == 1);
+        // waits for the slow call to finish instead of being rejected
+        assert "root".equals(client.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("username")).getConfig_value());
+        slow.get(10, TimeUnit.SECONDS);
+        BulkheadStats stats = client.getBulkheadStats(ConfigMapper.class);
+        assert stats.getQueuedCalls() == 1 && stats.getRejectedCalls() == 0;
+
+        client.enableBulkhead(ConfigMapper.class, 1, 50, TimeUnit.MILLISECONDS);
+        slow = callers.submit(() -> querySlowly(1000));
+        await(() -> client.getBulkheadStats(ConfigMapper.class).getInFlight() == 1);
+        long started = System.nanoTime();
+        try {
+            querySlowly(0);
+            assert false : "expected QueryRejectedException";
+        } catch (QueryRejectedException e) {
+            long waitedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            System.out.println("rejected after " + waitedMillis + " ms");
+            assert waitedMillis >= 40 && waitedMillis < 900;
+        }
+        slow.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void coalescedCallsAreRejectedTooTestCase() throws Exception {
+        client.enableQueryCoalescing(ConfigMapper.class);
+        client.enableBulkhead(ConfigMapper.class, 1, 300, TimeUnit.MILLISECONDS);
+        Future<ConfigModel> slow = callers.submit(() -> querySlowly(1500));
+        await(() -> client.getBulkheadStats(ConfigMapper.class).getInFlight() == 1);
+
+        // the first call waits in the bulkhead, the others join it and share its rejection
+        List<Future<ConfigModel>> identical = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            identical.add(callers.submit(() -> querySlowly(0)));
+        }
+        for (Future<ConfigModel> result : identical) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                assert false : "expected QueryRejectedException";
+            } catch (ExecutionException e) {
+                System.out.println(e.getCause());
+                assert e.getCause() instanceof QueryRejectedException;
+            }
+        }
+        assert client.getQueryCoalescingStats(ConfigMapper.class).getCoalesced() > 0;
+        slow.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void slowMapperDoesNotStarveOthersTestCase() throws Exception {
+        client.enableBulkhead(ConfigMapper.class, 4, 0, TimeUnit.MILLISECONDS);
+        AtomicInteger rejected = new AtomicInteger();
+        List<Future<?>> storm = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            storm.add(callers.submit(() -> {
+                try {
+                    querySlowly(300);
+                } catch (QueryRejectedException e) {
+                    rejected.incrementAndGet();
+                }
+                return null;
+            }));
+        }
+        await(() -> client.getBulkheadStats(ConfigMapper.class).getInFlight() > 0);
+
+        for (int i = 0; i < 10; i++) {
+            long started = System.nanoTime();
+            assert client.queryObject(HealthMapper::ping) == 1;
+            // a free connection is always left, so pings never wait for the slow queries
+            assert System.nanoTime() - started < TimeUnit.MILLISECONDS.toNanos(200);
+            assert client.getPoolStats().getActiveConnections() <= 4;
+        }
+        for (Future<?> result : storm) {
+            result.get(10, TimeUnit.SECONDS);
+        }
+        BulkheadStats stats = client.getBulkheadStats(ConfigMapper.class);
+        System.out.println(stats);
+        assert rejected.get() > 0 && stats.getRejectedCalls() == rejected.get();
+        assert stats.getCalls() + stats.getRejectedCalls() == 12;
+    }
+
+    @Test
+    public void adaptiveLimitTestCase() {
+        client.enableAdaptiveBulkhead(ConfigMapper.class, 1, 8, 0, TimeUnit.MILLISECONDS);
+        // calls of a few milliseconds, so that scheduling hiccups of a busy machine do not read as a slowdown
+        for (int i = 0; i < 30; i++) {
+            querySlowly(10);
+        }
+        assert client.getBulkheadStats(ConfigMapper.class).getLimit() == 8;
+
+        // the database slows down: the limit follows
+        for (int i = 0; i < 5; i++) {
+            querySlowly(100);
+        }
+        BulkheadStats lowered = client.getBulkheadStats(ConfigMapper.class);
+        System.out.println(lowered);
+        assert lowered.getLimit() < 8 && lowered.getLimit() >= 1;
+
+        // and recovers once it is fast again
+        for (int i = 0; i < 100; i++) {
+            querySlowly(10);
+        }
+        BulkheadStats recovered = client.getBulkheadStats(ConfigMapper.class);
+        System.out.println(recovered);
+        assert recovered.getLimit() > lowered.getLimit();
+    }
+
+    @Test
+    public void statementTimeoutsTestCase() {
+        TimeoutProbe probe = new TimeoutProbe();
+        client.getConfiguration().addInterceptor(probe);
+        client.queryList(ConfigMapper::queryList);
+        assert probe.lastTimeout == 0;
+
+        client.setDefaultStatementTimeout(3, TimeUnit.SECONDS);
+        client.queryList(ConfigMapper::queryList);
+        assert probe.lastTimeout == 3;
+
+        client.setStatementTimeout(ConfigMapper.class, 1500, TimeUnit.MILLISECONDS);
+        client.queryList(ConfigMapper::queryList);
+        assert probe.lastTimeout == 2;
+        client.setStatementTimeout(ConfigMapper.class, "queryList", 5, TimeUnit.SECONDS);
+        client.queryList(ConfigMapper::queryList);
+        assert probe.lastTimeout == 5;
+        client.queryList(ConfigMapper::queryAllOrderByKey);
+        assert probe.lastTimeout == 2;
+        client.queryObject(HealthMapper::ping);
+        assert probe.lastTimeout == 3;
+
+        client.clearStatementTimeout(ConfigMapper.class);
+        client.queryList(ConfigMapper::queryAllOrderByKey);
+        assert probe.lastTimeout == 3;
+        client.clearStatementTimeout(ConfigMapper.class, "queryList");
+        client.queryList(ConfigMapper::queryList);
+        assert probe.lastTimeout == 3;
+
+        try {
+            client.setStatementTimeout(ConfigMapper.class, "noSuchMethod", 1, TimeUnit.SECONDS);
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    @Test
+    public void statementTimeoutsOfReusedStatementsTestCase() {
+        TimeoutProbe probe = new TimeoutProbe();
+        client.getConfiguration().addInterceptor(probe);
+        client.enableSessionReuse();
+        try {
+            client.queryList(ConfigMapper::queryList);
+            int prepared = probe.prepared.get();
+            assert probe.lastTimeout == 0;
+
+            client.setStatementTimeout(ConfigMapper.class, 4, TimeUnit.SECONDS);
+            client.queryList(ConfigMapper::queryList);
+            assert probe.lastTimeout == 4;
+            client.clearStatementTimeout(ConfigMapper.class);
+            client.queryList(ConfigMapper::queryList);
+            assert probe.lastTimeout == 0;
+            client.setDefaultStatementTimeout(2, TimeUnit.SECONDS);
+            client.queryList(ConfigMapper::queryList);
+            assert probe.lastTimeout == 2;
+            // every call ran the statement the reused session prepared first
+            assert probe.prepared.get() == prepared;
+        } finally {
+            client.disableSessionReuse();
+        }
+    }
+
+    private ConfigModel querySlowly(long millis) {
+        return client.queryObject((ConfigMapper mapper) -> mapper.queryConfigByKeySlowly("username", millis));
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assert System.currentTimeMillis() < deadline : "condition not reached";
+            Thread.sleep(5);
+        }
+    }
+
+    /**
+     * Records the query timeout of the last statement executed, and how many statements were prepared.
+     */
+    @Intercepts({
+            @Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}),
+            @Signature(type = StatementHandler.class, method = "parameterize", args = {Statement.class})
+    })
+    public static class TimeoutProbe implements Interceptor {
+
+        volatile int lastTimeout = -1;
+        final AtomicInteger prepared = new AtomicInteger();
+
+        @Override
+        public Object intercept(Invocation invocation) throws Throwable {
+            if ("prepare".equals(invocation.getMethod().getName())) {
+                prepared.incrementAndGet();
+                return invocation.proceed();
+            }
+            Object result = invocation.proceed();
+            lastTimeout = ((Statement) invocation.getArgs()[0]).getQueryTimeout();
+            return result;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MapperMethodMetrics;
+import cn.jiayeli.mybatisMini.core.MiniCallEvent;
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class FlightRecorderTestCase {
+
+    private static final String QUERY_BY_KEY = "cn.jiayeli.mybatisMini.test.dao.ConfigMapper.queryConfigByKey";
+    private static final String STREAM_ALL = "cn.jiayeli.mybatisMini.test.dao.ConfigMapper.streamAllOrderByKey";
+    private static final String INSERT = "cn.jiayeli.mybatisMini.test.dao.ConfigMapper.insertConfig";
+    private static final String FLIGHT_TYPE = "flight";
+
+    private Recording recording;
+    private Path dump;
+
+    @Before
+    public void setUp() throws Exception {
+        recording = new Recording();
+        dump = Files.createTempFile("mybatisMini", ".jfr");
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        recording.close();
+        Files.deleteIfExists(dump);
+        MybatisMini.setMetricsEnabled(true);
+    }
+
+    @Test
+    public void callEventsTestCase() throws Exception {
+        recording.enable(MiniCallEvent.NAME).withThreshold(Duration.ZERO);
+        recording.start();
+        List<ConfigModel> configs = MybatisMini.queryList(ConfigMapper::queryList);
+        MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("username"));
+        try {
+            MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> {
+                mapper.queryConfigByKey("password");
+                throw new IllegalStateException("boom");
+            });
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage());
+        }
+        List<RecordedEvent> events = stopAndRead();
+
+        assert events.size() == 3 : events;
+        RecordedEvent list = events.get(0);
+        System.out.println(list);
+        assert "list".equals(list.getString("kind"));
+        assert ConfigMapper.class.getName().equals(list.getClass("mapperClass").getName());
+        assert "queryList".equals(list.getString("mapperMethod"));
+        assert FlightRecorderTestCase.class.getName().equals(list.getString("callSite"));
+        assert list.getString("sql").toLowerCase().contains("select");
+        assert list.getLong("rows") == configs.size();
+        assert list.getBoolean("executedSql") && !list.getBoolean("coalesced");
+        assert "SUCCESS".equals(list.getString("outcome")) && list.getString("error") == null;
+        assert !list.getDuration("executeTime").isNegative() && !list.getDuration("checkoutTime").isNegative();
+        assert list.getStackTrace() == null;
+
+        RecordedEvent object = events.get(1);
+        assert "object".equals(object.getString("kind"));
+        assert QUERY_BY_KEY.equals(object.getString("statementId"));
+        // a lambda names the mapper method by its statement and its call site by the enclosing method
+        assert "queryConfigByKey".equals(object.getString("mapperMethod"));
+        assert object.getString("callSite").startsWith(FlightRecorderTestCase.class.getName() + ".lambda$callEventsTestCase$");
+        assert object.getString("sql").contains("?");
+        assert object.getLong("rows") == 1;
+
+        RecordedEvent failed = events.get(2);
+        System.out.println(failed);
+        assert "ERROR".equals(failed.getString("outcome"));
+        assert failed.getString("error").contains("boom");
+    }
+
+    @Test
+    public void streamsAndBatchesTestCase() throws Exception {
+        List<ConfigModel> configs = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            ConfigModel config = new ConfigModel();
+            config.setConfig_type(FLIGHT_TYPE);
+            config.setConfig_key("flight_" + i);
+            config.setConfig_value("value_" + i);
+            configs.add(config);
+        }
+        long streamCalls = callsOf(STREAM_ALL);
+        long insertCalls = callsOf(INSERT);
+        recording.enable(MiniCallEvent.NAME).withThreshold(Duration.ZERO);
+        recording.start();
+        try {
+            long streamed = MybatisMini.stream(ConfigMapper::streamAllOrderByKey).count();
+            MybatisMini.executeBatch(ConfigMapper.class, configs, ConfigMapper::insertConfig, 2);
+            List<RecordedEvent> events = stopAndRead();
+
+            assert events.size() == 3 : events;
+            RecordedEvent cursor = events.get(0);
+            System.out.println(cursor);
+            assert streamed > 0;
+            assert "cursor".equals(cursor.getString("kind"));
+            assert STREAM_ALL.equals(cursor.getString("statementId"));
+            assert FlightRecorderTestCase.class.getName().equals(cursor.getString("callSite"));
+            // the event ends once the cursor is open, before its rows are read
+            assert cursor.getBoolean("executedSql") && cursor.getLong("rows") == 0;
+
+            RecordedEvent flush = events.get(1);
+            System.out.println(flush);
+            assert "flush".equals(flush.getString("kind"));
+            assert INSERT.equals(flush.getString("statementId"));
+            assert "insertConfig".equals(flush.getString("mapperMethod"));
+            assert flush.getString("sql").toLowerCase().contains("insert");
+            assert flush.getLong("rows") == 2 && events.get(2).getLong("rows") == 1;
+            assert "SUCCESS".equals(events.get(2).getString("outcome"));
+
+            assert callsOf(STREAM_ALL) == streamCalls + 1;
+            assert callsOf(INSERT) == insertCalls + 2;
+        } finally {
+            MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(FLIGHT_TYPE), ConfigMapper::deleteConfigByType);
+        }
+    }
+
+    @Test
+    public void thresholdAndDisabledMetricsTestCase() throws Exception {
+        MybatisMini.setMetricsEnabled(false);
+        recording.enable(MiniCallEvent.NAME).withThreshold(Duration.ZERO).withStackTrace();
+        recording.start();
+        MybatisMini.queryList(ConfigMapper::queryList);
+        List<RecordedEvent> events = stopAndRead();
+        // events do not depend on metrics being enabled
+        assert events.size() == 1;
+        assert events.get(0).getStackTrace() != null;
+
+        recording.close();
+        recording = new Recording();
+        recording.enable(MiniCallEvent.NAME).withThreshold(Duration.ofSeconds(10));
+        recording.start();
+        MybatisMini.queryList(ConfigMapper::queryList);
+        assert stopAndRead().isEmpty();
+    }
+
+    private static long callsOf(String statementId) {
+        MapperMethodMetrics metrics = MybatisMini.getMapperMethodMetrics().get(statementId);
+        return metrics == null ? 0L : metrics.getCalls();
+    }
+
+    private List<RecordedEvent> stopAndRead() throws Exception {
+        recording.stop();
+        recording.dump(dump);
+        String thread = Thread.currentThread().getName();
+        return RecordingFile.readAllEvents(dump).stream()
+                .filter(event -> MiniCallEvent.NAME.equals(event.getEventType().getName()))
+                .filter(event -> thread.equals(event.getThread().getJavaName()))
+                .sorted((left, right) -> left.getStartTime().compareTo(right.getStartTime()))
+                .collect(Collectors.toList());
+    }
+}
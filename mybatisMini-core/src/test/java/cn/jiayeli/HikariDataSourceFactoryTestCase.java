@@ -0,0 +1,65 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.HikariDataSourceFactory;
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.PoolStats;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import com.zaxxer.hikari.HikariDataSource;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class HikariDataSourceFactoryTestCase {
+
+    @Test
+    public void propertyMappingTestCase() {
+        Properties properties = new Properties();
+        properties.setProperty("driver", "org.h2.Driver");
+        properties.setProperty("url", "jdbc:h2:mem:mapping");
+        properties.setProperty("username", "sa");
+        properties.setProperty("maximumPoolSize", "4");
+        properties.setProperty("minimumIdle", "1");
+        properties.setProperty("driver.cachePrepStmts", "true");
+
+        HikariDataSourceFactory factory = new HikariDataSourceFactory();
+        factory.setProperties(properties);
+        try (HikariDataSource dataSource = (HikariDataSource) factory.getDataSource()) {
+            assert "org.h2.Driver".equals(dataSource.getDriverClassName());
+            assert "jdbc:h2:mem:mapping".equals(dataSource.getJdbcUrl());
+            assert dataSource.getMaximumPoolSize() == 4;
+            assert dataSource.getMinimumIdle() == 1;
+            assert "true".equals(dataSource.getDataSourceProperties().getProperty("cachePrepStmts"));
+            assert "MybatisMini".equals(dataSource.getPoolName());
+        }
+    }
+
+    @Test
+    public void concurrentQueriesReleaseConnectionsTestCase() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<ConfigModel>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(executor.submit(() ->
+                        MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("username"))));
+            }
+            for (Future<ConfigModel> future : futures) {
+                assert "root".equals(future.get().getConfig_value());
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        PoolStats poolStats = MybatisMini.getPoolStats();
+        System.out.println(poolStats);
+        assert poolStats.getMaximumPoolSize() == 8;
+        assert poolStats.getActiveConnections() == 0;
+        assert poolStats.getTotalConnections() > 0 && poolStats.getTotalConnections() <= 8;
+        assert poolStats.getThreadsAwaitingConnection() == 0;
+    }
+}
@@ -0,0 +1,165 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MapperClassResolver;
+import cn.jiayeli.mybatisMini.core.MiniMapper;
+import cn.jiayeli.mybatisMini.core.MiniMapperBinding;
+import cn.jiayeli.mybatisMini.core.ReflectUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ServiceLoader;
+
+public class MapperClassResolverTestCase {
+
+    private static final int ITERATIONS = 100_000;
+
+    @Test
+    public void resolveMethodReferenceTestCase() {
+        Class<TestMapper> mapperClass = MapperClassResolver.resolve(TestMapper::queryList);
+        assert mapperClass == TestMapper.class;
+    }
+
+    @Test
+    public void resolveCapturingLambdaTestCase() {
+        String key = "username";
+        MiniMapper<TestMapper, String> lambda = mapper -> mapper.queryByKey(key);
+        assert MapperClassResolver.resolve(lambda) == TestMapper.class;
+        // a different captured value still maps to the same call site
+        assert MapperClassResolver.resolve(capture("password")) == MapperClassResolver.resolve(capture("username"));
+    }
+
+    @Test
+    public void generatedBindingTestCase() {
+        MiniMapperBinding testMapperBinding = null;
+        for (MiniMapperBinding binding : ServiceLoader.load(MiniMapperBinding.class)) {
+            if (binding.mapperClass() == TestMapper.class) {
+                testMapperBinding = binding;
+            }
+        }
+        assert testMapperBinding != null : "mybatisMini-processor did not generate a binding for TestMapper";
+        System.out.println(Arrays.toString(testMapperBinding.methods()));
+        assert Arrays.asList(testMapperBinding.methods()).contains("queryByKey(Ljava/lang/String;)Ljava/lang/String;");
+    }
+
+    @Test
+    public void resolvePrimitiveAndArrayCaptureTestCase() {
+        int limit = 1;
+        long[] ids = {1L, 2L};
+        MiniMapper<TestMapper, List<String>> lambda = mapper -> mapper.queryList().subList(0, limit + ids.length);
+        // lambda$...(I[JLcn/jiayeli/MapperClassResolverTestCase$TestMapper;)Ljava/util/List;
+        assert MapperClassResolver.resolve(lambda) == TestMapper.class;
+    }
+
+    @Test
+    public void reflectionFallbackSkipsPrimitivesAndArraysTestCase() throws ClassNotFoundException {
+        String signature = "(I[Ljava/lang/String;JLcn/jiayeli/MapperClassResolverTestCase$TestMapper;)Ljava/util/List;";
+        assert TestMapper.class.getName().equals(ReflectUtils.findMiniMapperParameterType(signature));
+    }
+
+    @Test
+    public void repeatedResolveAllocatesNothingTestCase() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        String key = "username";
+        MiniMapper<TestMapper, String> lambda = mapper -> mapper.queryByKey(key);
+
+        // warm up the resolution and the measurement path itself
+        for (int i = 0; i < ITERATIONS; i++) {
+            MapperClassResolver.resolve(lambda);
+        }
+        threadMXBean.getThreadAllocatedBytes(threadId);
+
+        long before = threadMXBean.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < ITERATIONS; i++) {
+            MapperClassResolver.resolve(lambda);
+        }
+        long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - before;
+        System.out.println("allocated bytes over " + ITERATIONS + " resolutions: " + allocated);
+        // anything below one byte per call means the loop itself allocates nothing
+        assert allocated < ITERATIONS;
+    }
+
+    @Test
+    public void bindingsDoNotPinClassLoadersTestCase() throws Exception {
+        WeakReference<ClassLoader> loader = resolveInIsolatedLoader();
+        for (int i = 0; i < 50 && loader.get() != null; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assert loader.get() == null : "the class loader of a resolved binding was not unloaded";
+    }
+
+    /**
+     * Resolves {@link TestMapper} through its generated binding, with this test's classes defined by a loader of
+     * their own, like those of a redeployed web app.
+     */
+    private static WeakReference<ClassLoader> resolveInIsolatedLoader() throws Exception {
+        ClassLoader loader = new TestClassesLoader(MapperClassResolverTestCase.class.getClassLoader());
+        Class<?> testCase = loader.loadClass(MapperClassResolverTestCase.class.getName());
+        Class<?> mapperClass = (Class<?>) testCase.getMethod("resolveMethodReference").invoke(null);
+        assert mapperClass.getClassLoader() == loader && mapperClass != TestMapper.class;
+        return new WeakReference<>(loader);
+    }
+
+    public static Class<?> resolveMethodReference() {
+        return MapperClassResolver.resolve(TestMapper::queryList);
+    }
+
+    private static MiniMapper<TestMapper, String> capture(String key) {
+        return mapper -> mapper.queryByKey(key);
+    }
+
+    /**
+     * Defines the classes of this test case and of its generated binding itself instead of delegating them.
+     */
+    private static final class TestClassesLoader extends ClassLoader {
+
+        private TestClassesLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+            if (!name.startsWith(MapperClassResolverTestCase.class.getName())) {
+                return super.loadClass(name, resolve);
+            }
+            synchronized (getClassLoadingLock(name)) {
+                Class<?> loaded = findLoadedClass(name);
+                if (loaded == null) {
+                    loaded = findClass(name);
+                }
+                return loaded;
+            }
+        }
+
+        @Override
+        protected Class<?> findClass(String name) throws ClassNotFoundException {
+            try (InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class")) {
+                if (in == null) {
+                    throw new ClassNotFoundException(name);
+                }
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+                    bytes.write(buffer, 0, n);
+                }
+                return defineClass(name, bytes.toByteArray(), 0, bytes.size());
+            } catch (IOException e) {
+                throw new ClassNotFoundException(name, e);
+            }
+        }
+    }
+
+    public interface TestMapper extends MiniMapper<TestMapper, String> {
+
+        List<String> queryList();
+
+        String queryByKey(String key);
+    }
+}
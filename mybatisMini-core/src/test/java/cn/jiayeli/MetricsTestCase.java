@@ -0,0 +1,114 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.LatencyHistogram;
+import cn.jiayeli.mybatisMini.core.MapperMethodMetrics;
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.core.MybatisMiniClient;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+public class MetricsTestCase {
+
+    private static final String QUERY_BY_KEY = "cn.jiayeli.mybatisMini.test.dao.ConfigMapper.queryConfigByKey";
+    private static final String QUERY_LIST = "cn.jiayeli.mybatisMini.test.dao.ConfigMapper.queryList";
+
+    @After
+    public void restoreDefaults() {
+        MybatisMini.setMetricsEnabled(true);
+        MybatisMini.setSlowCallThreshold(1, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void perMethodCountersAndPhasesTestCase() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("username"));
+        }
+        List<ConfigModel> configs = MybatisMini.queryList(ConfigMapper::queryList);
+
+        MapperMethodMetrics byKey = MybatisMini.getMapperMethodMetrics().get(QUERY_BY_KEY);
+        MapperMethodMetrics list = MybatisMini.getMapperMethodMetrics().get(QUERY_LIST);
+        System.out.println(byKey);
+        System.out.println(list);
+        assert byKey.getCalls() >= 20;
+        assert byKey.getRows() >= 20;
+        assert byKey.getP50Micros() > 0;
+        assert byKey.getP999Micros() >= byKey.getP99Micros() && byKey.getP99Micros() >= byKey.getP50Micros();
+        assert byKey.getExecuteLatency().getCount() >= 20;
+        assert byKey.getMappingLatency().getCount() >= 20;
+        assert list.getRows() >= configs.size();
+
+        ObjectName objectName = new ObjectName("cn.jiayeli.mybatisMini:type=MapperMethod,name=" + ObjectName.quote(QUERY_BY_KEY));
+        Object calls = ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "Calls");
+        assert (Long) calls >= 20;
+    }
+
+    @Test
+    public void errorsAndSlowCallsTestCase() {
+        MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("password"));
+        MapperMethodMetrics metrics = MybatisMini.getMapperMethodMetrics().get(QUERY_BY_KEY);
+        long errors = metrics.getErrors();
+        long slowCalls = metrics.getSlowCalls();
+
+        try {
+            MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> {
+                mapper.queryConfigByKey("password");
+                throw new IllegalStateException("boom");
+            });
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            assert metrics.getErrors() == errors + 1;
+        }
+
+        MybatisMini.setSlowCallThreshold(1, TimeUnit.NANOSECONDS);
+        MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("password"));
+        assert metrics.getSlowCalls() == slowCalls + 1;
+
+        MybatisMini.setMetricsEnabled(false);
+        long calls = metrics.getCalls();
+        MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("password"));
+        assert metrics.getCalls() == calls;
+    }
+
+    @Test
+    public void histogramPercentilesTestCase() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long micros = 1; micros <= 1000; micros++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+        }
+        long p50 = histogram.getPercentile(50, TimeUnit.MICROSECONDS);
+        long p99 = histogram.getPercentile(99, TimeUnit.MICROSECONDS);
+        System.out.println("p50=" + p50 + " p99=" + p99);
+        // buckets keep values within 12.5% of the real percentile
+        assert p50 >= 500 && p50 <= 563;
+        assert p99 >= 990 && p99 <= 1000;
+        assert histogram.getMax(TimeUnit.MICROSECONDS) == 1000;
+        assert histogram.getCount() == 1000;
+    }
+
+    @Test
+    public void clientConfigDoesNotSwitchSharedMetricsTestCase() {
+        Properties properties = new Properties();
+        properties.setProperty("url", "jdbc:h2:mem:cmdb_metrics;DB_CLOSE_DELAY=-1;MODE=MySQL;"
+                + "INIT=RUNSCRIPT FROM 'classpath:mybatis/schema.sql'");
+        properties.setProperty("mybatisMini.metrics.enabled", "false");
+        try (MybatisMiniClient client = MybatisMini.builder()
+                .configResource("mybatis/mybatisConfig.xml")
+                .properties(properties)
+                .build()) {
+            // metrics are shared by every client, so building this one must not turn them off for the others
+            long calls = MybatisMini.getMapperMethodMetrics().get(QUERY_LIST).getCalls();
+            MybatisMini.queryList(ConfigMapper::queryList);
+            assert MybatisMini.getMapperMethodMetrics().get(QUERY_LIST).getCalls() == calls + 1;
+            assert client.queryList(ConfigMapper::queryList).size() == 3;
+        }
+    }
+}
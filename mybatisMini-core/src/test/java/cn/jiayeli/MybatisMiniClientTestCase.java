@@ -0,0 +1,109 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.core.MybatisMiniClient;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.scripting.xmltags.DynamicSqlSource;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Properties;
+
+public class MybatisMiniClientTestCase {
+
+    private static final String CLIENT_TYPE = "client";
+
+    @Test
+    public void independentClientTestCase() {
+        try (MybatisMiniClient client = otherDatabase().build()) {
+            assert client.getConfiguration().hasStatement("cn.jiayeli.mybatisMini.test.dao.ConfigMapper.queryList");
+            assert client.queryList(ConfigMapper::queryList).size() == 3;
+
+            client.executeBatch(ConfigMapper.class, Collections.singletonList(config()), ConfigMapper::insertConfig);
+            // the default client runs against another database and does not see the row
+            assert client.stream(ConfigMapper::streamAll).count() == 4;
+            assert MybatisMini.stream(ConfigMapper::streamAll).noneMatch(row -> "client_key".equals(row.getConfig_key()));
+
+            // units of work of one client are not joined by the other
+            MybatisMini.inTransaction(sqlSession -> {
+                assert client.inSession(clientSession -> clientSession != sqlSession);
+                return null;
+            });
+        }
+    }
+
+    @Test
+    public void warmUpTestCase() {
+        try (MybatisMiniClient client = otherDatabase().build()) {
+            int prepared = client.warmUp(ConfigMapper::queryList, ConfigMapper::streamAll);
+            System.out.println("statements prepared during warm-up: " + prepared);
+            // every static statement of ConfigurationMapper.xml is prepared, the dynamic ones are skipped
+            assert prepared == client.getConfiguration().getMappedStatementNames().stream()
+                    .filter(id -> id.startsWith(ConfigMapper.class.getName() + "."))
+                    .filter(id -> !(client.getConfiguration().getMappedStatement(id).getSqlSource() instanceof DynamicSqlSource))
+                    .count();
+            assert prepared >= 5;
+        }
+    }
+
+    @Test
+    public void brokenConfigFailsOnBuildTestCase() {
+        byte[] brokenConfig = "<configuration><mappers>".getBytes(StandardCharsets.UTF_8);
+        try {
+            MybatisMini.builder().configSource(() -> new ByteArrayInputStream(brokenConfig)).build();
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage());
+        }
+        try {
+            MybatisMini.builder().configResource("mybatis/missingConfig.xml").build();
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    @Test
+    public void failedBuildClosesDataSourceTestCase() {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:cmdb_failed_build;DB_CLOSE_DELAY=-1;MODE=MySQL");
+        Configuration configuration = new Configuration(new Environment("failedBuild", new JdbcTransactionFactory(), dataSource));
+        Properties variables = new Properties();
+        variables.setProperty("mybatisMini.sessionReuse", "true");
+        variables.setProperty("mybatisMini.sessionReuse.maxSessions", "many");
+        configuration.setVariables(variables);
+        try {
+            MybatisMini.builder().configuration(configuration).build();
+            assert false : "expected NumberFormatException";
+        } catch (NumberFormatException e) {
+            System.out.println(e.getMessage());
+        }
+        assert dataSource.isClosed();
+    }
+
+    private static MybatisMiniClient.Builder otherDatabase() {
+        Properties properties = new Properties();
+        properties.setProperty("url", "jdbc:h2:mem:cmdb_client;DB_CLOSE_DELAY=-1;MODE=MySQL;"
+                + "INIT=RUNSCRIPT FROM 'classpath:mybatis/schema.sql'");
+        return MybatisMini.builder()
+                .configResource("mybatis/mybatisConfig.xml")
+                .properties(properties)
+                .parseParallelism(4);
+    }
+
+    private static ConfigModel config() {
+        ConfigModel config = new ConfigModel();
+        config.setConfig_key("client_key");
+        config.setConfig_value("client_value");
+        config.setConfig_type(CLIENT_TYPE);
+        return config;
+    }
+}
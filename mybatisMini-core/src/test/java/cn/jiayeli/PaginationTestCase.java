@@ -0,0 +1,138 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class PaginationTestCase {
+
+    private static final String PAGE_TYPE = "page";
+    private static final int PAGE_ROWS = 60;
+    private static final AtomicInteger PAGES_FETCHED = new AtomicInteger();
+    private static final Set<String> FETCH_THREADS = ConcurrentHashMap.newKeySet();
+    private static volatile long fetchDelayMillis;
+
+    @Before
+    public void insertRows() {
+        List<ConfigModel> configs = new ArrayList<>();
+        for (int i = 0; i < PAGE_ROWS; i++) {
+            ConfigModel config = new ConfigModel();
+            config.setConfig_key(String.format("page_%03d", i));
+            config.setConfig_value("value_" + i);
+            config.setConfig_type(PAGE_TYPE);
+            configs.add(config);
+        }
+        MybatisMini.executeBatch(ConfigMapper.class, configs, ConfigMapper::insertConfig);
+        PAGES_FETCHED.set(0);
+        FETCH_THREADS.clear();
+        fetchDelayMillis = 0;
+    }
+
+    @After
+    public void cleanUp() {
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(PAGE_TYPE), ConfigMapper::deleteConfigByType);
+    }
+
+    @Test
+    public void walkAllRowsInKeyOrderTestCase() {
+        List<String> expected = MybatisMini.queryList(ConfigMapper::queryAllOrderByKey).stream()
+                .map(ConfigModel::getConfig_key)
+                .collect(Collectors.toList());
+        try (Stream<ConfigModel> rows = MybatisMini.paginate(ConfigMapper::queryPageAfter, "", ConfigModel::getConfig_key, 7)) {
+            assert rows.map(ConfigModel::getConfig_key).collect(Collectors.toList()).equals(expected);
+        }
+        // resuming after a key skips the rows before it
+        try (Stream<ConfigModel> rows = MybatisMini.paginate(ConfigMapper::queryPageAfter, "page_049", ConfigModel::getConfig_key, 7)) {
+            assert rows.filter(row -> PAGE_TYPE.equals(row.getConfig_type())).count() == 10;
+        }
+    }
+
+    @Test
+    public void prefetchIsBoundedTestCase() throws InterruptedException {
+        try (Stream<ConfigModel> rows = MybatisMini.paginate(PaginationTestCase::countedPage, "", ConfigModel::getConfig_key, 5, 2)) {
+            Iterator<ConfigModel> iterator = rows.iterator();
+            assert iterator.hasNext();
+            iterator.next();
+            Thread.sleep(300);
+            System.out.println("pages fetched while reading the first: " + PAGES_FETCHED.get() + " on " + FETCH_THREADS);
+            // the page being read plus two prefetched ones, out of 13
+            assert PAGES_FETCHED.get() == 3;
+            assert FETCH_THREADS.stream().anyMatch(name -> name.startsWith("mybatisMini-async-"));
+        }
+    }
+
+    @Test
+    public void prefetchOverlapsReadingTestCase() throws InterruptedException {
+        fetchDelayMillis = 30;
+        long sequential = timedWalk(0);
+        long prefetched = timedWalk(1);
+        System.out.println("walk without prefetch took " + sequential + " ms, with prefetch " + prefetched + " ms");
+        assert prefetched < sequential * 3 / 4;
+    }
+
+    @Test
+    public void boundSessionReadsOnCallingThreadTestCase() {
+        String caller = Thread.currentThread().getName();
+        long rows = MybatisMini.inSession(sqlSession -> {
+            try (Stream<ConfigModel> pages = MybatisMini.paginate(PaginationTestCase::countedPage, "", ConfigModel::getConfig_key, 10)) {
+                return pages.count();
+            }
+        });
+        assert rows == PAGE_ROWS + 3;
+        assert FETCH_THREADS.equals(Collections.singleton(caller));
+    }
+
+    @Test
+    public void failingPageTestCase() {
+        try (Stream<ConfigModel> rows = MybatisMini.paginate(PaginationTestCase::failingPage, "", ConfigModel::getConfig_key, 10)) {
+            rows.count();
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage());
+        }
+        assert MybatisMini.getPoolStats().getActiveConnections() == 0;
+    }
+
+    private static long timedWalk(int prefetchPages) throws InterruptedException {
+        long started = System.nanoTime();
+        try (Stream<ConfigModel> rows = MybatisMini.paginate(PaginationTestCase::countedPage, "", ConfigModel::getConfig_key, 10, prefetchPages)) {
+            Iterator<ConfigModel> iterator = rows.iterator();
+            for (int row = 0; iterator.hasNext(); row++) {
+                iterator.next();
+                if (row % 10 == 0) {
+                    // the reader spends as long on a page as the database
+                    Thread.sleep(fetchDelayMillis);
+                }
+            }
+        }
+        return (System.nanoTime() - started) / 1_000_000;
+    }
+
+    private static List<ConfigModel> countedPage(ConfigMapper mapper, String afterKey, int limit) throws InterruptedException {
+        PAGES_FETCHED.incrementAndGet();
+        FETCH_THREADS.add(Thread.currentThread().getName());
+        Thread.sleep(fetchDelayMillis);
+        return mapper.queryPageAfter(afterKey, limit);
+    }
+
+    private static List<ConfigModel> failingPage(ConfigMapper mapper, String afterKey, int limit) {
+        if (afterKey.startsWith(PAGE_TYPE)) {
+            throw new IllegalStateException("second page failed");
+        }
+        return mapper.queryPageAfter(afterKey, limit);
+    }
+}
@@ -0,0 +1,174 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MiniFileFormat;
+import cn.jiayeli.mybatisMini.core.MiniPipelineStats;
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class PipelineTestCase {
+
+    private static final String PIPELINE_TYPE = "pipeline";
+    private static final int ROWS = 2500;
+
+    private Path file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = Files.createTempFile("mybatisMini-pipeline", ".dump");
+        MybatisMini.executeBatch(ConfigMapper.class, configs(), ConfigMapper::insertConfig);
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(PIPELINE_TYPE), ConfigMapper::deleteConfigByType);
+        Files.deleteIfExists(file);
+    }
+
+    @Test
+    public void csvRoundTripTestCase() throws Exception {
+        roundTrip(MiniFileFormat.CSV);
+        String text = new String(Files.readAllBytes(file), "UTF-8");
+        assert text.contains("\"quoted \"\"value\"\", 7\"");
+    }
+
+    @Test
+    public void binaryRoundTripTestCase() {
+        roundTrip(MiniFileFormat.BINARY);
+    }
+
+    @Test
+    public void transformFailureTestCase() {
+        try {
+            MybatisMini.export(ConfigMapper::streamAllOrderByKey)
+                    .transform(config -> {
+                        if ("pipeline_1234".equals(config.getConfig_key())) {
+                            throw new IllegalStateException("cannot transform " + config.getConfig_key());
+                        }
+                        return config;
+                    }, 2)
+                    .chunkSize(100)
+                    .maxPendingChunks(1)
+                    .to(file, MiniFileFormat.CSV, PipelineTestCase::fields);
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage() + ": " + e.getCause());
+            assert e.getCause() instanceof IllegalStateException;
+        }
+        assert MybatisMini.getPoolStats().getActiveConnections() == 0;
+    }
+
+    @Test
+    public void importFailureTestCase() throws Exception {
+        MybatisMini.export(ConfigMapper::streamAllOrderByKey)
+                .transform(config -> PIPELINE_TYPE.equals(config.getConfig_type()) ? config : null, 1)
+                .to(file, MiniFileFormat.BINARY, PipelineTestCase::fields);
+        // the rows are still in the table, so the first insert violates the unique key
+        try {
+            MybatisMini.importFrom(file, MiniFileFormat.BINARY, PipelineTestCase::config)
+                    .into(ConfigMapper.class, ConfigMapper::insertConfigs);
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage() + ": " + e.getCause());
+        }
+
+        // a truncated file fails in the reader, after the complete rows before it were read
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(PIPELINE_TYPE), ConfigMapper::deleteConfigByType);
+        try {
+            MybatisMini.importFrom(file, MiniFileFormat.BINARY, PipelineTestCase::config)
+                    .into(ConfigMapper.class, ConfigMapper::insertConfigs);
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage() + ": " + e.getCause());
+            assert e.getCause() instanceof java.io.EOFException;
+        }
+        assert MybatisMini.getPoolStats().getActiveConnections() == 0;
+    }
+
+    private void roundTrip(MiniFileFormat format) {
+        List<ConfigModel> before = pipelineRows();
+        assert before.size() == ROWS;
+
+        MiniPipelineStats exported = MybatisMini.export(ConfigMapper::streamAllOrderByKey)
+                .transform(config -> PIPELINE_TYPE.equals(config.getConfig_type()) ? config : null, 4)
+                .chunkSize(100)
+                .maxPendingChunks(2)
+                .to(file, format, PipelineTestCase::fields);
+        System.out.println(format + " export: " + exported);
+        assert exported.getRows() == ROWS;
+        assert exported.getBytes() > 0 && exported.getRowsPerSecond() > 0;
+
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(PIPELINE_TYPE), ConfigMapper::deleteConfigByType);
+        assert pipelineRows().isEmpty();
+
+        MiniPipelineStats imported = MybatisMini.importFrom(file, format, PipelineTestCase::config)
+                .rowsPerInsert(200)
+                .insertsPerCommit(3)
+                .maxPendingChunks(2)
+                .into(ConfigMapper.class, ConfigMapper::insertConfigs);
+        System.out.println(format + " import: " + imported);
+        assert imported.getRows() == ROWS;
+        assert imported.getBytes() == exported.getBytes();
+        assert pipelineRows().equals(before);
+        assert MybatisMini.getPoolStats().getActiveConnections() == 0;
+    }
+
+    private static List<ConfigModel> pipelineRows() {
+        return MybatisMini.stream(ConfigMapper::streamAllOrderByKey)
+                .filter(config -> PIPELINE_TYPE.equals(config.getConfig_type()))
+                .collect(Collectors.toList());
+    }
+
+    private static String[] fields(ConfigModel config) {
+        return new String[]{config.getConfig_type(), config.getConfig_key(), config.getConfig_value()};
+    }
+
+    private static ConfigModel config(String[] fields) {
+        ConfigModel config = new ConfigModel();
+        config.setConfig_type(fields[0]);
+        config.setConfig_key(fields[1]);
+        config.setConfig_value(fields[2]);
+        return config;
+    }
+
+    private static List<ConfigModel> configs() {
+        List<ConfigModel> configs = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            ConfigModel config = new ConfigModel();
+            config.setConfig_type(PIPELINE_TYPE);
+            config.setConfig_key(String.format("pipeline_%04d", i));
+            switch (i % 5) {
+                case 0:
+                    config.setConfig_value(null);
+                    break;
+                case 1:
+                    config.setConfig_value("");
+                    break;
+                case 2:
+                    config.setConfig_value("quoted \"value\", " + i);
+                    break;
+                case 3:
+                    config.setConfig_value("multi\nline\r\n值 " + i);
+                    break;
+                default:
+                    config.setConfig_value("value_" + i);
+            }
+            configs.add(config);
+        }
+        return configs;
+    }
+}
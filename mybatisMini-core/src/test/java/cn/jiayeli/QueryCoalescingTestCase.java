@@ -0,0 +1,133 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MapperMethodMetrics;
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.core.QueryCoalescingStats;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class QueryCoalescingTestCase {
+
+    private static final String QUERY_BY_KEY = "cn.jiayeli.mybatisMini.test.dao.ConfigMapper.queryConfigByKey";
+    private static final String COALESCING_TYPE = "coalescing";
+    private static final int CALLERS = 16;
+    private static final AtomicInteger EXECUTIONS = new AtomicInteger();
+    private static volatile CountDownLatch queryStarted = new CountDownLatch(1);
+
+    private ExecutorService callers;
+
+    @Before
+    public void setUp() {
+        EXECUTIONS.set(0);
+        queryStarted = new CountDownLatch(1);
+        callers = Executors.newFixedThreadPool(CALLERS);
+        MybatisMini.enableQueryCoalescing(ConfigMapper.class);
+    }
+
+    @After
+    public void cleanUp() {
+        callers.shutdownNow();
+        MybatisMini.disableQueryCoalescing(ConfigMapper.class);
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(COALESCING_TYPE), ConfigMapper::deleteConfigByType);
+    }
+
+    @Test
+    public void thunderingHerdSharesOneQueryTestCase() throws Exception {
+        MapperMethodMetrics before = MybatisMini.getMapperMethodMetrics().get(QUERY_BY_KEY);
+        long coalescedBefore = before == null ? 0 : before.getCoalescedCalls();
+
+        CountDownLatch gate = new CountDownLatch(1);
+        List<Future<ConfigModel>> results = new ArrayList<>();
+        for (int i = 0; i < CALLERS; i++) {
+            results.add(callers.submit(() -> {
+                gate.await();
+                return MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> slowQueryByKey(mapper, "username"));
+            }));
+        }
+        gate.countDown();
+        ConfigModel shared = results.get(0).get(10, TimeUnit.SECONDS);
+        for (Future<ConfigModel> result : results) {
+            assert result.get(10, TimeUnit.SECONDS) == shared;
+        }
+        // another key is another call
+        assert "pass".equals(MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> slowQueryByKey(mapper, "password")).getConfig_value());
+
+        QueryCoalescingStats stats = MybatisMini.getQueryCoalescingStats(ConfigMapper.class);
+        System.out.println(stats);
+        assert EXECUTIONS.get() == 2;
+        assert stats.getCalls() == CALLERS + 1;
+        assert stats.getExecutions() == 2;
+        assert stats.getCoalesced() == CALLERS - 1;
+        assert stats.getInFlight() == 0;
+        assert MybatisMini.getMapperMethodMetrics().get(QUERY_BY_KEY).getCoalescedCalls() == coalescedBefore + CALLERS - 1;
+    }
+
+    @Test
+    public void writeDetachesRunningQueryTestCase() throws Exception {
+        CompletableFuture<ConfigModel> running = CompletableFuture.supplyAsync(
+                () -> MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> slowQueryByKey(mapper, "timeout")), callers);
+        assert queryStarted.await(10, TimeUnit.SECONDS);
+
+        ConfigModel config = new ConfigModel();
+        config.setConfig_key("coalescing_key");
+        config.setConfig_value("written");
+        config.setConfig_type(COALESCING_TYPE);
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(config), ConfigMapper::insertConfig);
+
+        // arriving after the write, this call must not share the query that started before it
+        MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> slowQueryByKey(mapper, "timeout"));
+        assert "30".equals(running.get(10, TimeUnit.SECONDS).getConfig_value());
+        assert EXECUTIONS.get() == 2;
+        assert MybatisMini.getQueryCoalescingStats(ConfigMapper.class).getCoalesced() == 0;
+    }
+
+    @Test
+    public void failureIsSharedTestCase() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(callers.submit(() -> {
+                gate.await();
+                return MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> slowFailingQuery(mapper, "username"));
+            }));
+        }
+        gate.countDown();
+        for (Future<?> result : results) {
+            try {
+                result.get(10, TimeUnit.SECONDS);
+                assert false : "expected MybatisMiniException";
+            } catch (ExecutionException e) {
+                assert e.getCause() instanceof MybatisMiniException;
+            }
+        }
+        assert EXECUTIONS.get() == 1;
+    }
+
+    private static ConfigModel slowQueryByKey(ConfigMapper mapper, String key) throws InterruptedException {
+        EXECUTIONS.incrementAndGet();
+        queryStarted.countDown();
+        Thread.sleep(300);
+        return mapper.queryConfigByKey(key);
+    }
+
+    private static ConfigModel slowFailingQuery(ConfigMapper mapper, String key) throws InterruptedException {
+        slowQueryByKey(mapper, key);
+        throw new IllegalStateException("database went away");
+    }
+}
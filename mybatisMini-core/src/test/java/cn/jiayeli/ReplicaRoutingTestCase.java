@@ -0,0 +1,110 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.ReplicaBalancing;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+public class ReplicaRoutingTestCase {
+
+    private static Environment replica1;
+    private static Environment replica2;
+
+    @BeforeClass
+    public static void setUpReplicas() throws Exception {
+        replica1 = replica("replica1");
+        replica2 = replica("replica2");
+    }
+
+    @After
+    public void clearReplicas() {
+        MybatisMini.clearReplicas();
+    }
+
+    @Test
+    public void roundRobinTestCase() {
+        MybatisMini.useReplicas(Arrays.asList(replica1, replica2), ReplicaBalancing.ROUND_ROBIN, 1, TimeUnit.SECONDS);
+
+        List<String> servedBy = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            servedBy.add(usernameValue());
+        }
+        System.out.println(servedBy);
+        assert servedBy.stream().filter("replica1"::equals).count() == 2;
+        assert servedBy.stream().filter("replica2"::equals).count() == 2;
+
+        List<String> streamed = MybatisMini.stream(ConfigMapper::streamAll)
+                .map(ConfigModel::getConfig_value)
+                .collect(Collectors.toList());
+        assert streamed.contains("replica1") || streamed.contains("replica2");
+    }
+
+    @Test
+    public void transactionsStayOnPrimaryTestCase() {
+        MybatisMini.useReplicas(Arrays.asList(replica1, replica2), ReplicaBalancing.LEAST_IN_FLIGHT, 1, TimeUnit.SECONDS);
+
+        String inTransaction = MybatisMini.inTransaction(sqlSession -> usernameValue());
+        String inSession = MybatisMini.inSession(sqlSession -> usernameValue());
+
+        assert "root".equals(inTransaction);
+        assert "root".equals(inSession);
+        assert usernameValue().startsWith("replica");
+    }
+
+    @Test
+    public void failedReplicaEjectedAndProbedTestCase() throws InterruptedException {
+        UnpooledDataSource unreachable = new UnpooledDataSource("org.h2.Driver", "jdbc:h2:tcp://127.0.0.1:1/unreachable", "sa", "");
+        Environment broken = new Environment("broken", new JdbcTransactionFactory(), unreachable);
+        MybatisMini.useReplicas(Arrays.asList(broken, replica1), ReplicaBalancing.ROUND_ROBIN, 1, TimeUnit.SECONDS);
+
+        List<String> servedBy = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            servedBy.add(usernameValue());
+        }
+        System.out.println(servedBy);
+        // the broken replica's only read fell back to the primary, then it was out of rotation
+        assert servedBy.stream().filter("root"::equals).count() == 1;
+        assert servedBy.stream().filter("replica1"::equals).count() == 5;
+
+        Thread.sleep(1200);
+        List<String> afterEjection = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            afterEjection.add(usernameValue());
+        }
+        System.out.println(afterEjection);
+        // exactly one probe hit the still-broken replica and fell back again
+        assert afterEjection.stream().filter("root"::equals).count() == 1;
+    }
+
+    private static String usernameValue() {
+        return MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("username")).getConfig_value();
+    }
+
+    private static Environment replica(String name) throws Exception {
+        DataSource dataSource = new PooledDataSource("org.h2.Driver",
+                "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1;MODE=MySQL;INIT=RUNSCRIPT FROM 'classpath:mybatis/schema.sql'", "sa", "");
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement update = connection.prepareStatement(
+                     "UPDATE cmdb.ssoConfigInfo SET config_value = ? WHERE config_key = 'username'")) {
+            update.setString(1, name);
+            update.executeUpdate();
+        }
+        return new Environment(name, new JdbcTransactionFactory(), dataSource);
+    }
+}
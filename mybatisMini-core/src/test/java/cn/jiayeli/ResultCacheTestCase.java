@@ -0,0 +1,112 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.ResultCacheStats;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+public class ResultCacheTestCase {
+
+    private static final String CACHE_TYPE = "cache";
+
+    @After
+    public void cleanUp() {
+        MybatisMini.disableResultCache(ConfigMapper.class);
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(CACHE_TYPE), ConfigMapper::deleteConfigByType);
+    }
+
+    @Test
+    public void keyedByCapturedArgumentsTestCase() {
+        MybatisMini.enableResultCache(ConfigMapper.class, 100, 1, TimeUnit.MINUTES);
+
+        ConfigModel first = queryByKey("username");
+        ConfigModel second = queryByKey("username");
+        ConfigModel other = queryByKey("password");
+        List<ConfigModel> list = MybatisMini.queryList(ConfigMapper::queryList);
+        List<ConfigModel> cachedList = MybatisMini.queryList(ConfigMapper::queryList);
+
+        assert first == second;
+        assert "pass".equals(other.getConfig_value());
+        assert list == cachedList;
+        ResultCacheStats stats = MybatisMini.getResultCacheStats(ConfigMapper.class);
+        System.out.println(stats);
+        assert stats.getHits() == 2;
+        assert stats.getMisses() == 3;
+        assert stats.getSize() == 3;
+    }
+
+    @Test
+    public void expiryAndEvictionTestCase() throws InterruptedException {
+        MybatisMini.enableResultCache(ConfigMapper.class, 1, 50, TimeUnit.MILLISECONDS);
+
+        queryByKey("username");
+        Thread.sleep(100);
+        queryByKey("username");
+        queryByKey("password");
+
+        ResultCacheStats stats = MybatisMini.getResultCacheStats(ConfigMapper.class);
+        System.out.println(stats);
+        assert stats.getHits() == 0;
+        assert stats.getExpirations() == 1;
+        assert stats.getEvictions() == 1;
+        assert stats.getSize() == 1;
+    }
+
+    @Test
+    public void writeInvalidatesNamespaceTestCase() {
+        MybatisMini.enableResultCache(ConfigMapper.class, 100, 1, TimeUnit.MINUTES);
+        ConfigModel before = queryByKey("username");
+
+        ConfigModel config = new ConfigModel();
+        config.setConfig_type(CACHE_TYPE);
+        config.setConfig_key("cache_key");
+        config.setConfig_value("cache_value");
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(config), ConfigMapper::insertConfig);
+
+        ConfigModel after = queryByKey("username");
+        assert before != after;
+        ResultCacheStats stats = MybatisMini.getResultCacheStats(ConfigMapper.class);
+        assert stats.getInvalidations() > 0;
+        assert stats.getMisses() == 2;
+    }
+
+    @Test
+    public void rowsReadBeforeCommitAreNotServedAfterItTestCase() {
+        MybatisMini.enableResultCache(ConfigMapper.class, 100, 1, TimeUnit.MINUTES);
+        try {
+            MybatisMini.inTransaction(sqlSession -> {
+                sqlSession.getMapper(ConfigMapper.class).updateConfigValue(usernameConfig("uncommitted"));
+                // another thread reads, and caches, the committed row while the update is not committed yet
+                String read = CompletableFuture.supplyAsync(() -> queryByKey("username").getConfig_value()).join();
+                System.out.println("read during the transaction: " + read);
+                assert "root".equals(read);
+                assert "root".equals(CompletableFuture.supplyAsync(() -> queryByKey("username").getConfig_value()).join());
+                assert MybatisMini.getResultCacheStats(ConfigMapper.class).getHits() == 1;
+                return null;
+            });
+
+            assert "uncommitted".equals(queryByKey("username").getConfig_value());
+        } finally {
+            MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(usernameConfig("root")),
+                    ConfigMapper::updateConfigValue);
+        }
+    }
+
+    private static ConfigModel usernameConfig(String value) {
+        ConfigModel config = new ConfigModel();
+        config.setConfig_key("username");
+        config.setConfig_value(value);
+        return config;
+    }
+
+    private static ConfigModel queryByKey(String key) {
+        return MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey(key));
+    }
+}
@@ -0,0 +1,75 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMiniClient;
+import cn.jiayeli.mybatisMini.core.RowMappingInterceptor;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigEntry;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.apache.ibatis.session.RowBounds;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+
+public class RowMappingTestCase {
+
+    private static final String ROW_MAPPING_TYPE = "rowMapping";
+
+    private MybatisMiniClient fastClient;
+
+    @Before
+    public void setUp() {
+        fastClient = MybatisMini.builder().fastRowMapping(true).build();
+    }
+
+    @After
+    public void cleanUp() {
+        fastClient.close();
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(ROW_MAPPING_TYPE), ConfigMapper::deleteConfigByType);
+    }
+
+    @Test
+    public void fastPathMapsLikeMyBatisTestCase() {
+        assert fastClient.getConfiguration().getInterceptors().stream().anyMatch(RowMappingInterceptor.class::isInstance);
+        assert MybatisMini.getDefaultClient().getConfiguration().getInterceptors().stream().noneMatch(RowMappingInterceptor.class::isInstance);
+
+        List<ConfigModel> fast = fastClient.queryList(ConfigMapper::queryAllOrderByKey);
+        System.out.println(fast);
+        assert fast.size() >= 3;
+        assert fast.equals(MybatisMini.queryList(ConfigMapper::queryAllOrderByKey));
+        // a layout with fewer columns gets its own row mapper
+        ConfigModel username = fastClient.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("username"));
+        assert "root".equals(username.getConfig_value()) && username.getConfig_type() == null;
+    }
+
+    @Test
+    public void nullColumnsTestCase() {
+        ConfigModel config = new ConfigModel();
+        config.setConfig_key("row_mapping_key");
+        config.setConfig_type(ROW_MAPPING_TYPE);
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(config), ConfigMapper::insertConfig);
+
+        List<ConfigModel> fast = fastClient.queryList(ConfigMapper::queryAllOrderByKey);
+        assert fast.stream().anyMatch(row -> "row_mapping_key".equals(row.getConfig_key()) && row.getConfig_value() == null);
+        assert fast.equals(MybatisMini.queryList(ConfigMapper::queryAllOrderByKey));
+    }
+
+    @Test
+    public void constructorBindingTestCase() {
+        List<ConfigEntry> fast = fastClient.queryList(ConfigMapper::queryEntries);
+        System.out.println(fast);
+        assert fast.contains(new ConfigEntry("username", "root"));
+        assert fast.equals(MybatisMini.queryList(ConfigMapper::queryEntries));
+    }
+
+    @Test
+    public void rowBoundsAreLeftToMyBatisTestCase() {
+        List<ConfigModel> page = fastClient.inSession(sqlSession -> sqlSession.selectList(
+                ConfigMapper.class.getName() + ".queryAllOrderByKey", null, new RowBounds(1, 1)));
+        assert page.size() == 1;
+        assert page.get(0).equals(MybatisMini.queryList(ConfigMapper::queryAllOrderByKey).get(1));
+    }
+}
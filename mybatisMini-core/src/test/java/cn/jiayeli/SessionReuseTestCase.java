@@ -0,0 +1,193 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMiniClient;
+import cn.jiayeli.mybatisMini.core.SessionReuseStats;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.apache.ibatis.executor.statement.StatementHandler;
+import org.apache.ibatis.plugin.Interceptor;
+import org.apache.ibatis.plugin.Intercepts;
+import org.apache.ibatis.plugin.Invocation;
+import org.apache.ibatis.plugin.Signature;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SessionReuseTestCase {
+
+    private static final String REUSE_TYPE = "reuse";
+    private static final String[] KEYS = {"username", "password", "timeout"};
+    private static final int THREADS = 4;
+
+    private MybatisMiniClient client;
+    private StatementProbe probe;
+    private ExecutorService callers;
+
+    @Before
+    public void setUp() {
+        client = MybatisMini.builder().build();
+        probe = new StatementProbe();
+        client.getConfiguration().addInterceptor(probe);
+        callers = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void cleanUp() {
+        callers.shutdownNow();
+        client.close();
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(REUSE_TYPE), ConfigMapper::deleteConfigByType);
+    }
+
+    @Test
+    public void repeatedCallsPrepareOnceTestCase() {
+        queryKeys(30);
+        assert probe.prepares.get() == 30;
+
+        client.enableSessionReuse();
+        probe.prepares.set(0);
+        queryKeys(30);
+        SessionReuseStats stats = client.getSessionReuseStats();
+        System.out.println(stats);
+        // the same statement with other parameters runs on the statement prepared by the first call
+        assert probe.prepares.get() == 1;
+        assert stats.getCalls() == 30 && stats.getReusedCalls() == 29;
+        assert stats.getSessionsOpened() == 1 && stats.getOpenSessions() == 1;
+    }
+
+    @Test
+    public void concurrentCallsGetSessionsOfTheirOwnTestCase() throws Exception {
+        client.enableSessionReuse(THREADS, 1, 10, TimeUnit.MINUTES);
+        CountDownLatch gate = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(callers.submit(() -> {
+                gate.await();
+                queryKeys(20);
+                return null;
+            }));
+        }
+        gate.countDown();
+        for (Future<?> result : results) {
+            result.get(10, TimeUnit.SECONDS);
+        }
+
+        SessionReuseStats stats = client.getSessionReuseStats();
+        System.out.println(probe.connectionsByThread);
+        System.out.println(stats);
+        assert probe.connectionsByThread.size() == THREADS;
+        // sessions may move between threads, but each prepared the statement once and no call fell back
+        assert stats.getSessionsOpened() >= 1 && stats.getSessionsOpened() <= THREADS;
+        assert probe.prepares.get() == stats.getSessionsOpened();
+        assert stats.getCalls() == THREADS * 20 && stats.getFallbackCalls() == 0;
+    }
+
+    @Test
+    public void shortLivedThreadsShareSessionsTestCase() throws Exception {
+        client.enableSessionReuse(2, 10, 10, TimeUnit.MINUTES);
+        for (int i = 0; i < 20; i++) {
+            // thread-per-task: each call on a thread that ends right after it
+            Thread thread = new Thread(() -> queryKeys(1));
+            thread.start();
+            thread.join(10_000);
+        }
+        SessionReuseStats stats = client.getSessionReuseStats();
+        System.out.println(stats);
+        assert stats.getSessionsOpened() == 1 && stats.getReusedCalls() == 19 && stats.getFallbackCalls() == 0;
+        assert probe.prepares.get() == 1;
+        assert client.getPoolStats().getActiveConnections() == 1;
+    }
+
+    @Test
+    public void callsDoNotSeeCachedRowsTestCase() {
+        client.enableSessionReuse();
+        int before = client.queryList(ConfigMapper::queryAllOrderByKey).size();
+
+        ConfigModel config = new ConfigModel();
+        config.setConfig_key("reuse_key");
+        config.setConfig_value("reuse_value");
+        config.setConfig_type(REUSE_TYPE);
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(config), ConfigMapper::insertConfig);
+
+        // same session, same statement, same parameters: the row written meanwhile is read
+        assert client.queryList(ConfigMapper::queryAllOrderByKey).size() == before + 1;
+        assert client.getSessionReuseStats().getReusedCalls() == 1;
+    }
+
+    @Test
+    public void sessionsAreBoundedTestCase() throws Exception {
+        client.enableSessionReuse(1, 200, 60_000, TimeUnit.MILLISECONDS);
+        CountDownLatch running = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<ConfigModel> busy = callers.submit(() -> client.<ConfigMapper, ConfigModel>queryObject(mapper -> {
+            running.countDown();
+            release.await();
+            return mapper.queryConfigByKey("username");
+        }));
+        running.await();
+        // the only session is running another thread's call, this one gets a session of its own
+        queryKeys(1);
+        release.countDown();
+        busy.get(10, TimeUnit.SECONDS);
+        SessionReuseStats stats = client.getSessionReuseStats();
+        assert stats.getFallbackCalls() == 1 && stats.getOpenSessions() == 1;
+        assert client.getPoolStats().getActiveConnections() == 1;
+
+        Thread.sleep(600);
+        stats = client.getSessionReuseStats();
+        System.out.println(stats);
+        assert stats.getOpenSessions() == 0 && stats.getSessionsClosed() == 1;
+        assert client.getPoolStats().getActiveConnections() == 0;
+        // idle sessions are replaced on the next call
+        queryKeys(1);
+        assert client.getSessionReuseStats().getSessionsOpened() == 2;
+    }
+
+    private void queryKeys(int calls) {
+        for (int i = 0; i < calls; i++) {
+            String key = KEYS[i % KEYS.length];
+            ConfigModel config = client.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey(key));
+            assert key.equals(config.getConfig_key());
+        }
+    }
+
+    /**
+     * Counts statement prepares and records the connection each thread's statements ran on.
+     */
+    @Intercepts({
+            @Signature(type = StatementHandler.class, method = "prepare", args = {Connection.class, Integer.class}),
+            @Signature(type = StatementHandler.class, method = "parameterize", args = {Statement.class})
+    })
+    public static class StatementProbe implements Interceptor {
+
+        final AtomicInteger prepares = new AtomicInteger();
+        final Map<String, Set<Connection>> connectionsByThread = new ConcurrentHashMap<>();
+
+        @Override
+        public Object intercept(Invocation invocation) throws Throwable {
+            if ("prepare".equals(invocation.getMethod().getName())) {
+                prepares.incrementAndGet();
+            } else {
+                Connection connection = ((Statement) invocation.getArgs()[0]).getConnection();
+                connectionsByThread.computeIfAbsent(Thread.currentThread().getName(),
+                        thread -> Collections.newSetFromMap(new ConcurrentHashMap<>())).add(connection);
+            }
+            return invocation.proceed();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class SessionScopeTestCase {
+
+    private static final String TX_TYPE = "tx";
+
+    @After
+    public void cleanUp() {
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(TX_TYPE), ConfigMapper::deleteConfigByType);
+    }
+
+    @Test
+    public void sharedSessionTestCase() {
+        MybatisMini.inSession(sqlSession -> {
+            ConfigModel first = MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("username"));
+            ConfigModel second = MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("username"));
+            MybatisMini.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("password"));
+            // same session: second lookup is served from the first-level cache
+            assert first == second;
+            assert MybatisMini.getPoolStats().getActiveConnections() == 1;
+            assert MybatisMini.stream(ConfigMapper::streamAll).count() >= 3;
+            assert sqlSession.getConnection() != null;
+            return null;
+        });
+        assert MybatisMini.getPoolStats().getActiveConnections() == 0;
+    }
+
+    @Test
+    public void commitTestCase() {
+        MybatisMini.inTransaction(sqlSession -> sqlSession.getMapper(ConfigMapper.class).insertConfig(config("tx_commit")));
+        assert countTxRows() == 1;
+    }
+
+    @Test
+    public void rollbackTestCase() {
+        try {
+            MybatisMini.inTransaction(sqlSession -> {
+                sqlSession.getMapper(ConfigMapper.class).insertConfig(config("tx_rollback"));
+                throw new IllegalStateException("boom");
+            });
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            assert e.getCause() instanceof IllegalStateException;
+        }
+        assert countTxRows() == 0;
+    }
+
+    @Test
+    public void nestedJoinsOuterTransactionTestCase() {
+        try {
+            MybatisMini.inTransaction(outer -> {
+                MybatisMini.inTransaction(inner -> {
+                    assert inner == outer;
+                    return inner.getMapper(ConfigMapper.class).insertConfig(config("tx_nested"));
+                });
+                throw new IllegalStateException("boom");
+            });
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            assert e.getCause() instanceof IllegalStateException;
+        }
+        // the inner block did not commit on its own
+        assert countTxRows() == 0;
+    }
+
+    @Test
+    public void failedNestedBlockRollsBackOuterTransactionTestCase() {
+        try {
+            MybatisMini.inTransaction(outer -> {
+                outer.getMapper(ConfigMapper.class).insertConfig(config("tx_outer"));
+                try {
+                    MybatisMini.inTransaction(inner -> {
+                        inner.getMapper(ConfigMapper.class).insertConfig(config("tx_partial"));
+                        throw new IllegalStateException("boom");
+                    });
+                    assert false : "expected MybatisMiniException";
+                } catch (MybatisMiniException e) {
+                    // swallowed by the outer block, which would otherwise commit the partial write
+                    System.out.println(e.getMessage());
+                }
+                return null;
+            });
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage());
+        }
+        assert countTxRows() == 0;
+        // the next transaction on this thread starts clean
+        MybatisMini.inTransaction(sqlSession -> sqlSession.getMapper(ConfigMapper.class).insertConfig(config("tx_after")));
+        assert countTxRows() == 1;
+    }
+
+    @Test
+    public void transactionInsidePlainSessionRejectedTestCase() {
+        try {
+            MybatisMini.inSession(sqlSession -> MybatisMini.inTransaction(inner -> null));
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage());
+        }
+    }
+
+    private static long countTxRows() {
+        return MybatisMini.stream(ConfigMapper::streamAll)
+                .filter(config -> config.getConfig_key().startsWith("tx_"))
+                .count();
+    }
+
+    private static ConfigModel config(String key) {
+        ConfigModel config = new ConfigModel();
+        config.setConfig_type(TX_TYPE);
+        config.setConfig_key(key);
+        config.setConfig_value(key);
+        return config;
+    }
+}
@@ -0,0 +1,162 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.core.ShardRouter;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.apache.ibatis.datasource.unpooled.UnpooledDataSource;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class ShardingTestCase {
+
+    private static final int SHARD_ROWS = 2;
+    private static final Comparator<ConfigModel> BY_KEY = Comparator.comparing(ConfigModel::getConfig_key);
+    /**
+     * Routes {@code shard<N>_key<M>} to shard N.
+     */
+    private static final ShardRouter BY_PREFIX =
+            (shardKey, shardCount) -> Character.getNumericValue(shardKey.toString().charAt(5));
+
+    private static List<Environment> shards;
+
+    @BeforeClass
+    public static void setUpShards() throws Exception {
+        shards = Arrays.asList(shard(0), shard(1), shard(2));
+    }
+
+    @After
+    public void clearShards() {
+        MybatisMini.clearShards();
+    }
+
+    @Test
+    public void queryShardRoutesToOneShardTestCase() {
+        MybatisMini.useShards(shards, BY_PREFIX);
+        ConfigModel routed = MybatisMini.queryShard("shard2_key1", (ConfigMapper mapper) -> mapper.queryConfigByKey("shard2_key1"));
+        assert "value2_1".equals(routed.getConfig_value());
+
+        // the same key routed elsewhere is not there
+        MybatisMini.useShards(shards, (shardKey, shardCount) -> 1);
+        assert MybatisMini.queryShard("shard2_key1", (ConfigMapper mapper) -> mapper.queryConfigByKey("shard2_key1")) == null;
+    }
+
+    @Test
+    public void concatenateAllShardsTestCase() {
+        MybatisMini.useShards(shards, BY_PREFIX);
+        // every shard has the three sso rows of schema.sql and its own rows
+        assert MybatisMini.queryAllShards(ConfigMapper::queryList).size() == (3 + SHARD_ROWS) * shards.size();
+        try (Stream<ConfigModel> rows = MybatisMini.streamAllShards(ConfigMapper::streamAll)) {
+            assert rows.count() == (3 + SHARD_ROWS) * shards.size();
+        }
+    }
+
+    @Test
+    public void orderedMergeTestCase() {
+        MybatisMini.useShards(shards, BY_PREFIX);
+        List<ConfigModel> merged = MybatisMini.queryAllShards(ConfigMapper::queryAllOrderByKey, BY_KEY);
+        List<ConfigModel> sorted = new ArrayList<>(merged);
+        sorted.sort(BY_KEY);
+        assert merged.size() == (3 + SHARD_ROWS) * shards.size();
+        assert merged.equals(sorted);
+
+        try (Stream<ConfigModel> rows = MybatisMini.streamAllShards(ConfigMapper::streamAllOrderByKey, BY_KEY)) {
+            List<String> keys = rows.map(ConfigModel::getConfig_key).collect(Collectors.toList());
+            System.out.println(keys);
+            assert keys.equals(sorted.stream().map(ConfigModel::getConfig_key).collect(Collectors.toList()));
+        }
+        // a partly read merge releases every shard's session on close
+        try (Stream<ConfigModel> rows = MybatisMini.streamAllShards(ConfigMapper::streamAllOrderByKey, BY_KEY)) {
+            assert rows.findFirst().isPresent();
+        }
+        for (Environment shard : shards) {
+            assert ((PooledDataSource) shard.getDataSource()).getPoolState().getActiveConnectionCount() == 0;
+        }
+    }
+
+    @Test
+    public void latencyFollowsSlowestShardTestCase() {
+        long delayMillis = 300;
+        List<Environment> slowShards = shards.stream()
+                .map(shard -> new Environment(shard.getId(), shard.getTransactionFactory(), delayed(shard.getDataSource(), delayMillis)))
+                .collect(Collectors.toList());
+        ExecutorService executor = Executors.newFixedThreadPool(shards.size());
+        try {
+            MybatisMini.getDefaultClient().useShards(slowShards, BY_PREFIX, executor);
+            long started = System.nanoTime();
+            assert MybatisMini.queryAllShards(ConfigMapper::queryList).size() == (3 + SHARD_ROWS) * shards.size();
+            long elapsedMillis = (System.nanoTime() - started) / 1_000_000;
+            System.out.println("fan-out over " + shards.size() + " shards of " + delayMillis + " ms took " + elapsedMillis + " ms");
+            // sequential calls would take at least 900 ms
+            assert elapsedMillis < 2 * delayMillis;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void failingShardTestCase() {
+        UnpooledDataSource unreachable = new UnpooledDataSource("org.h2.Driver", "jdbc:h2:tcp://127.0.0.1:1/unreachable", "sa", "");
+        Environment broken = new Environment("brokenShard", new JdbcTransactionFactory(), unreachable);
+        MybatisMini.useShards(Arrays.asList(shards.get(0), broken, shards.get(1)), BY_PREFIX);
+        try {
+            MybatisMini.streamAllShards(ConfigMapper::streamAllOrderByKey, BY_KEY);
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            System.out.println(e.getMessage());
+            assert e.getMessage().contains("brokenShard");
+        }
+        // the cursors opened on the healthy shards were closed again
+        assert ((PooledDataSource) shards.get(0).getDataSource()).getPoolState().getActiveConnectionCount() == 0;
+        assert ((PooledDataSource) shards.get(1).getDataSource()).getPoolState().getActiveConnectionCount() == 0;
+    }
+
+    private static Environment shard(int index) throws Exception {
+        String name = "shard" + index;
+        DataSource dataSource = new PooledDataSource("org.h2.Driver",
+                "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1;MODE=MySQL;INIT=RUNSCRIPT FROM 'classpath:mybatis/schema.sql'", "sa", "");
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement insert = connection.prepareStatement(
+                     "MERGE INTO cmdb.ssoConfigInfo (config_type, config_key, config_value) KEY (config_key) VALUES ('sso', ?, ?)")) {
+            for (int row = 0; row < SHARD_ROWS; row++) {
+                insert.setString(1, name + "_key" + row);
+                insert.setString(2, "value" + index + "_" + row);
+                insert.executeUpdate();
+            }
+        }
+        return new Environment(name, new JdbcTransactionFactory(), dataSource);
+    }
+
+    private static DataSource delayed(DataSource dataSource, long delayMillis) {
+        return (DataSource) Proxy.newProxyInstance(DataSource.class.getClassLoader(), new Class<?>[]{DataSource.class},
+                (proxy, method, args) -> {
+                    if ("getConnection".equals(method.getName())) {
+                        Thread.sleep(delayMillis);
+                    }
+                    try {
+                        return method.invoke(dataSource, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+                });
+    }
+}
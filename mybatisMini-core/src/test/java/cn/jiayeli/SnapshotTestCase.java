@@ -0,0 +1,134 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MiniSnapshot;
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMiniClient;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class SnapshotTestCase {
+
+    private static final String SNAPSHOT_TYPE = "snapshot";
+
+    private MybatisMiniClient client;
+
+    @Before
+    public void setUp() {
+        client = MybatisMini.builder().build();
+        insert("snapshot_a", "a1");
+        insert("snapshot_b", "b1");
+    }
+
+    @After
+    public void cleanUp() {
+        client.close();
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(SNAPSHOT_TYPE), ConfigMapper::deleteConfigByType);
+    }
+
+    @Test
+    public void answersFromMemoryTestCase() {
+        MiniSnapshot<String, ConfigModel> snapshot = start(0);
+        System.out.println(snapshot.asMap());
+        assert snapshot.get("snapshot_a").getUpdated_at() != null;
+
+        ConfigModel username = client.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("username"));
+        // the snapshot's own row, not one mapped from a new result set
+        assert username == snapshot.get("username");
+        assert client.<ConfigMapper, ConfigModel>queryObject(mapper -> mapper.queryConfigByKey("missing")) == null;
+        List<ConfigModel> all = client.queryList(ConfigMapper::queryAllVersioned);
+        assert all == client.queryList(ConfigMapper::queryAllVersioned);
+        assert all.size() == snapshot.size() && all.contains(snapshot.get("snapshot_b"));
+
+        // a method the snapshot does not know goes to the database
+        List<ConfigModel> ordered = client.queryList(ConfigMapper::queryAllOrderByKey);
+        assert ordered != client.queryList(ConfigMapper::queryAllOrderByKey);
+        assert ordered.size() == snapshot.size();
+    }
+
+    @Test
+    public void incrementalRefreshTestCase() {
+        MiniSnapshot<String, ConfigModel> snapshot = start(0);
+        ConfigModel unchanged = snapshot.get("snapshot_b");
+
+        update("snapshot_a", "a2");
+        insert("snapshot_c", "c1");
+        assert snapshot.get("snapshot_a").getConfig_value().equals("a1") && snapshot.get("snapshot_c") == null;
+        snapshot.refresh();
+        assert snapshot.getGeneration() == 1;
+        assert "a2".equals(snapshot.get("snapshot_a").getConfig_value());
+        assert "c1".equals(snapshot.get("snapshot_c").getConfig_value());
+        assert snapshot.get("snapshot_b") == unchanged;
+
+        // rows at the last version come back, but are equal to the ones held
+        snapshot.refresh();
+        assert snapshot.getGeneration() == 1;
+
+        // deletes are only seen by a full reload
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(SNAPSHOT_TYPE), ConfigMapper::deleteConfigByType);
+        snapshot.refresh();
+        assert snapshot.get("snapshot_a") != null;
+        snapshot.reload();
+        assert snapshot.getGeneration() == 2 && snapshot.get("snapshot_a") == null && snapshot.get("username") != null;
+    }
+
+    @Test
+    public void backgroundRefreshTestCase() throws InterruptedException {
+        MiniSnapshot<String, ConfigModel> snapshot = start(20);
+        update("snapshot_b", "b2");
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!"b2".equals(snapshot.get("snapshot_b").getConfig_value()) && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        System.out.println(snapshot.asMap());
+        assert "b2".equals(snapshot.get("snapshot_b").getConfig_value());
+        assert client.queryList(ConfigMapper::queryAllVersioned).stream()
+                .anyMatch(row -> "snapshot_b".equals(row.getConfig_key()) && "b2".equals(row.getConfig_value()));
+    }
+
+    @Test
+    public void transactionsAndClosedSnapshotsGoToTheDatabaseTestCase() {
+        MiniSnapshot<String, ConfigModel> snapshot = start(0);
+        List<ConfigModel> uncommitted = client.inTransaction(sqlSession -> {
+            sqlSession.getMapper(ConfigMapper.class).updateConfigValue(config("snapshot_a", "a3"));
+            return client.queryList(ConfigMapper::queryAllVersioned);
+        });
+        assert uncommitted.stream().anyMatch(row -> "snapshot_a".equals(row.getConfig_key()) && "a3".equals(row.getConfig_value()));
+        assert "a1".equals(snapshot.get("snapshot_a").getConfig_value());
+
+        snapshot.close();
+        List<ConfigModel> all = client.queryList(ConfigMapper::queryAllVersioned);
+        assert all != client.queryList(ConfigMapper::queryAllVersioned);
+        assert all.stream().anyMatch(row -> "a3".equals(row.getConfig_value()));
+    }
+
+    private MiniSnapshot<String, ConfigModel> start(long refreshMillis) {
+        return client.snapshot(ConfigMapper::queryAllVersioned, ConfigModel::getConfig_key)
+                .lookup(ConfigMapper::queryConfigByKey)
+                .changes(ConfigMapper::queryChangedSince, ConfigModel::getUpdated_at)
+                .refreshEvery(refreshMillis, TimeUnit.MILLISECONDS)
+                .start();
+    }
+
+    private static void insert(String key, String value) {
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(config(key, value)), ConfigMapper::insertConfig);
+    }
+
+    private static void update(String key, String value) {
+        MybatisMini.executeBatch(ConfigMapper.class, Collections.singletonList(config(key, value)), ConfigMapper::updateConfigValue);
+    }
+
+    private static ConfigModel config(String key, String value) {
+        ConfigModel config = new ConfigModel();
+        config.setConfig_key(key);
+        config.setConfig_value(value);
+        config.setConfig_type(SNAPSHOT_TYPE);
+        return config;
+    }
+}
@@ -0,0 +1,53 @@
+package cn.jiayeli;
+
+import cn.jiayeli.mybatisMini.core.MybatisMini;
+import cn.jiayeli.mybatisMini.core.MybatisMini.MybatisMiniException;
+import cn.jiayeli.mybatisMini.test.dao.ConfigMapper;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import org.apache.ibatis.cursor.Cursor;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class StreamQueryTestCase {
+
+    @Test
+    public void streamAllRowsTestCase() {
+        List<String> keys = MybatisMini.stream(ConfigMapper::streamAll)
+                .map(ConfigModel::getConfig_key)
+                .collect(Collectors.toList());
+        System.out.println(keys);
+        assert keys.size() >= 3;
+        assert keys.contains("username");
+        // exhausting the cursor releases the connection without an explicit close
+        assert MybatisMini.getPoolStats().getActiveConnections() == 0;
+    }
+
+    @Test
+    public void closePartiallyConsumedStreamTestCase() {
+        try (Stream<ConfigModel> rows = MybatisMini.stream(ConfigMapper::streamAll, 1)) {
+            Optional<ConfigModel> first = rows.findFirst();
+            assert first.isPresent();
+            assert MybatisMini.getPoolStats().getActiveConnections() == 1;
+        }
+        assert MybatisMini.getPoolStats().getActiveConnections() == 0;
+    }
+
+    @Test
+    public void failingMapperCallReleasesSessionTestCase() {
+        try {
+            MybatisMini.<ConfigMapper, ConfigModel>stream(mapper -> {
+                Cursor<ConfigModel> cursor = mapper.streamAll();
+                cursor.close();
+                throw new IllegalStateException("boom");
+            });
+            assert false : "expected MybatisMiniException";
+        } catch (MybatisMiniException e) {
+            assert e.getCause() instanceof IllegalStateException;
+        }
+        assert MybatisMini.getPoolStats().getActiveConnections() == 0;
+    }
+}
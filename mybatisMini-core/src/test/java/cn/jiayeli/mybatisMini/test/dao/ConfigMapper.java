@@ -0,0 +1,44 @@
+package cn.jiayeli.mybatisMini.test.dao;
+
+import cn.jiayeli.mybatisMini.test.model.ConfigEntry;
+import cn.jiayeli.mybatisMini.test.model.ConfigModel;
+import cn.jiayeli.mybatisMini.core.MiniMapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+
+public interface ConfigMapper extends MiniMapper<ConfigMapper, ConfigModel> {
+
+    public List<ConfigModel> queryList();
+
+    public ConfigModel queryConfigByKey(String config_key);
+
+    public ConfigModel queryConfigByKeySlowly(@Param("config_key") String config_key, @Param("millis") long millis);
+
+    public List<ConfigModel> queryConfigByKeys(@Param("keys") List<String> keys);
+
+    public Cursor<ConfigModel> streamAll();
+
+    public List<ConfigModel> queryAllOrderByKey();
+
+    public Cursor<ConfigModel> streamAllOrderByKey();
+
+    public List<ConfigModel> queryPageAfter(@Param("afterKey") String afterKey, @Param("limit") int limit);
+
+    public List<ConfigEntry> queryEntries();
+
+    public List<ConfigModel> queryAllVersioned();
+
+    public List<ConfigModel> queryChangedSince(LocalDateTime since);
+
+    public int insertConfig(ConfigModel config);
+
+    public int insertConfigs(@Param("configs") List<ConfigModel> configs);
+
+    public int updateConfigValue(ConfigModel config);
+
+    public int deleteConfigByType(String config_type);
+}
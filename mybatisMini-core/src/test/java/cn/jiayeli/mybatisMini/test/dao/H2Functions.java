@@ -0,0 +1,27 @@
+package cn.jiayeli.mybatisMini.test.dao;
+
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Java functions for H2, registered as aliases by {@link #register(Statement)}.
+ */
+public final class H2Functions {
+
+    private H2Functions() {
+    }
+
+    /**
+     * Not part of {@code schema.sql}: H2 fails to create an alias while another connection runs it.
+     */
+    public static void register(Statement statement) throws SQLException {
+        statement.execute("CREATE ALIAS IF NOT EXISTS MINI_SLEEP FOR '" + H2Functions.class.getName() + ".sleep'");
+    }
+
+    /**
+     * Makes a query slow, e.g. {@code where MINI_SLEEP(#{millis}) is null}.
+     */
+    public static void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+}
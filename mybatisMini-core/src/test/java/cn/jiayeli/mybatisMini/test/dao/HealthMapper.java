@@ -0,0 +1,10 @@
+package cn.jiayeli.mybatisMini.test.dao;
+
+import cn.jiayeli.mybatisMini.core.MiniMapper;
+import org.apache.ibatis.annotations.Select;
+
+public interface HealthMapper extends MiniMapper<HealthMapper, Integer> {
+
+    @Select("select 1")
+    public Integer ping();
+}
@@ -0,0 +1,9 @@
+package cn.jiayeli.mybatisMini.test.model;
+
+import lombok.Value;
+
+@Value
+public class ConfigEntry {
+    String key;
+    String value;
+}
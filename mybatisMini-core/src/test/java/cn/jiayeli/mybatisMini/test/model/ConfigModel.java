@@ -0,0 +1,13 @@
+package cn.jiayeli.mybatisMini.test.model;
+
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+public class ConfigModel {
+    private String config_type;
+    private String config_key;
+    private String config_value;
+    private LocalDateTime updated_at;
+}
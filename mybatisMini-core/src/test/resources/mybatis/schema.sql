@@ -0,0 +1,14 @@
+CREATE SCHEMA IF NOT EXISTS cmdb;
+
+CREATE TABLE IF NOT EXISTS cmdb.ssoConfigInfo (
+    id           BIGINT AUTO_INCREMENT PRIMARY KEY,
+    config_type  VARCHAR(32)  NOT NULL,
+    config_key   VARCHAR(128) NOT NULL UNIQUE,
+    config_value VARCHAR(512),
+    updated_at   TIMESTAMP    DEFAULT CURRENT_TIMESTAMP NOT NULL
+);
+
+MERGE INTO cmdb.ssoConfigInfo (config_type, config_key, config_value) KEY (config_key) VALUES
+    ('sso', 'username', 'root'),
+    ('sso', 'password', 'pass'),
+    ('sso', 'timeout', '30');
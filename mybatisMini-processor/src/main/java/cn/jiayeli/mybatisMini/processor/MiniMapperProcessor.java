@@ -0,0 +1,249 @@
+package cn.jiayeli.mybatisMini.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.FilerException;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.ArrayType;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Generates a {@code MiniMapperBinding} for every interface extending {@code MiniMapper}, so MybatisMini can
+ * resolve mapper classes without reflection. For {@code com.example.dao.ConfigMapper} it writes
+ * {@code com.example.dao.ConfigMapper_MiniBinding} and lists it in
+ * {@code META-INF/services/cn.jiayeli.mybatisMini.core.MiniMapperBinding}.
+ * <p>
+ * The processor needs no annotation on the mappers; it inspects every compiled type and never claims annotations,
+ * so other processors such as Lombok still run.
+ *
+ * @author kuro@jiayeli.com
+ */
+public class MiniMapperProcessor extends AbstractProcessor {
+
+    static final String MINI_MAPPER = "cn.jiayeli.mybatisMini.core.MiniMapper";
+    static final String BINDING = "cn.jiayeli.mybatisMini.core.MiniMapperBinding";
+    static final String BINDING_SUFFIX = "_MiniBinding";
+    private static final String SERVICE_FILE = "META-INF/services/" + BINDING;
+
+    private final Set<String> generatedBindings = new TreeSet<>();
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton("*");
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Elements elements = processingEnv.getElementUtils();
+        TypeElement miniMapper = elements.getTypeElement(MINI_MAPPER);
+        if (miniMapper == null) {
+            // MybatisMini is not on the classpath of this compilation
+            return false;
+        }
+        if (roundEnv.processingOver()) {
+            writeServiceFile();
+            return false;
+        }
+        List<TypeElement> mappers = new ArrayList<>();
+        for (Element root : roundEnv.getRootElements()) {
+            collectMappers(root, miniMapper, mappers);
+        }
+        for (TypeElement mapper : mappers) {
+            generateBinding(mapper);
+        }
+        return false;
+    }
+
+    private void collectMappers(Element element, TypeElement miniMapper, List<TypeElement> mappers) {
+        if (!element.getKind().isClass() && !element.getKind().isInterface()) {
+            return;
+        }
+        TypeElement type = (TypeElement) element;
+        Types types = processingEnv.getTypeUtils();
+        if (type.getKind() == ElementKind.INTERFACE
+                && !type.equals(miniMapper)
+                && types.isSubtype(types.erasure(type.asType()), types.erasure(miniMapper.asType()))) {
+            if (isAccessibleFromPackage(type)) {
+                mappers.add(type);
+            } else {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                        "Private MiniMapper gets no binding, MybatisMini resolves it by reflection", type);
+            }
+        }
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            collectMappers(nested, miniMapper, mappers);
+        }
+    }
+
+    private static boolean isAccessibleFromPackage(TypeElement type) {
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void generateBinding(TypeElement mapper) {
+        Elements elements = processingEnv.getElementUtils();
+        PackageElement packageElement = elements.getPackageOf(mapper);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(mapper).toString();
+        String simpleName = (packageName.isEmpty() ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + BINDING_SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + "." + simpleName;
+        if (!generatedBindings.add(qualifiedName)) {
+            return;
+        }
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("/**\n * MiniMapper binding of {@link ").append(mapper.getQualifiedName())
+                .append("}, generated by ").append(getClass().getName()).append(".\n */\n")
+                .append("public final class ").append(simpleName).append(" implements ").append(BINDING).append(" {\n\n")
+                .append("    private static final String[] METHODS = {\n");
+        for (String method : methodDescriptors(mapper)) {
+            source.append("            \"").append(method).append("\",\n");
+        }
+        source.append("    };\n\n")
+                .append("    @Override\n")
+                .append("    public Class<?> mapperClass() {\n")
+                .append("        return ").append(mapper.getQualifiedName()).append(".class;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public String[] methods() {\n")
+                .append("        return METHODS.clone();\n")
+                .append("    }\n")
+                .append("}\n");
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(qualifiedName, mapper).openWriter()) {
+            writer.write(source.toString());
+        } catch (FilerException e) {
+            // already generated by an earlier round of this compilation
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write MiniMapper binding " + qualifiedName + ": " + e.getMessage(), mapper);
+        }
+    }
+
+    /**
+     * Lists the mapper's instance methods, including inherited ones, with erased JVM descriptors as they appear
+     * in a lambda's {@code implMethodSignature}.
+     */
+    private Set<String> methodDescriptors(TypeElement mapper) {
+        Elements elements = processingEnv.getElementUtils();
+        Types types = processingEnv.getTypeUtils();
+        Set<String> methods = new TreeSet<>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(mapper))) {
+            String owner = ((TypeElement) method.getEnclosingElement()).getQualifiedName().toString();
+            if (method.getModifiers().contains(Modifier.STATIC)
+                    || MINI_MAPPER.equals(owner)
+                    || Object.class.getName().equals(owner)) {
+                continue;
+            }
+            ExecutableType erased = (ExecutableType) types.erasure(method.asType());
+            StringBuilder descriptor = new StringBuilder(method.getSimpleName()).append('(');
+            for (TypeMirror parameter : erased.getParameterTypes()) {
+                descriptor.append(descriptor(parameter));
+            }
+            methods.add(descriptor.append(')').append(descriptor(erased.getReturnType())).toString());
+        }
+        return methods;
+    }
+
+    private String descriptor(TypeMirror type) {
+        switch (type.getKind()) {
+            case BOOLEAN:
+                return "Z";
+            case BYTE:
+                return "B";
+            case CHAR:
+                return "C";
+            case SHORT:
+                return "S";
+            case INT:
+                return "I";
+            case LONG:
+                return "J";
+            case FLOAT:
+                return "F";
+            case DOUBLE:
+                return "D";
+            case VOID:
+                return "V";
+            case ARRAY:
+                return "[" + descriptor(((ArrayType) type).getComponentType());
+            case DECLARED:
+                TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+                return "L" + processingEnv.getElementUtils().getBinaryName(element).toString().replace('.', '/') + ";";
+            default:
+                TypeMirror erased = processingEnv.getTypeUtils().erasure(type);
+                return erased.equals(type) ? "Ljava/lang/Object;" : descriptor(erased);
+        }
+    }
+
+    /**
+     * Writes the service file, keeping entries of an earlier incremental compilation.
+     */
+    private void writeServiceFile() {
+        if (generatedBindings.isEmpty()) {
+            return;
+        }
+        Filer filer = processingEnv.getFiler();
+        Set<String> entries = new TreeSet<>(generatedBindings);
+        try {
+            FileObject existing = filer.getResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(existing.openInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (!line.trim().isEmpty()) {
+                        entries.add(line.trim());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // no earlier service file
+        }
+        try (Writer writer = filer.createResource(StandardLocation.CLASS_OUTPUT, "", SERVICE_FILE).openWriter()) {
+            for (String entry : entries) {
+                writer.write(entry);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write " + SERVICE_FILE + ": " + e.getMessage());
+        }
+    }
+}